@@ -0,0 +1,55 @@
+package life.hebo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// ObjectMapper vs. template encoding of one outbound frame.
+// Per-message allocation report: -Djmh.args="-prof gc ChatMessageEncoder" (see gc.alloc.rate.norm).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChatMessageEncoderBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ChatMessageEncoder encoder = new ChatMessageEncoder(mapper);
+    private final ChatMessage[] messages = new ChatMessage[1024];
+    private int next;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        InlineMessageGenerator generator = new InlineMessageGenerator(new SplittableRandom(42));
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = generator.next();
+            messages[i].setMessageId(i + 1);
+            if (!encoder.encode(messages[i]).equals(mapper.writeValueAsString(messages[i]))) {
+                throw new IllegalStateException("Encoder output differs from ObjectMapper for " + messages[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public String objectMapper() throws JsonProcessingException {
+        return mapper.writeValueAsString(messages[next++ & (messages.length - 1)]);
+    }
+
+    @Benchmark
+    public String template() throws JsonProcessingException {
+        return encoder.encode(messages[next++ & (messages.length - 1)]);
+    }
+}
@@ -0,0 +1,58 @@
+package life.hebo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-message pool bookkeeping under contention: borrow a slot, register the message, ack it.
+// The pool is pre-filled with socket-less sessions so no server is needed.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(ClientConfig.MAIN_PHASE_THREADS)
+@State(Scope.Benchmark)
+public class ConnectionManagerBenchmark {
+
+    private final AtomicLong messageIds = new AtomicLong();
+    private ConnectionManager connectionManager;
+
+    @State(Scope.Thread)
+    public static class Sample {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Setup
+    public void setUp() {
+        connectionManager = new ConnectionManager(
+                new MetricsCollector(), ClientConfig.CONNECTIONS_PER_ROOM, 1, WireProtocol.JSON);
+        for (int room = 1; room <= ClientConfig.NUM_ROOMS; room++) {
+            for (int i = 0; i < ClientConfig.CONNECTIONS_PER_ROOM; i++) {
+                connectionManager.addConnection(room, new NoopWebSocketSession());
+            }
+        }
+    }
+
+    @Benchmark
+    public void borrowAndAck(Sample sample) throws Exception {
+        int roomId = 1 + sample.random.nextInt(ClientConfig.NUM_ROOMS);
+        ConnectionManager.PooledConnection conn = connectionManager.borrowConnection(roomId);
+
+        long messageId = messageIds.incrementAndGet();
+        conn.prepareForResponse(messageId);
+        conn.completeResponse(messageId, System.nanoTime());
+    }
+}
@@ -0,0 +1,48 @@
+package life.hebo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Messages per second the generator alone can sustain, per thread:
+// the queued MessageGenerator with and without its queue hand-off, and the per-sender inline generator.
+// Add -t <n> to see how each scales with sender threads.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageGeneratorBenchmark {
+
+    private final LinkedBlockingQueue<ChatMessage> queue = new LinkedBlockingQueue<>(ClientConfig.QUEUE_CAPACITY);
+    private final MessageGenerator generator = new MessageGenerator(queue, 0);
+    private final InlineMessageGenerator inlineGenerator = new InlineMessageGenerator(new SplittableRandom(42));
+
+    @Benchmark
+    public ChatMessage generateMessage() {
+        return generator.generateMessage();
+    }
+
+    // Generator put + sender take through the bounded queue, as in QUEUED mode
+    @Benchmark
+    public ChatMessage queuedHandOff() throws InterruptedException {
+        queue.put(generator.generateMessage());
+        return queue.take();
+    }
+
+    @Benchmark
+    public ChatMessage inlineGenerate() {
+        return inlineGenerator.next();
+    }
+}
@@ -0,0 +1,39 @@
+package life.hebo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// recordSuccess from as many threads as the main phase runs senders
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(ClientConfig.MAIN_PHASE_THREADS)
+@State(Scope.Benchmark)
+public class MetricsCollectorBenchmark {
+
+    private final MetricsCollector metrics = new MetricsCollector();
+
+    @State(Scope.Thread)
+    public static class Sample {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public void recordSuccess(Sample sample) {
+        metrics.recordSuccess(System.currentTimeMillis(), MessageType.TEXT,
+                200 + sample.random.nextInt(5_000), 1 + sample.random.nextInt(ClientConfig.NUM_ROOMS));
+    }
+}
@@ -0,0 +1,65 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+// Server CPU per message for the JSON and binary wire formats: inbound decode + validate,
+// and encoding the ack. Run with -prof gc for allocation per message.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BinaryProtocolBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChatMessageDecoder decoder = new ChatMessageDecoder();
+    private final Instant now = Instant.parse("2024-01-15T10:30:00.123456Z");
+    private String jsonFrame;
+    private ByteBuffer binaryFrame;
+
+    @Setup
+    public void setUp() {
+        ChatMessage msg = new ChatMessage("42", "user42", "01. This is message #01 from the message pool.",
+                now.toString(), MessageType.TEXT, 7, 123456L);
+        jsonFrame = "{\"userId\":\"42\",\"username\":\"user42\","
+                + "\"message\":\"01. This is message #01 from the message pool.\","
+                + "\"timestamp\":\"" + now + "\",\"messageType\":\"TEXT\",\"roomId\":7,\"messageId\":123456}";
+        binaryFrame = ByteBuffer.wrap(BinaryProtocol.encodeChat(msg));
+    }
+
+    @Benchmark
+    public MessageValidator.ValidationResult jsonDecode() {
+        return decoder.decode(jsonFrame, new ChatMessage());
+    }
+
+    @Benchmark
+    public MessageValidator.ValidationResult binaryDecode() {
+        return BinaryProtocol.decode(binaryFrame, new ChatMessage());
+    }
+
+    @Benchmark
+    public String jsonAck() throws Exception {
+        return objectMapper.writeValueAsString(
+                new ServerResponse("SUCCESS", now.toString(), "Message received from user user42", 123456L));
+    }
+
+    @Benchmark
+    public byte[] binaryAck() {
+        return BinaryProtocol.encodeAck(123456L, now);
+    }
+}
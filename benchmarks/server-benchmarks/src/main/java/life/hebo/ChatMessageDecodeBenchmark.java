@@ -0,0 +1,74 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// ObjectMapper + MessageValidator (the original handler path) vs. the single-pass ChatMessageDecoder.
+// Run with -prof gc to compare allocation per message.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChatMessageDecodeBenchmark {
+
+    @Param({"VALID", "BAD_USER_ID", "BAD_TIMESTAMP", "BAD_MESSAGE_TYPE"})
+    private String payloadKind;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageValidator validator = new MessageValidator();
+    private final ChatMessageDecoder decoder = new ChatMessageDecoder();
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        String userId = "\"42\"";
+        String timestamp = "\"2024-01-15T10:30:00.123456Z\"";
+        String messageType = "\"TEXT\"";
+        switch (payloadKind) {
+            case "BAD_USER_ID":
+                userId = "\"abc\"";
+                break;
+            case "BAD_TIMESTAMP":
+                timestamp = "\"15/01/2024 10:30\"";
+                break;
+            case "BAD_MESSAGE_TYPE":
+                messageType = "\"SHOUT\"";
+                break;
+            default:
+                break;
+        }
+        payload = "{\"userId\":" + userId + ",\"username\":\"user42\","
+                + "\"message\":\"01. This is message #01 from the message pool.\","
+                + "\"timestamp\":" + timestamp + ",\"messageType\":" + messageType
+                + ",\"roomId\":7,\"messageId\":123456}";
+    }
+
+    @Benchmark
+    public MessageValidator.ValidationResult objectMapperThenValidate() {
+        try {
+            ChatMessage chatMessage = objectMapper.readValue(payload, ChatMessage.class);
+            return validator.validate(chatMessage);
+        } catch (Exception e) {
+            return MessageValidator.ValidationResult.invalid("Invalid message format: " + e.getMessage());
+        }
+    }
+
+    @Benchmark
+    public MessageValidator.ValidationResult streamingDecode() {
+        return decoder.decode(payload, new ChatMessage());
+    }
+}
@@ -0,0 +1,77 @@
+package life.hebo;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// DedupWindow.claim and accept from 8 sessions at the default capacity (about 8 MB of tables). retryPercent of
+// the messages repeat one the same sender offered shortly before, like a client resending after
+// its ack timeout; the "duplicates" counter should come out at that share.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class DedupWindowBenchmark {
+
+    private static final int RECENT = 1024;
+
+    @Param({"0", "5"})
+    public int retryPercent;
+
+    private DedupWindow window;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        window = new DedupWindow(262_144, 30_000);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sender {
+        private final SplittableRandom random = new SplittableRandom();
+        private final long[] recent = new long[RECENT];
+        private long nextMessageId = random.nextLong(1L << 40);
+        private int sent;
+        public long duplicates;
+
+        private long nextKey(int retryPercent) {
+            if (sent >= RECENT && random.nextInt(100) < retryPercent) {
+                return recent[random.nextInt(RECENT)];
+            }
+            String userId = String.valueOf(random.nextInt(MessageValidator.MIN_USERID, MessageValidator.MAX_USERID + 1));
+            long key = DedupWindow.key(random.nextInt(1, 21), userId, nextMessageId++);
+            recent[sent++ & (RECENT - 1)] = key;
+            return key;
+        }
+    }
+
+    // Claim, then accept as the handler does once the message is stored
+    @Benchmark
+    public DedupWindow.Claim claimAndAccept(Sender sender) {
+        long key = sender.nextKey(retryPercent);
+        DedupWindow.Claim claim = window.claim(key);
+        if (claim == DedupWindow.Claim.NEW) {
+            window.accept(key);
+        } else {
+            sender.duplicates++;
+        }
+        return claim;
+    }
+}
@@ -0,0 +1,61 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// ObjectMapper cost for the two frame types the server handles
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonSerializationBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ChatMessage chatMessage;
+    private ServerResponse serverResponse;
+    private String chatMessageJson;
+    private String serverResponseJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        chatMessage = new ChatMessage("42", "user42", "01. This is message #01 from the message pool.",
+                "2024-01-15T10:30:00.123456Z", MessageType.TEXT, 7, 123456L);
+        serverResponse = new ServerResponse("SUCCESS", "2024-01-15T10:30:00.125Z",
+                "Message received from user user42", 123456L);
+        chatMessageJson = objectMapper.writeValueAsString(chatMessage);
+        serverResponseJson = objectMapper.writeValueAsString(serverResponse);
+    }
+
+    @Benchmark
+    public String serializeChatMessage() throws Exception {
+        return objectMapper.writeValueAsString(chatMessage);
+    }
+
+    @Benchmark
+    public ChatMessage deserializeChatMessage() throws Exception {
+        return objectMapper.readValue(chatMessageJson, ChatMessage.class);
+    }
+
+    @Benchmark
+    public String serializeServerResponse() throws Exception {
+        return objectMapper.writeValueAsString(serverResponse);
+    }
+
+    @Benchmark
+    public ServerResponse deserializeServerResponse() throws Exception {
+        return objectMapper.readValue(serverResponseJson, ServerResponse.class);
+    }
+}
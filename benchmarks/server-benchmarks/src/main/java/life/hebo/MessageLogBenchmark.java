@@ -0,0 +1,65 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// What the message log adds to the ack path for each fsync policy: encoding the validated message
+// and appending it to its room's segment (the handler acks once append returns).
+// Throughput gives sustained msgs/s; SampleTime gives the added ack latency percentiles.
+// Segments go to a temp directory on the local disk (-Djava.io.tmpdir to pick another one).
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageLogBenchmark {
+
+    @Param({"NONE", "INTERVAL", "EVERY_MESSAGE"})
+    private FsyncPolicy fsync;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChatMessage message = new ChatMessage("42", "user42",
+            "01. This is message #01 from the message pool.", "2024-01-15T10:30:00.123456Z", MessageType.TEXT, 7, 0L);
+    private Path dir;
+    private MessageLog log;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("message-log-bench");
+        log = new MessageLog(dir, 16 * 1024 * 1024, fsync, 100);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        message.setMessageId(message.getMessageId() + 1);
+        return log.append(message.getRoomId(), objectMapper.writeValueAsBytes(message));
+    }
+}
@@ -0,0 +1,50 @@
+package life.hebo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// MessageValidator.validate on an already-bound ChatMessage; invalid cases take the exception paths
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageValidatorBenchmark {
+
+    private final MessageValidator validator = new MessageValidator();
+
+    private final ChatMessage valid = new ChatMessage("42", "user42",
+            "01. This is message #01 from the message pool.", "2024-01-15T10:30:00.123456Z",
+            MessageType.TEXT, 7, 123456L);
+    private final ChatMessage badUserId = new ChatMessage("abc", "user42",
+            "01. This is message #01 from the message pool.", "2024-01-15T10:30:00.123456Z",
+            MessageType.TEXT, 7, 123456L);
+    private final ChatMessage badTimestamp = new ChatMessage("42", "user42",
+            "01. This is message #01 from the message pool.", "15/01/2024 10:30",
+            MessageType.TEXT, 7, 123456L);
+
+    @Benchmark
+    public MessageValidator.ValidationResult validMessage() {
+        return validator.validate(valid);
+    }
+
+    @Benchmark
+    public MessageValidator.ValidationResult invalidUserId() {
+        return validator.validate(badUserId);
+    }
+
+    @Benchmark
+    public MessageValidator.ValidationResult invalidTimestamp() {
+        return validator.validate(badTimestamp);
+    }
+}
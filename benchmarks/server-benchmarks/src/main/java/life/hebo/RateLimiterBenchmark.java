@@ -0,0 +1,72 @@
+package life.hebo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// RateLimiter.tryAcquire from 64 sessions at once. Users are drawn at random from the whole
+// userId range, as the load client does; sharedUser is the worst case where every session
+// sends as the same user and all CAS on one slot. noLimiter only picks and parses the user,
+// which touches the same userId string the limiter reads.
+// Scores are aggregate messages per microsecond across all 64 threads.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+
+    private static final String[] USER_IDS = new String[MessageValidator.MAX_USERID + 1];
+
+    static {
+        for (int i = MessageValidator.MIN_USERID; i <= MessageValidator.MAX_USERID; i++) {
+            USER_IDS[i] = String.valueOf(i);
+        }
+    }
+
+    // High enough that every message is allowed: measures the accepting CAS path
+    private final RateLimiter generous = new RateLimiter(1e9, 1_000);
+    // One message per second per user: after the burst nearly every call is rejected
+    private final RateLimiter strict = new RateLimiter(1, 20);
+
+    @State(Scope.Thread)
+    public static class Sender {
+        private final SplittableRandom random = new SplittableRandom();
+
+        private String nextUser() {
+            return USER_IDS[random.nextInt(MessageValidator.MIN_USERID, MessageValidator.MAX_USERID + 1)];
+        }
+    }
+
+    @Benchmark
+    public int noLimiter(Sender sender) {
+        return Integer.parseInt(sender.nextUser());
+    }
+
+    @Benchmark
+    public long randomUsers(Sender sender) {
+        return generous.tryAcquire(sender.nextUser());
+    }
+
+    @Benchmark
+    public long sharedUser() {
+        return generous.tryAcquire(USER_IDS[42]);
+    }
+
+    @Benchmark
+    public long overLimit(Sender sender) {
+        return strict.tryAcquire(sender.nextUser());
+    }
+}
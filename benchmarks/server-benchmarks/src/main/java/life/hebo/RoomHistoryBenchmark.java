@@ -0,0 +1,90 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+// JOIN-to-caught-up time: replaying a full room history to a joining InMemoryWebSocketSession,
+// with every room's history filled. Setup prints the retained heap per room, which is what
+// decides how many rooms and how deep a history the server can afford. offHeap=true keeps the
+// histories in direct slabs instead.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Thread)
+public class RoomHistoryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int rooms;
+
+    @Param({"32"})
+    private int historySize;
+
+    @Param({"false", "true"})
+    private boolean offHeap;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InMemoryWebSocketSession joiner = new InMemoryWebSocketSession(0);
+    private RoomRegistry roomRegistry;
+    private RoomBroadcaster broadcaster;
+    private int nextRoom;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        long before = usedHeap();
+        roomRegistry = offHeap
+                ? new RoomRegistry(historySize, new DirectSlabPool(historySize * 512))
+                : new RoomRegistry(historySize);
+        broadcaster = new RoomBroadcaster(roomRegistry, objectMapper);
+        long messageId = 0;
+        for (int roomId = 0; roomId < rooms; roomId++) {
+            InMemoryWebSocketSession member = new InMemoryWebSocketSession(roomId);
+            roomRegistry.join(roomId, member);
+            for (int i = 0; i < historySize; i++) {
+                ChatMessage msg = new ChatMessage(String.valueOf(1 + i), "user" + (1 + i),
+                        "01. This is message #01 from the message pool.", "2024-01-15T10:30:00.123456Z",
+                        MessageType.TEXT, roomId, ++messageId);
+                broadcaster.broadcast(member, roomId, msg);
+            }
+        }
+        long after = usedHeap();
+        System.out.printf("%n%d rooms x %d messages: %.1f KB retained per room%n",
+                rooms, historySize, (after - before) / 1024.0 / rooms);
+    }
+
+    @Benchmark
+    public int replayJson() {
+        return broadcaster.replayHistory(joiner, nextRoom(), false);
+    }
+
+    @Benchmark
+    public int replayBinary() {
+        return broadcaster.replayHistory(joiner, nextRoom(), true);
+    }
+
+    private int nextRoom() {
+        int roomId = nextRoom;
+        nextRoom = roomId + 1 == rooms ? 0 : roomId + 1;
+        return roomId;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
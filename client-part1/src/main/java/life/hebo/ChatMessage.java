@@ -19,4 +19,7 @@ public class ChatMessage {
     @JsonProperty(required = false)
     private int roomId;
 
+    // Same for every retry of this message, so the server can ack a retry without reprocessing it
+    private long messageId;
+
 }
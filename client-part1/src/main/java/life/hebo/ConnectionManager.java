@@ -17,6 +17,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @RequiredArgsConstructor
 public class ConnectionManager {
 
+    // Acks are ServerResponse frames; room broadcasts from other members are ChatMessage frames
+    private static final String ACK_PREFIX = "{\"status\"";
+
     private final ConcurrentHashMap<Integer, CopyOnWriteArrayList<PooledConnection>> pool = new ConcurrentHashMap<>();
     private final MetricsCollector metrics;
     private final int connectionsPerRoom;
@@ -89,7 +92,10 @@ public class ConnectionManager {
         WebSocketSession session = client.execute(new TextWebSocketHandler() {
             @Override
             protected void handleTextMessage(WebSocketSession sess, TextMessage msg) {
-                pc.completeResponse(msg.getPayload());
+                String payload = msg.getPayload();
+                if (payload.startsWith(ACK_PREFIX)) {
+                    pc.completeResponse(payload);
+                }
             }
 
             @Override
@@ -52,6 +52,6 @@ public class MessageGenerator implements Runnable {
 
         int roomId = random.nextInt(ClientConfig.NUM_ROOMS) + 1;
 
-        return new ChatMessage(userId, username, message, timestamp, messageType, roomId);
+        return new ChatMessage(userId, username, message, timestamp, messageType, roomId, 0L);
     }
 }
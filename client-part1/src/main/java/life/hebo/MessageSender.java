@@ -6,11 +6,17 @@ import lombok.AllArgsConstructor;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @AllArgsConstructor
 public class MessageSender implements Runnable {
 
+    // The server dedups on (room, userId, messageId), so ids start at a random point to keep
+    // concurrent client processes from reusing each other's
+    private static final AtomicLong MESSAGE_IDS = new AtomicLong(ThreadLocalRandom.current().nextLong(1L << 40));
+
     private final BlockingQueue<ChatMessage> queue;
     private final ConnectionManager connectionManager;
     private final MetricsCollector metrics;
@@ -34,6 +40,7 @@ public class MessageSender implements Runnable {
 
     private void sendWithRetry(ChatMessage msg) {
         long backoff = ClientConfig.INITIAL_BACKOFF_MS;
+        msg.setMessageId(MESSAGE_IDS.incrementAndGet());
 
         for (int attempt = 1; attempt <= ClientConfig.MAX_RETRIES; attempt++) {
             ConnectionManager.PooledConnection conn = null;
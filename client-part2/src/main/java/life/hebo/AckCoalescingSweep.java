@@ -0,0 +1,62 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs the same pipelined load once per server-side ack batch size and prints ack frames/s
+// (each one a separate socket write on the server) against throughput and tail latency.
+public class AckCoalescingSweep {
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        int depth = Math.max(ClientConfig.PIPELINE_DEPTH, ClientConfig.BATCH_SWEEP_PIPELINE_DEPTH);
+
+        System.out.printf("%n── Ack Coalescing Sweep (flush %d µs, pipeline depth %d) ──────────────────%n",
+                ClientConfig.ACK_COALESCE_FLUSH_MICROS, depth);
+        System.out.printf("  %8s %12s %14s %12s %14s %10s %10s%n",
+                "max acks", "succeeded", "ack frames/s", "acks/frame", "throughput", "p50 (ms)", "p99 (ms)");
+
+        for (int maxAcks : ClientConfig.ACK_COALESCE_SWEEP) {
+            MetricsCollector metrics = new MetricsCollector();
+            ConnectionManager connManager = new ConnectionManager(
+                    metrics, ClientConfig.CONNECTIONS_PER_ROOM, depth, WireProtocol.JSON);
+            if (maxAcks > 1) {
+                connManager.requestAckCoalescing(maxAcks, ClientConfig.ACK_COALESCE_FLUSH_MICROS);
+            }
+            connManager.prewarm(ClientConfig.NUM_ROOMS);
+
+            int total = ClientConfig.PIPELINE_SWEEP_MESSAGES;
+            int threads = ClientConfig.MAIN_PHASE_THREADS;
+            CountDownLatch latch = new CountDownLatch(threads);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            SplittableRandom rootRandom = new SplittableRandom(42);
+
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < threads; i++) {
+                int count = total / threads + (i < total % threads ? 1 : 0);
+                pool.submit(new MessageSender(new InlineMessageGenerator(rootRandom.split()), connManager, metrics,
+                        new ChatMessageEncoder(mapper), count, latch, depth));
+            }
+            latch.await();
+            long elapsedMs = System.currentTimeMillis() - start;
+            pool.shutdown();
+            connManager.closeAll();
+
+            int success = metrics.getSuccessCount().get();
+            long ackFrames = connManager.getAckFramesReceived();
+            LatencyHistogram latency = metrics.getLatencySnapshot();
+            System.out.printf("  %8d %,12d %,14.0f %12.1f %,8.0f msg/s %10.2f %10.2f%n",
+                    maxAcks, success,
+                    ackFrames / (elapsedMs / 1000.0),
+                    success / (double) Math.max(1, ackFrames),
+                    success / (elapsedMs / 1000.0),
+                    latency.getValueAtPercentile(50) / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0);
+        }
+        System.out.println("──────────────────────────────────────────────────────────────────────────────");
+    }
+}
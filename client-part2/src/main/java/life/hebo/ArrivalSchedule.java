@@ -0,0 +1,42 @@
+package life.hebo;
+
+import java.util.SplittableRandom;
+
+// Open-loop arrival process: tells a sender when the next message is due,
+// independent of when earlier messages were acknowledged.
+public class ArrivalSchedule {
+
+    public enum Pattern {
+        FIXED,      // constant rate
+        STEPPED,    // rate grows by stepRate every stepSeconds
+        POISSON     // exponential inter-arrival times around the current rate
+    }
+
+    private final Pattern pattern;
+    private final double ratePerSec;
+    private final double stepRatePerSec;
+    private final long stepNanos;
+    private final SplittableRandom random = new SplittableRandom();
+
+    public ArrivalSchedule(Pattern pattern, double ratePerSec, double stepRatePerSec, int stepSeconds) {
+        this.pattern = pattern;
+        this.ratePerSec = ratePerSec;
+        this.stepRatePerSec = stepRatePerSec;
+        this.stepNanos = stepSeconds * 1_000_000_000L;
+    }
+
+    public double currentRate(long elapsedNs) {
+        if (pattern == Pattern.STEPPED) {
+            return ratePerSec + stepRatePerSec * (elapsedNs / stepNanos);
+        }
+        return ratePerSec;
+    }
+
+    public long nextIntervalNanos(long elapsedNs) {
+        double rate = currentRate(elapsedNs);
+        if (pattern == Pattern.POISSON) {
+            return (long) (-Math.log(1.0 - random.nextDouble()) / rate * 1e9);
+        }
+        return (long) (1e9 / rate);
+    }
+}
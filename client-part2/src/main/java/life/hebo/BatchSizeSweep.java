@@ -0,0 +1,57 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs the same load once per batch size and prints the throughput / latency tradeoff.
+// The number of un-acked messages is the same in every run, so only the framing changes.
+public class BatchSizeSweep {
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+
+        System.out.printf("%n── Batch Size Sweep (linger %d ms) ─────────────────────────────────%n",
+                ClientConfig.BATCH_LINGER_MS);
+        System.out.printf("  %6s %12s %10s %14s %10s %10s %10s%n",
+                "batch", "succeeded", "failed", "throughput", "p50 (ms)", "p99 (ms)", "p99.9 (ms)");
+
+        for (int batchSize : ClientConfig.BATCH_SIZE_SWEEP) {
+            MetricsCollector metrics = new MetricsCollector();
+            ConnectionManager connManager = new ConnectionManager(metrics, ClientConfig.CONNECTIONS_PER_ROOM,
+                    ClientConfig.BATCH_SWEEP_CONNECTION_DEPTH, WireProtocol.JSON);
+            connManager.enableBatching(batchSize, ClientConfig.BATCH_LINGER_MS);
+            connManager.prewarm(ClientConfig.NUM_ROOMS);
+
+            int total = ClientConfig.PIPELINE_SWEEP_MESSAGES;
+            int threads = ClientConfig.MAIN_PHASE_THREADS;
+            CountDownLatch latch = new CountDownLatch(threads);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            SplittableRandom rootRandom = new SplittableRandom(42);
+
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < threads; i++) {
+                int count = total / threads + (i < total % threads ? 1 : 0);
+                pool.submit(new MessageSender(new InlineMessageGenerator(rootRandom.split()), connManager, metrics,
+                        new ChatMessageEncoder(mapper), count, latch, ClientConfig.BATCH_SWEEP_PIPELINE_DEPTH));
+            }
+            latch.await();
+            long elapsedMs = System.currentTimeMillis() - start;
+            pool.shutdown();
+            connManager.closeAll();
+
+            int success = metrics.getSuccessCount().get();
+            LatencyHistogram latency = metrics.getLatencySnapshot();
+            System.out.printf("  %6d %,12d %,10d %,10.0f msg/s %10.2f %10.2f %10.2f%n",
+                    batchSize, success, metrics.getFailedCount().get(),
+                    success / (elapsedMs / 1000.0),
+                    latency.getValueAtPercentile(50) / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0,
+                    latency.getValueAtPercentile(99.9) / 1000.0);
+        }
+        System.out.println("──────────────────────────────────────────────────────────────────────");
+    }
+}
@@ -0,0 +1,55 @@
+package life.hebo;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+// Writes BinaryProtocol CHAT frames: messageId, userId, type, roomId, timestamp, username, message.
+// Generators hand out the same timestamp String for a whole millisecond, so the last parse is reused.
+// One instance per sender; not thread-safe.
+public class BinaryMessageEncoder implements MessageEncoder {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private String lastTimestamp;
+    private long lastTimestampMicros;
+
+    @Override
+    public WebSocketMessage<?> encodeFrame(ChatMessage msg) {
+        return new BinaryMessage(encode(msg));
+    }
+
+    public byte[] encode(ChatMessage msg) {
+        byte[] username = msg.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] message = msg.getMessage().getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer out = buffer;
+        out.clear();
+        out.put(BinaryProtocol.CHAT);
+        BinaryProtocol.writeVarint(out, msg.getMessageId());
+        BinaryProtocol.writeVarint(out, Integer.parseInt(msg.getUserId()));
+        out.put((byte) msg.getMessageType().ordinal());
+        BinaryProtocol.writeVarint(out, msg.getRoomId());
+        BinaryProtocol.writeSignedVarint(out, timestampMicros(msg.getTimestamp()));
+        BinaryProtocol.writeVarint(out, username.length);
+        out.put(username);
+        BinaryProtocol.writeVarint(out, message.length);
+        out.put(message);
+
+        byte[] frame = new byte[out.position()];
+        out.flip();
+        out.get(frame);
+        return frame;
+    }
+
+    private long timestampMicros(String timestamp) {
+        if (!timestamp.equals(lastTimestamp)) {
+            Instant instant = Instant.parse(timestamp);
+            lastTimestampMicros = instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+            lastTimestamp = timestamp;
+        }
+        return lastTimestampMicros;
+    }
+}
@@ -0,0 +1,67 @@
+package life.hebo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Client side of the server's BinaryProtocol (/chat-bin/{roomId}). Every frame starts with a kind
+// byte; integers are unsigned LEB128 varints, timestamps zigzag-encoded epoch microseconds,
+// strings a varint byte length followed by UTF-8.
+public class BinaryProtocol {
+
+    public static final byte CHAT = 1;
+    public static final byte ACK = 2;
+    public static final byte ERROR = 3;
+
+    private BinaryProtocol() {}
+
+    // ACK and ERROR frames both answer a message; CHAT frames are broadcasts from other room members
+    static boolean isAck(ByteBuffer frame) {
+        byte kind = frame.get(frame.position());
+        return kind == ACK || kind == ERROR;
+    }
+
+    static boolean isError(ByteBuffer frame) {
+        return frame.get(frame.position()) == ERROR;
+    }
+
+    // An ERROR frame's text: kind, messageId, serverTimestamp, then the error message
+    static String extractError(ByteBuffer frame) {
+        ByteBuffer in = frame.duplicate();
+        in.get();
+        readVarint(in);
+        readVarint(in);
+        int length = (int) Math.min(readVarint(in), in.remaining());
+        byte[] text = new byte[length];
+        in.get(text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    static long extractMessageId(ByteBuffer frame) {
+        ByteBuffer in = frame.duplicate();
+        in.get();
+        return readVarint(in);
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 63 && in.hasRemaining(); shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        return 0L;
+    }
+
+    static void writeVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    // Zigzag, so timestamps before 1970 still fit a 63-bit varint
+    static void writeSignedVarint(ByteBuffer out, long value) {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+}
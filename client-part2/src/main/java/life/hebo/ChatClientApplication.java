@@ -5,6 +5,7 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.RequiredArgsConstructor;
 
 import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.concurrent.*;
 
 public class ChatClientApplication {
@@ -15,19 +16,60 @@ public class ChatClientApplication {
         mapper.registerModule(new JavaTimeModule());
 
         MetricsCollector metrics = new MetricsCollector();
-        ConnectionManager connManager = new ConnectionManager(metrics, 15);
+        if ("USERS".equalsIgnoreCase(ClientConfig.LOAD_MODE)) {
+            SimulatedUserLoad.run(mapper, metrics);
+            System.out.println("\nTest complete.");
+            return;
+        }
+
+        boolean openLoop = "OPEN".equalsIgnoreCase(ClientConfig.LOAD_MODE);
+        // Open-loop senders never wait for acks, so connections need a deeper in-flight window
+        int connectionDepth = openLoop
+                ? Math.max(ClientConfig.PIPELINE_DEPTH, ClientConfig.OPEN_LOOP_PIPELINE_DEPTH)
+                : ClientConfig.PIPELINE_DEPTH;
+        // A connection needs at least one in-flight slot per message in a batch
+        connectionDepth = Math.max(connectionDepth, ClientConfig.BATCH_SIZE);
+        int connections = ClientConfig.CONNECTIONS_PER_ROOM;
+        if (ClientConfig.MULTIPLEXED) {
+            // The shared connections hold as many in-flight slots as the senders can fill
+            connections = ClientConfig.MUX_CONNECTIONS;
+            connectionDepth = Math.max(connectionDepth,
+                    ClientConfig.MAIN_PHASE_THREADS * ClientConfig.PIPELINE_DEPTH / connections + 1);
+        }
+        ConnectionManager connManager = new ConnectionManager(
+                metrics, connections, connectionDepth, ClientConfig.WIRE_PROTOCOL);
+        connManager.enableBatching(ClientConfig.BATCH_SIZE, ClientConfig.BATCH_LINGER_MS);
+        if (ClientConfig.MULTIPLEXED) connManager.enableMultiplexing();
+        if (ClientConfig.SERVER_TIMINGS) connManager.requestServerTimings();
+        if (ClientConfig.ACK_COALESCE_MAX_ACKS > 1) {
+            connManager.requestAckCoalescing(ClientConfig.ACK_COALESCE_MAX_ACKS, ClientConfig.ACK_COALESCE_FLUSH_MICROS);
+        }
 
-        BlockingQueue<ChatMessage> queue = new LinkedBlockingQueue<>(ClientConfig.QUEUE_CAPACITY);
+        // message generation: one shared generator thread, or one inline generator per sender
+        boolean inlineGeneration = "INLINE".equalsIgnoreCase(ClientConfig.GENERATION_MODE);
+        SplittableRandom rootRandom = new SplittableRandom();
+        Thread generatorThread = null;
+        MessageSource queuedSource = null;
+        if (!inlineGeneration) {
+            BlockingQueue<ChatMessage> queue = new LinkedBlockingQueue<>(ClientConfig.QUEUE_CAPACITY);
+            generatorThread = new Thread(new MessageGenerator(queue, ClientConfig.TOTAL_MESSAGES), "msg-generator");
+            generatorThread.start();
+            queuedSource = new QueuedMessageSource(queue);
+        }
 
-        // message generator
-        MessageGenerator generator = new MessageGenerator(queue, ClientConfig.TOTAL_MESSAGES);
-        Thread generatorThread = new Thread(generator, "msg-generator");
-        generatorThread.start();
+        if (ClientConfig.PREWARM_CONNECTIONS) {
+            long prewarmStart = System.currentTimeMillis();
+            connManager.prewarm(ClientConfig.NUM_ROOMS);
+            System.out.printf("%nPre-warmed %,d connections in %.2f s%n",
+                    metrics.getTotalConnections().get(), (System.currentTimeMillis() - prewarmStart) / 1000.0);
+        }
 
         long overallStart = System.currentTimeMillis();
 
         // warmup
-        System.out.println("\nStarting Warmup Phase ...");
+        System.out.println("\nStarting Warmup Phase (pipeline depth " + ClientConfig.PIPELINE_DEPTH
+                + ", " + (inlineGeneration ? "inline" : "queued") + " generation, "
+                + ClientConfig.WIRE_PROTOCOL + " frames) ...");
         long warmupStart = System.currentTimeMillis();
 
         CountDownLatch warmupLatch = new CountDownLatch(ClientConfig.WARMUP_THREADS);
@@ -35,9 +77,10 @@ public class ChatClientApplication {
                 ClientConfig.WARMUP_THREADS, new DaemonThreadFactory("warmup"));
 
         for (int i = 0; i < ClientConfig.WARMUP_THREADS; i++) {
+            MessageSource source = inlineGeneration ? new InlineMessageGenerator(rootRandom.split()) : queuedSource;
             warmupPool.submit(new MessageSender(
-                    queue, connManager, metrics, mapper,
-                    ClientConfig.WARMUP_MESSAGES_PER_THREAD, warmupLatch));
+                    source, connManager, metrics, ClientConfig.WIRE_PROTOCOL.newEncoder(mapper),
+                    ClientConfig.WARMUP_MESSAGES_PER_THREAD, warmupLatch, ClientConfig.PIPELINE_DEPTH));
         }
 
         warmupLatch.await();
@@ -49,21 +92,41 @@ public class ChatClientApplication {
                 ClientConfig.WARMUP_TOTAL_MESSAGES / (warmupMs / 1000.0));
 
         // main phase
-        System.out.println("\nStarting Main Phase ...");
+        if (openLoop) {
+            System.out.printf("%nStarting Main Phase (open loop, %s, %,d msg/s) ...%n",
+                    ClientConfig.ARRIVAL_PATTERN, ClientConfig.OPEN_LOOP_RATE);
+        } else {
+            System.out.println("\nStarting Main Phase ...");
+        }
         long mainStart = System.currentTimeMillis();
 
+        int senderThreads = openLoop ? ClientConfig.OPEN_LOOP_THREADS : ClientConfig.MAIN_PHASE_THREADS;
         int remaining = ClientConfig.TOTAL_MESSAGES - ClientConfig.WARMUP_TOTAL_MESSAGES;
-        int perThread = remaining / ClientConfig.MAIN_PHASE_THREADS;
-        int extras    = remaining % ClientConfig.MAIN_PHASE_THREADS;
+        int perThread = remaining / senderThreads;
+        int extras    = remaining % senderThreads;
 
-        CountDownLatch mainLatch = new CountDownLatch(ClientConfig.MAIN_PHASE_THREADS);
+        CountDownLatch mainLatch = new CountDownLatch(senderThreads);
+        CountDownLatch completionLatch = new CountDownLatch(openLoop ? remaining : 0);
         ExecutorService mainPool = Executors.newFixedThreadPool(
-                ClientConfig.MAIN_PHASE_THREADS, new DaemonThreadFactory("sender"));
+                senderThreads, new DaemonThreadFactory("sender"));
 
-        for (int i = 0; i < ClientConfig.MAIN_PHASE_THREADS; i++) {
+        for (int i = 0; i < senderThreads; i++) {
             int count = perThread + (i < extras ? 1 : 0);
-            mainPool.submit(new MessageSender(
-                    queue, connManager, metrics, mapper, count, mainLatch));
+            MessageSource source = inlineGeneration ? new InlineMessageGenerator(rootRandom.split()) : queuedSource;
+            if (openLoop) {
+                // Each thread carries an equal share of the target rate
+                ArrivalSchedule schedule = new ArrivalSchedule(ClientConfig.ARRIVAL_PATTERN,
+                        ClientConfig.OPEN_LOOP_RATE / (double) senderThreads,
+                        ClientConfig.OPEN_LOOP_STEP_RATE / (double) senderThreads,
+                        ClientConfig.OPEN_LOOP_STEP_SECONDS);
+                mainPool.submit(new OpenLoopSender(
+                        source, connManager, metrics, ClientConfig.WIRE_PROTOCOL.newEncoder(mapper),
+                        count, schedule, mainLatch, completionLatch));
+            } else {
+                mainPool.submit(new MessageSender(
+                        source, connManager, metrics, ClientConfig.WIRE_PROTOCOL.newEncoder(mapper),
+                        count, mainLatch, ClientConfig.PIPELINE_DEPTH));
+            }
         }
 
         // Progress monitor
@@ -82,6 +145,8 @@ public class ChatClientApplication {
         monitor.start();
 
         mainLatch.await();
+        // Open loop: wait for the last acks (or their timeouts) to come back
+        completionLatch.await();
         mainPool.shutdown();
 
         long mainMs     = System.currentTimeMillis() - mainStart;
@@ -90,7 +155,9 @@ public class ChatClientApplication {
         System.out.printf("\n  Main phase complete: %.2f s%n", mainMs / 1000.0);
 
         // Wait for generator to finish
-        generatorThread.join(5000);
+        if (generatorThread != null) {
+            generatorThread.join(5000);
+        }
 
         // Results
         double actualThroughput = metrics.getSuccessCount().get() / (totalMs / 1000.0);
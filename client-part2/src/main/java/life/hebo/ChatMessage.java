@@ -19,4 +19,7 @@ public class ChatMessage {
     @JsonProperty(required = false)
     private int roomId;
 
+    // Correlation ID matched against the messageId of the ServerResponse ack
+    private long messageId;
+
 }
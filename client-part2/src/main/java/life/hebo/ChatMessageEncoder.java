@@ -0,0 +1,103 @@
+package life.hebo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Writes ChatMessage frames without the ObjectMapper: the constant parts of the JSON (field names,
+// and the quoted text of every MESSAGES_POOL entry) are encoded once, and only the user, timestamp,
+// type, room and id are appended per message into a reused buffer.
+// Produces the same JSON as mapper.writeValueAsString(msg). One instance per sender; not thread-safe.
+public class ChatMessageEncoder implements MessageEncoder {
+
+    private static final String USER_ID = "{\"userId\":";
+    private static final String USERNAME = ",\"username\":";
+    private static final String MESSAGE = ",\"message\":";
+    private static final String TIMESTAMP = ",\"timestamp\":";
+    private static final String MESSAGE_TYPE = ",\"messageType\":";
+    private static final String ROOM_ID = ",\"roomId\":";
+    private static final String MESSAGE_ID = ",\"messageId\":";
+
+    private static final String[] QUOTED_TYPES;
+    private static final Map<String, String> QUOTED_POOL = new HashMap<>();
+
+    static {
+        MessageType[] types = MessageType.values();
+        QUOTED_TYPES = new String[types.length];
+        for (MessageType type : types) {
+            QUOTED_TYPES[type.ordinal()] = '"' + type.name() + '"';
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String text : ClientConfig.MESSAGES_POOL) {
+            sb.setLength(0);
+            appendQuoted(sb, text);
+            QUOTED_POOL.put(text, sb.toString());
+        }
+    }
+
+    private final ObjectMapper mapper;
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    public ChatMessageEncoder(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public WebSocketMessage<?> encodeFrame(ChatMessage msg) throws JsonProcessingException {
+        return new TextMessage(encode(msg));
+    }
+
+    public String encode(ChatMessage msg) throws JsonProcessingException {
+        String quotedMessage = msg.getMessage() == null ? null : QUOTED_POOL.get(msg.getMessage());
+        if (quotedMessage == null || msg.getMessageType() == null) {
+            // Free text (or a null field): let Jackson handle it
+            return mapper.writeValueAsString(msg);
+        }
+
+        StringBuilder sb = buffer;
+        sb.setLength(0);
+        sb.append(USER_ID);
+        appendQuoted(sb, msg.getUserId());
+        sb.append(USERNAME);
+        appendQuoted(sb, msg.getUsername());
+        sb.append(MESSAGE).append(quotedMessage);
+        sb.append(TIMESTAMP);
+        appendQuoted(sb, msg.getTimestamp());
+        sb.append(MESSAGE_TYPE).append(QUOTED_TYPES[msg.getMessageType().ordinal()]);
+        sb.append(ROOM_ID).append(msg.getRoomId());
+        sb.append(MESSAGE_ID).append(msg.getMessageId());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    // JSON string literal with the escaping Jackson applies by default
+    private static void appendQuoted(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                switch (c) {
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    case '\t': sb.append("\\t"); break;
+                    case '\b': sb.append("\\b"); break;
+                    case '\f': sb.append("\\f"); break;
+                    default: sb.append(String.format("\\u%04X", (int) c));
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
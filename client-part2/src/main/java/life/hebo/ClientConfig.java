@@ -6,6 +6,11 @@ public class ClientConfig {
 
     // ── Server ───────────────────────────────────────────────
     public static final String SERVER_URI = "ws://localhost:8080/chat/";
+    public static final String SERVER_BINARY_URI = "ws://localhost:8080/chat-bin/";
+    // One session for many rooms: JOIN/LEAVE frames subscribe it, every frame names its roomId
+    public static final String SERVER_MUX_URI = "ws://localhost:8080/chat-mux";
+    // Frame format for pooled connections: JSON text frames or BinaryProtocol frames
+    public static final WireProtocol WIRE_PROTOCOL = WireProtocol.valueOf(System.getProperty("chat.protocol", "JSON"));
 
     // Messages
     public static final int MAX_USER_ID = 100000;
@@ -14,6 +19,9 @@ public class ClientConfig {
     public static final double TEXT_RATIO = 90;
     public static final double JOIN_RATIO = 5;
 
+    // Generation: QUEUED feeds senders from one MessageGenerator thread, INLINE builds messages on each sender
+    public static final String GENERATION_MODE = System.getProperty("chat.generation", "QUEUED");
+
     // Warmup Phase
     public static final int WARMUP_THREADS = 32;
     public static final int WARMUP_MESSAGES_PER_THREAD = 1000;
@@ -23,6 +31,54 @@ public class ClientConfig {
     public static final int MAIN_PHASE_THREADS  = 64;
     public static final int MAIN_PHASE_MESSAGES = TOTAL_MESSAGES - WARMUP_TOTAL_MESSAGES;
 
+    // Pipelining: un-acked messages per sender and per pooled connection (1 = stop-and-wait)
+    public static final int PIPELINE_DEPTH = Integer.getInteger("chat.pipelineDepth", 1);
+    public static final int[] PIPELINE_DEPTH_SWEEP = {1, 2, 4, 8, 16};
+    public static final int PIPELINE_SWEEP_MESSAGES = 100000;
+
+    // Batching (JSON frames): messages per envelope per connection (1 = off), and how long a partial batch may wait
+    public static final int BATCH_SIZE = Integer.getInteger("chat.batchSize", 1);
+    public static final long BATCH_LINGER_MS = Long.getLong("chat.batchLingerMs", 5);
+    public static final int[] BATCH_SIZE_SWEEP = {1, 2, 4, 8, 16, 32, 64};
+    public static final int BATCH_SWEEP_PIPELINE_DEPTH = 16;
+    public static final int BATCH_SWEEP_CONNECTION_DEPTH = 64;
+
+    // Server-side ack coalescing: acks per frame the server may hold back (1 = off) and its flush interval
+    public static final int ACK_COALESCE_MAX_ACKS = Integer.getInteger("chat.ackBatch", 1);
+    public static final long ACK_COALESCE_FLUSH_MICROS = Long.getLong("chat.ackFlushMicros", 200);
+    public static final int[] ACK_COALESCE_SWEEP = {1, 4, 16, 64};
+
+    // Ask the server for per-stage timings on its acks, to split latency into server and network time
+    public static final boolean SERVER_TIMINGS = Boolean.getBoolean("chat.serverTimings");
+
+    // Load mode: CLOSED waits for each ack before the next send, OPEN sends on a fixed schedule,
+    // USERS runs SIM_USERS independent users with their own sessions
+    public static final String LOAD_MODE = System.getProperty("chat.loadMode", "CLOSED");
+    public static final ArrivalSchedule.Pattern ARRIVAL_PATTERN =
+            ArrivalSchedule.Pattern.valueOf(System.getProperty("chat.arrivalPattern", "FIXED"));
+    public static final int OPEN_LOOP_RATE = Integer.getInteger("chat.targetRate", 5000);     // msg/s
+    public static final int OPEN_LOOP_STEP_RATE = Integer.getInteger("chat.stepRate", 1000);  // msg/s added per step
+    public static final int OPEN_LOOP_STEP_SECONDS = Integer.getInteger("chat.stepSeconds", 10);
+    public static final int OPEN_LOOP_THREADS = 8;
+    public static final int OPEN_LOOP_PIPELINE_DEPTH = 64;
+
+    // Simulated users (chat.loadMode=USERS): one session and one virtual thread per user
+    public static final int SIM_USERS = Integer.getInteger("chat.users", 10000);
+    public static final int SIM_USERS_PER_ROOM = 50;
+    public static final int SIM_MESSAGES_PER_USER = Integer.getInteger("chat.messagesPerUser", 10);
+    public static final long SIM_THINK_TIME_MS = Long.getLong("chat.thinkTimeMs", 1000);
+    public static final int SIM_RAMP_PER_SECOND = Integer.getInteger("chat.rampRate", 2000);     // new sessions/s
+
+    // Connection pool
+    public static final int CONNECTIONS_PER_ROOM = 15;
+    public static final long BORROW_TIMEOUT_MS = 1000;
+    public static final boolean PREWARM_CONNECTIONS = Boolean.getBoolean("chat.prewarm");
+    // Multiplexing (JSON frames): a fixed set of connections to /chat-mux shared by all rooms instead
+    // of CONNECTIONS_PER_ROOM per room. Each joins every room it sends to, so with CONNECTIONS_PER_ROOM
+    // of them a room has as many members, and broadcasts as many frames, as in the per-room layout.
+    public static final boolean MULTIPLEXED = Boolean.getBoolean("chat.multiplexed");
+    public static final int MUX_CONNECTIONS = Integer.getInteger("chat.muxConnections", CONNECTIONS_PER_ROOM);
+
     // Queue
     public static final int QUEUE_CAPACITY = 50000;
 
@@ -1,71 +1,174 @@
 package life.hebo;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.client.standard.StandardWebSocketClient;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 @RequiredArgsConstructor
 public class ConnectionManager {
 
-    private final ConcurrentHashMap<Integer, CopyOnWriteArrayList<PooledConnection>> pool = new ConcurrentHashMap<>();
+    // Acks are ServerResponse frames; room broadcasts from other members are ChatMessage frames
+    private static final String ACK_PREFIX = "{\"status\"";
+    private static final String MESSAGE_ID_FIELD = "\"messageId\":";
+    // Marks an ERROR ack or batch ack item, which carries the error text and, if the server wants the
+    // message sent again later, retryAfterMs
+    private static final String ERROR_STATUS = "\"status\":\"ERROR\"";
+    private static final String MESSAGE_FIELD = "\"message\":\"";
+    private static final String RETRY_AFTER_FIELD = "\"retryAfterMs\":";
+    // Set by servers with a room sequencer on broadcasts, acks and batch ack items
+    private static final String SEQUENCE_FIELD = "\"sequence\":";
+    // Names the room of broadcasts, and of acks on multiplexed connections
+    private static final String ROOM_ID_FIELD = "\"roomId\":";
+    // Per-stage server timings on acks, in the order of MetricsCollector.SERVER_STAGES
+    private static final String TIMINGS_FIELD = "\"timings\":{";
+    private static final String[] STAGE_FIELDS = {
+            "\"decodeMicros\":", "\"checksMicros\":", "\"queueMicros\":", "\"persistMicros\":", "\"timestampMicros\":"};
+    private static final String SERVER_MICROS_FIELD = "\"serverMicros\":";
+    // Pool key for multiplexed connections, which serve every room
+    private static final int MULTIPLEXED_POOL = 0;
+    private static final String BATCH_ACK_PREFIX = "{\"status\":\"BATCH\"";
+    private static final String BATCH_PREFIX = "{\"messages\":[";
+    private static final String BATCH_SUFFIX = "]}";
+
+    private final ConcurrentHashMap<Integer, RoomPool> pool = new ConcurrentHashMap<>();
     private final MetricsCollector metrics;
     private final int connectionsPerRoom;
+    // Max un-acked messages per connection
+    private final int pipelineDepth;
+    private final WireProtocol protocol;
+
+    // Frame payload bytes in each direction (inbound includes room broadcasts from other members)
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder ackFramesReceived = new LongAdder();
+    // Appended to the connect URL, e.g. to ask the server to coalesce acks
+    private String connectQuery = "";
+
+    // Batching (JSON only): up to batchSize frames per connection go out as one envelope,
+    // or fewer once the first of them has waited lingerMs
+    private int batchSize = 1;
+    private long lingerMs;
+    private ScheduledExecutorService lingerTimer;
+
+    // Multiplexing (JSON only): all rooms share one pool of connectionsPerRoom sessions to /chat-mux,
+    // and a session sends a JOIN for a room before its first message there
+    private boolean multiplexed;
+    // JOINs sent only to subscribe a multiplexed session to a room, on top of the generated messages
+    private final LongAdder subscriptionJoins = new LongAdder();
+
+    // Asks the server to send this pool's acks in frames of up to maxAcks, flushed after flushMicros
+    public void requestAckCoalescing(int maxAcks, long flushMicros) {
+        addQuery("ackBatch=" + maxAcks + "&ackFlushMicros=" + flushMicros);
+    }
 
-    public PooledConnection borrowConnection(int roomId) throws Exception {
-        CopyOnWriteArrayList<PooledConnection> roomPool = pool.computeIfAbsent(roomId, k -> new CopyOnWriteArrayList<>());
+    // Asks the server for per-stage timings on this pool's acks, single or coalesced
+    public void requestServerTimings() {
+        addQuery("timings=true");
+    }
 
-        for (PooledConnection pc : roomPool) {
-            if (pc.isOpen() && pc.tryAcquire()) {
-                return pc;
-            }
-        }
+    private void addQuery(String parameters) {
+        connectQuery += (connectQuery.isEmpty() ? "?" : "&") + parameters;
+    }
+
+    public void enableBatching(int batchSize, long lingerMs) {
+        if (batchSize <= 1) return;
+        this.batchSize = batchSize;
+        this.lingerMs = lingerMs;
+        this.lingerTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "batch-linger");
+            t.setDaemon(true);
+            return t;
+        });
+    }
 
-        // Create a new connection if pool is not full
-        if (roomPool.size() < connectionsPerRoom) {
-            PooledConnection pc = createConnection(roomId);
-            roomPool.add(pc);
-            pc.tryAcquire();
-            return pc;
+    // Call after enableBatching: a multiplexed batch could name several rooms, which the server refuses
+    public void enableMultiplexing() {
+        if (protocol != WireProtocol.JSON || batchSize > 1) {
+            throw new IllegalStateException("Multiplexed connections send single JSON frames only");
         }
+        multiplexed = true;
+    }
+
+    // Hands out one in-flight slot on a room connection. The slot goes back to the room's
+    // free-list when the message is acked, abandoned or failed, not when the caller is done sending.
+    public PooledConnection borrowConnection(int roomId) throws Exception {
+        RoomPool roomPool = pool.computeIfAbsent(poolKey(roomId), RoomPool::new);
+
+        long startNs = System.nanoTime();
+        PooledConnection pc = roomPool.take();
+        metrics.recordBorrowWait((System.nanoTime() - startNs) / 1_000);
 
         // Reconnect a broken connection
-        for (PooledConnection pc : roomPool) {
-            if (!pc.isOpen() && pc.tryAcquire()) {
-                reconnect(pc);
-                metrics.incrementReconnections();
-                return pc;
-            }
+        try {
+            if (reconnectIfBroken(pc)) metrics.incrementReconnections();
+        } catch (Exception e) {
+            roomPool.release(pc);
+            throw e;
         }
+        return pc;
+    }
 
-        return null;
+    // Opens every connection for rooms 1..numRooms up front, so the first messages do not pay for handshakes
+    public void prewarm(int numRooms) throws Exception {
+        for (int roomId = 1; roomId <= numRooms; roomId++) {
+            RoomPool roomPool = pool.computeIfAbsent(poolKey(roomId), RoomPool::new);
+            while (roomPool.reserveConnection()) {
+                roomPool.publish(createConnection(roomPool), pipelineDepth);
+            }
+        }
     }
 
-    public void returnConnection(PooledConnection pc) {
-        pc.release();
+    // Reconnects pc if its session is down and returns true if this call did it. Borrowers of other
+    // slots may hold the same broken connection: one of them reconnects, the others wait for it
+    // and then find the connection open.
+    public boolean reconnectIfBroken(PooledConnection pc) throws Exception {
+        synchronized (pc.reconnectLock) {
+            if (pc.isOpen()) return false;
+            reconnect(pc);
+            return true;
+        }
     }
 
     public void reconnect(PooledConnection pc) throws Exception {
-        try {
-            if (pc.getSession() != null && pc.getSession().isOpen()) {
-                pc.getSession().close();
-            }
-        } catch (IOException ignored) {}
+        synchronized (pc.reconnectLock) {
+            // Acks for messages sent on the old session will never arrive
+            pc.discardBatch();
+            pc.completeExceptionally(new IOException("Connection to room " + pc.getRoomId() + " was reset"));
+            try {
+                if (pc.getSession() != null && pc.getSession().isOpen()) {
+                    pc.getSession().close();
+                }
+            } catch (IOException ignored) {}
 
-        connectSession(pc);
+            connectSession(pc);
+        }
     }
 
     public void closeAll() {
-        pool.values().forEach(list -> list.forEach(pc -> {
+        pool.values().forEach(roomPool -> roomPool.connections.forEach(pc -> {
             try {
                 if (pc.getSession() != null && pc.getSession().isOpen()) {
                     pc.getSession().close();
@@ -73,23 +176,112 @@ public class ConnectionManager {
             } catch (IOException ignored) {}
         }));
         pool.clear();
+        if (lingerTimer != null) {
+            lingerTimer.shutdownNow();
+        }
     }
 
-    private PooledConnection createConnection(int roomId) throws Exception {
-        PooledConnection pc = new PooledConnection(roomId);
-        connectSession(pc);
+    // Adds an already-open session to a room's pool without connecting (used by the benchmarks)
+    PooledConnection addConnection(int roomId, WebSocketSession session) {
+        RoomPool roomPool = pool.computeIfAbsent(roomId, RoomPool::new);
+        if (!roomPool.reserveConnection()) {
+            throw new IllegalStateException("Room " + roomId + " already has " + connectionsPerRoom + " connections");
+        }
+        PooledConnection pc = new PooledConnection(roomPool);
+        pc.setSession(session);
+        roomPool.publish(pc, pipelineDepth);
+        return pc;
+    }
+
+    private int poolKey(int roomId) {
+        return multiplexed ? MULTIPLEXED_POOL : roomId;
+    }
+
+    private PooledConnection createConnection(RoomPool roomPool) throws Exception {
+        PooledConnection pc = new PooledConnection(roomPool);
+        try {
+            connectSession(pc);
+        } catch (Exception e) {
+            roomPool.cancelReservation();
+            throw e;
+        }
         metrics.incrementConnections();
         return pc;
     }
 
     private void connectSession(PooledConnection pc) throws Exception {
         StandardWebSocketClient client = new StandardWebSocketClient();
-        URI uri = URI.create(ClientConfig.SERVER_URI + pc.getRoomId());
+        URI uri = URI.create((multiplexed ? ClientConfig.SERVER_MUX_URI : protocol.getServerUri() + pc.getRoomId())
+                + connectQuery);
+        // A new session starts out in no room
+        pc.resetSubscriptions();
+
+        WebSocketSession session = client.execute(new AbstractWebSocketHandler() {
+            // Highest sequence number seen on this session, per room; frames of one session arrive one at a time
+            private long[] highestSequence = new long[ClientConfig.NUM_ROOMS + 1];
 
-        WebSocketSession session = client.execute(new TextWebSocketHandler() {
             @Override
             protected void handleTextMessage(WebSocketSession sess, TextMessage msg) {
-                pc.completeResponse(msg.getPayload());
+                long receivedNs = System.nanoTime();
+                String payload = msg.getPayload();
+                bytesReceived.add(msg.getPayloadLength());
+                if (payload.startsWith(BATCH_ACK_PREFIX)) {
+                    ackFramesReceived.increment();
+                    // A BatchResponse lists every item's messageId, in send order, each item's other
+                    // fields following it. Our own messages are acked, not broadcast back, so their
+                    // numbers come from the acks.
+                    int idx = payload.indexOf(MESSAGE_ID_FIELD);
+                    while (idx >= 0) {
+                        int next = payload.indexOf(MESSAGE_ID_FIELD, idx + 1);
+                        int end = next < 0 ? payload.length() : next;
+                        long messageId = parseLong(payload, idx + MESSAGE_ID_FIELD.length());
+                        boolean success = completeResponse(pc, messageId, payload, idx, end, receivedNs);
+                        int roomId = multiplexed ? (int) fieldBetween(payload, ROOM_ID_FIELD, idx, end) : pc.getRoomId();
+                        checkSequence(roomId, fieldBetween(payload, SEQUENCE_FIELD, idx, end),
+                                pc.joinAcked(messageId, success));
+                        recordServerTimings(payload, idx, end);
+                        idx = next;
+                    }
+                } else if (isAck(payload)) {
+                    ackFramesReceived.increment();
+                    long messageId = extractMessageId(payload);
+                    boolean success = completeResponse(pc, messageId, payload, 0, payload.length(), receivedNs);
+                    checkSequence(roomOf(payload), extractSequence(payload), pc.joinAcked(messageId, success));
+                    recordServerTimings(payload, 0, payload.length());
+                } else {
+                    checkSequence(roomOf(payload), extractSequence(payload), false);
+                }
+            }
+
+            private int roomOf(String payload) {
+                if (!multiplexed) return pc.getRoomId();
+                int idx = payload.lastIndexOf(ROOM_ID_FIELD);
+                return idx < 0 ? 0 : (int) parseLong(payload, idx + ROOM_ID_FIELD.length());
+            }
+
+            // rejoined: the ack of this session's JOIN, after which the room's numbers start afresh
+            private void checkSequence(int roomId, long sequence, boolean rejoined) {
+                if (sequence == 0 || roomId <= 0) return;
+                if (roomId >= highestSequence.length) {
+                    highestSequence = Arrays.copyOf(highestSequence, roomId + 1);
+                }
+                highestSequence[roomId] = metrics.recordSequence(rejoined ? 0 : highestSequence[roomId], sequence);
+            }
+
+            @Override
+            protected void handleBinaryMessage(WebSocketSession sess, BinaryMessage msg) {
+                long receivedNs = System.nanoTime();
+                ByteBuffer payload = msg.getPayload();
+                bytesReceived.add(msg.getPayloadLength());
+                if (BinaryProtocol.isAck(payload)) {
+                    ackFramesReceived.increment();
+                    long messageId = BinaryProtocol.extractMessageId(payload);
+                    if (BinaryProtocol.isError(payload)) {
+                        pc.failResponse(messageId, new ErrorAckException(BinaryProtocol.extractError(payload), 0));
+                    } else {
+                        pc.completeResponse(messageId, receivedNs);
+                    }
+                }
             }
 
             @Override
@@ -102,47 +294,407 @@ public class ConnectionManager {
         pc.setSession(session);
     }
 
-    @RequiredArgsConstructor
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long getAckFramesReceived() {
+        return ackFramesReceived.sum();
+    }
+
+    public long getSubscriptionJoins() {
+        return subscriptionJoins.sum();
+    }
+
+    static boolean isAck(String payload) {
+        return payload.startsWith(ACK_PREFIX);
+    }
+
+    // A single (not coalesced) ERROR ack
+    static boolean isErrorAck(String payload) {
+        return payload.startsWith(ERROR_STATUS, 1);
+    }
+
+    // messageId is the last field of a ServerResponse, so scan from the end instead of parsing the frame
+    static long extractMessageId(String payload) {
+        int idx = payload.lastIndexOf(MESSAGE_ID_FIELD);
+        if (idx < 0) return 0L;
+
+        long id = 0;
+        for (int i = idx + MESSAGE_ID_FIELD.length(); i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (c < '0' || c > '9') break;
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    // Records the per-stage server timings an ack (or the ack item in payload[from, to)) carries,
+    // if the server sent any
+    private void recordServerTimings(String payload, int from, int to) {
+        from = payload.indexOf(TIMINGS_FIELD, from);
+        if (from < 0 || from >= to) return;
+        to = payload.indexOf('}', from);
+        long[] stageMicros = new long[STAGE_FIELDS.length];
+        for (int i = 0; i < STAGE_FIELDS.length; i++) {
+            stageMicros[i] = fieldBetween(payload, STAGE_FIELDS[i], from, to);
+        }
+        metrics.recordServerTimings(stageMicros, fieldBetween(payload, SERVER_MICROS_FIELD, from, to));
+    }
+
+    // The sequence field is the last one of a broadcast and comes after the message text in an ack,
+    // so the last occurrence is the field itself; 0 if the server does not sequence
+    static long extractSequence(String payload) {
+        int idx = payload.lastIndexOf(SEQUENCE_FIELD);
+        return idx < 0 ? 0L : parseLong(payload, idx + SEQUENCE_FIELD.length());
+    }
+
+    // The numeric field's value within payload[from, to), or 0 if it is not there
+    private static long fieldBetween(String payload, String field, int from, int to) {
+        int idx = payload.indexOf(field, from);
+        return idx < 0 || idx >= to ? 0L : parseLong(payload, idx + field.length());
+    }
+
+    private static long parseLong(String payload, int from) {
+        long value = 0;
+        for (int i = from; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Completes the message's ack future, or fails it with an ErrorAckException if the ack (or the
+    // ack item in payload[from, to)) is an ERROR. Returns false for an ERROR.
+    private static boolean completeResponse(PooledConnection pc, long messageId, String payload, int from, int to,
+                                            long receivedNs) {
+        int status = payload.indexOf(ERROR_STATUS, from);
+        if (status < 0 || status >= to) {
+            pc.completeResponse(messageId, receivedNs);
+            return true;
+        }
+        pc.failResponse(messageId, new ErrorAckException(textBetween(payload, MESSAGE_FIELD, from, to),
+                fieldBetween(payload, RETRY_AFTER_FIELD, from, to)));
+        return false;
+    }
+
+    // The string field's raw (still escaped) value within payload[from, to), or "" if it is not there
+    private static String textBetween(String payload, String field, int from, int to) {
+        int start = payload.indexOf(field, from);
+        if (start < 0 || start >= to) return "";
+        start += field.length();
+        int end = start;
+        while (end < to && payload.charAt(end) != '"') {
+            end += payload.charAt(end) == '\\' ? 2 : 1;
+        }
+        return payload.substring(start, Math.min(end, to));
+    }
+
+    // An ERROR answer to a message. Retryable ones were turned away for now (rate limit, busy room,
+    // original still in progress, room whose JOIN failed): the sender should send the message
+    // again after retryAfterMs, or its own backoff if that is 0. Any other ERROR will not change
+    // on a retry.
+    public static class ErrorAckException extends IOException {
+        // The servers' wording for errors that are worth a retry
+        private static final String RETRY_LATER = "retry later";
+        private static final String RETRY_AFTER = "retry after ";
+        // A frame handled after its multiplexed session's JOIN failed; sending it again joins again
+        private static final String NOT_JOINED = "has not been joined";
+
+        private final long retryAfterMs;
+        private final boolean retryable;
+
+        public ErrorAckException(String message, long retryAfterMs) {
+            super(message);
+            // Binary ERRORs have no retryAfterMs field; the rate-limit text names the wait instead
+            int idx = message.indexOf(RETRY_AFTER);
+            this.retryAfterMs = retryAfterMs > 0 || idx < 0 ? retryAfterMs : parseLong(message, idx + RETRY_AFTER.length());
+            this.retryable = this.retryAfterMs > 0 || message.contains(RETRY_LATER) || message.contains(NOT_JOINED);
+        }
+
+        public long getRetryAfterMs() {
+            return retryAfterMs;
+        }
+
+        public boolean isRetryable() {
+            return retryable;
+        }
+    }
+
+    // Per-room free-list of in-flight slots. A connection appears in it once per free slot, so with
+    // pipelineDepth 1 it behaves like a classic exclusive pool. The permit count always equals the
+    // free slots plus the slots of connections not opened yet, which caps the room at
+    // connectionsPerRoom without a check-then-act race.
+    private class RoomPool {
+        private final int roomId;
+        private final ConcurrentLinkedQueue<PooledConnection> freeSlots = new ConcurrentLinkedQueue<>();
+        private final Semaphore permits = new Semaphore(connectionsPerRoom * pipelineDepth);
+        private final AtomicInteger created = new AtomicInteger();
+        private final CopyOnWriteArrayList<PooledConnection> connections = new CopyOnWriteArrayList<>();
+
+        private RoomPool(int roomId) {
+            this.roomId = roomId;
+        }
+
+        private PooledConnection take() throws Exception {
+            long deadlineNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ClientConfig.BORROW_TIMEOUT_MS);
+            // Parks until a slot is released; Semaphore hands permits to waiters in FIFO order
+            if (!permits.tryAcquire(ClientConfig.BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw borrowTimeout();
+            }
+            try {
+                while (true) {
+                    PooledConnection pc = freeSlots.poll();
+                    if (pc != null) return pc;
+
+                    if (reserveConnection()) {
+                        // Keep one slot for this borrower, publish the rest
+                        PooledConnection opened = createConnection(this);
+                        publish(opened, pipelineDepth - 1);
+                        return opened;
+                    }
+                    // Another borrower is still opening the connection that backs our permit
+                    awaitPublish(deadlineNs);
+                }
+            } catch (Exception e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        // Parks until publish or cancelReservation signals, which can take a whole handshake.
+        // The check runs under the same lock they signal under, so neither can be missed.
+        private synchronized void awaitPublish(long deadlineNs) throws InterruptedException, TimeoutException {
+            if (!freeSlots.isEmpty() || created.get() < connectionsPerRoom) return;
+            long remainingNs = deadlineNs - System.nanoTime();
+            if (remainingNs <= 0) throw borrowTimeout();
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNs);
+        }
+
+        private TimeoutException borrowTimeout() {
+            return new TimeoutException("No free connection for room " + roomId
+                    + " within " + ClientConfig.BORROW_TIMEOUT_MS + " ms");
+        }
+
+        private void release(PooledConnection pc) {
+            freeSlots.offer(pc);
+            permits.release();
+        }
+
+        private boolean reserveConnection() {
+            int n;
+            do {
+                n = created.get();
+                if (n >= connectionsPerRoom) return false;
+            } while (!created.compareAndSet(n, n + 1));
+            return true;
+        }
+
+        // A borrower waiting in awaitPublish may now open the connection itself
+        private void cancelReservation() {
+            created.decrementAndGet();
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        // Slots of a new connection were already counted in the permits, so they are added without release
+        private void publish(PooledConnection pc, int slots) {
+            connections.add(pc);
+            for (int i = 0; i < slots; i++) {
+                freeSlots.offer(pc);
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
     public class PooledConnection {
 
         private volatile WebSocketSession session;
-        private volatile CompletableFuture<String> pendingResponse;
-        private final AtomicBoolean inUse = new AtomicBoolean(false);
-        private final int roomId;
+        // Held while the session is replaced, so only one borrower reconnects at a time
+        private final Object reconnectLock = new Object();
+        // Un-acked messages keyed by messageId; completed with the ack's arrival time (nanoTime)
+        private final ConcurrentHashMap<Long, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>();
+        private final RoomPool roomPool;
+        // Frames waiting to go out as one {"messages":[...]} envelope; guarded by this
+        private final StringBuilder batch = new StringBuilder();
+        private int batchCount;
+        private long batchGeneration;
+        // Multiplexed only. Rooms the server has confirmed this session joined, rooms with a JOIN
+        // still awaiting its ack, and the encoder for the JOINs; guarded by this
+        private final BitSet joinedRooms = new BitSet();
+        private final BitSet joiningRooms = new BitSet();
+        private ChatMessageEncoder joinEncoder;
+        // JOINs sent on this session whose acks have not arrived yet, mapped to their room
+        private final Map<Long, Integer> joinIds = new ConcurrentHashMap<>();
+
+        private PooledConnection(RoomPool roomPool) {
+            this.roomPool = roomPool;
+        }
 
         public int getRoomId() {
-            return roomId;
+            return roomPool.roomId;
         }
 
         public boolean isOpen() {
             return session != null && session.isOpen();
         }
 
-        public boolean tryAcquire() {
-            return inUse.compareAndSet(false, true);
+        public CompletableFuture<Long> prepareForResponse(long messageId) {
+            CompletableFuture<Long> f = new CompletableFuture<>();
+            inFlight.put(messageId, f);
+            return f;
         }
 
-        public void release() {
-            inUse.set(false);
+        public void completeResponse(long messageId, long receivedNanos) {
+            CompletableFuture<Long> f = inFlight.remove(messageId);
+            if (f != null) {
+                roomPool.release(this);
+                f.complete(receivedNanos);
+            }
         }
 
-        public CompletableFuture<String> prepareForResponse() {
-            pendingResponse = new CompletableFuture<>();
-            return pendingResponse;
+        // The server answered with an ERROR
+        public void failResponse(long messageId, Throwable t) {
+            CompletableFuture<Long> f = inFlight.remove(messageId);
+            if (f != null) {
+                roomPool.release(this);
+                f.completeExceptionally(t);
+            }
         }
 
-        public void completeResponse(String payload) {
-            CompletableFuture<String> f = pendingResponse;
-            if (f != null) f.complete(payload);
+        public void abandon(long messageId) {
+            if (inFlight.remove(messageId) != null) {
+                roomPool.release(this);
+            }
         }
 
         public void completeExceptionally(Throwable t) {
-            CompletableFuture<String> f = pendingResponse;
-            if (f != null) f.completeExceptionally(t);
+            for (Long messageId : inFlight.keySet()) {
+                CompletableFuture<Long> f = inFlight.remove(messageId);
+                if (f != null) {
+                    roomPool.release(this);
+                    f.completeExceptionally(t);
+                }
+            }
+        }
+
+        public int getInFlightCount() {
+            return inFlight.size();
+        }
+
+        // Sends msg's frame. A multiplexed session first joins msg's room if it is not in it yet and
+        // has no JOIN there in flight, and is out of the room again once it has sent a LEAVE there.
+        // Frames sent behind a JOIN are handled after it, so they need not wait for its ack.
+        public synchronized void send(ChatMessage msg, WebSocketMessage<?> frame) throws IOException {
+            if (!multiplexed) {
+                send(frame);
+                return;
+            }
+            int roomId = msg.getRoomId();
+            if (msg.getMessageType() == MessageType.JOIN) {
+                joinIds.put(msg.getMessageId(), roomId);
+                joiningRooms.set(roomId);
+            } else if (!joinedRooms.get(roomId) && !joiningRooms.get(roomId)) {
+                ChatMessage join = new ChatMessage(msg.getUserId(), msg.getUsername(), msg.getMessage(),
+                        msg.getTimestamp(), MessageType.JOIN, roomId, MessageSender.nextMessageId());
+                if (joinEncoder == null) joinEncoder = new ChatMessageEncoder(new ObjectMapper());
+                joinIds.put(join.getMessageId(), roomId);
+                joiningRooms.set(roomId);
+                send(joinEncoder.encodeFrame(join));
+                subscriptionJoins.increment();
+            }
+            send(frame);
+            if (msg.getMessageType() == MessageType.LEAVE) {
+                joinedRooms.clear(roomId);
+                joiningRooms.clear(roomId);
+            }
+        }
+
+        // Settles a JOIN this session sent: its room counts as joined only if the server accepted
+        // it, so after an ERROR the next send there joins again. True (once) if messageId is such
+        // a JOIN.
+        private boolean joinAcked(long messageId, boolean success) {
+            if (joinIds.isEmpty()) return false;
+            Integer roomId = joinIds.remove(messageId);
+            if (roomId == null) return false;
+            synchronized (this) {
+                // Unless a LEAVE went out meanwhile
+                if (success && joiningRooms.get(roomId)) joinedRooms.set(roomId);
+                joiningRooms.clear(roomId);
+            }
+            return true;
         }
 
-        public void send(String json) throws IOException {
-            session.sendMessage(new TextMessage(json));
+        private synchronized void resetSubscriptions() {
+            joinedRooms.clear();
+            joiningRooms.clear();
+            joinIds.clear();
+        }
+
+        // Borrowers of different slots may share the session, which only allows one writer at a time
+        public synchronized void send(WebSocketMessage<?> frame) throws IOException {
+            if (batchSize > 1 && frame instanceof TextMessage) {
+                appendToBatch(((TextMessage) frame).getPayload());
+                return;
+            }
+            if (frame instanceof BinaryMessage) {
+                // Tomcat consumes the ByteBuffer it writes; retries must be able to send the frame again
+                frame = new BinaryMessage(((BinaryMessage) frame).getPayload().duplicate());
+            }
+            bytesSent.add(frame.getPayloadLength());
+            session.sendMessage(frame);
+        }
+
+        private void appendToBatch(String json) throws IOException {
+            if (batchCount == 0) {
+                batch.append(BATCH_PREFIX);
+                long generation = ++batchGeneration;
+                lingerTimer.schedule(() -> flushIfPending(generation), lingerMs, TimeUnit.MILLISECONDS);
+            } else {
+                batch.append(',');
+            }
+            batch.append(json);
+            if (++batchCount >= batchSize) {
+                flushBatch();
+            }
+        }
+
+        private synchronized void discardBatch() {
+            batch.setLength(0);
+            batchCount = 0;
+        }
+
+        // Linger timeout: flush the batch it was scheduled for, unless that one already went out full
+        private synchronized void flushIfPending(long generation) {
+            if (generation != batchGeneration || batchCount == 0) return;
+            try {
+                flushBatch();
+            } catch (IOException ignored) {
+                // flushBatch already failed the in-flight messages
+            }
+        }
+
+        private void flushBatch() throws IOException {
+            batch.append(BATCH_SUFFIX);
+            TextMessage envelope = new TextMessage(batch.toString());
+            batch.setLength(0);
+            batchCount = 0;
+            bytesSent.add(envelope.getPayloadLength());
+            try {
+                session.sendMessage(envelope);
+            } catch (IOException | RuntimeException e) {
+                // Every message in the envelope is lost, not just the caller's
+                completeExceptionally(e);
+                throw e;
+            }
         }
 
         public void setSession(WebSocketSession s) {
@@ -0,0 +1,59 @@
+package life.hebo;
+
+import java.time.Instant;
+import java.util.SplittableRandom;
+
+// Builds messages on the sender's own thread, with the same distribution as MessageGenerator but
+// none of its per-message work: no shared Random, no queue hand-off, user ids and names are
+// pre-built, and the timestamp string is only re-rendered when the millisecond changes.
+// One instance per sender; not thread-safe.
+public class InlineMessageGenerator implements MessageSource {
+
+    private static final String[] USER_IDS = new String[ClientConfig.MAX_USER_ID];
+    private static final String[] USERNAMES = new String[ClientConfig.MAX_USER_ID];
+
+    static {
+        for (int i = 0; i < ClientConfig.MAX_USER_ID; i++) {
+            USER_IDS[i] = String.valueOf(i + 1);
+            USERNAMES[i] = "user" + USER_IDS[i];
+        }
+    }
+
+    private final SplittableRandom random;
+    private long timestampMillis = -1;
+    private String timestamp;
+
+    public InlineMessageGenerator(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public ChatMessage next() {
+        int user = random.nextInt(ClientConfig.MAX_USER_ID);
+        String message = ClientConfig.MESSAGES_POOL[random.nextInt(ClientConfig.MESSAGES_POOL.length)];
+
+        int randomValue = random.nextInt(100);
+        MessageType messageType;
+        if (randomValue < ClientConfig.TEXT_RATIO) {
+            messageType = MessageType.TEXT;
+        } else if (randomValue < ClientConfig.TEXT_RATIO + ClientConfig.JOIN_RATIO) {
+            messageType = MessageType.JOIN;
+        } else {
+            messageType = MessageType.LEAVE;
+        }
+
+        int roomId = random.nextInt(ClientConfig.NUM_ROOMS) + 1;
+
+        return new ChatMessage(USER_IDS[user], USERNAMES[user], message, currentTimestamp(),
+                messageType, roomId, 0L);
+    }
+
+    private String currentTimestamp() {
+        long now = System.currentTimeMillis();
+        if (now != timestampMillis) {
+            timestampMillis = now;
+            timestamp = Instant.ofEpochMilli(now).toString();
+        }
+        return timestamp;
+    }
+}
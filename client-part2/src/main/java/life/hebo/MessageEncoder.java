@@ -0,0 +1,11 @@
+package life.hebo;
+
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+
+// Turns a ChatMessage into the frame a connection sends. Implementations keep per-sender buffers.
+public interface MessageEncoder {
+
+    WebSocketMessage<?> encodeFrame(ChatMessage msg) throws IOException;
+}
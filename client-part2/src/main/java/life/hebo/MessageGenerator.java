@@ -33,7 +33,7 @@ public class MessageGenerator implements Runnable {
         }
     }
 
-    private ChatMessage generateMessage() {
+    ChatMessage generateMessage() {
         String userId = String.valueOf(random.nextInt(ClientConfig.MAX_USER_ID) + 1);
         String username = "user" + userId;
         String message = ClientConfig.MESSAGES_POOL[random.nextInt(ClientConfig.MESSAGES_POOL.length)];
@@ -52,6 +52,6 @@ public class MessageGenerator implements Runnable {
 
         int roomId = random.nextInt(ClientConfig.NUM_ROOMS) + 1;
 
-        return new ChatMessage(userId, username, message, timestamp, messageType, roomId);
+        return new ChatMessage(userId, username, message, timestamp, messageType, roomId, 0L);
     }
 }
@@ -1,29 +1,50 @@
 package life.hebo;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
+import org.springframework.web.socket.WebSocketMessage;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayDeque;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @AllArgsConstructor
 public class MessageSender implements Runnable {
 
-    private final BlockingQueue<ChatMessage> queue;
+    // The server dedups retries on (room, userId, messageId), so ids start at a random point to keep
+    // concurrent client processes from reusing each other's
+    private static final AtomicLong MESSAGE_IDS = new AtomicLong(ThreadLocalRandom.current().nextLong(1L << 40));
+    private static final long ACK_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private final MessageSource source;
     private final ConnectionManager connectionManager;
     private final MetricsCollector metrics;
-    private final ObjectMapper mapper;
+    // Per-sender; frames are encoded once and reused for retries
+    private final MessageEncoder encoder;
     private final int messageCount;
     private final CountDownLatch latch;
+    // Messages this sender may have outstanding before it waits for the oldest ack
+    private final int pipelineDepth;
+
+    static long nextMessageId() {
+        return MESSAGE_IDS.incrementAndGet();
+    }
 
     @Override
     public void run() {
+        ArrayDeque<PendingSend> window = new ArrayDeque<>(pipelineDepth);
         try {
             for (int i = 0; i < messageCount; i++) {
-                ChatMessage msg = queue.poll(10, TimeUnit.SECONDS);
-                sendWithRetry(msg);
+                ChatMessage msg = source.next();
+                if (window.size() >= pipelineDepth) {
+                    awaitAck(window.poll());
+                }
+                window.add(send(msg, null, 1));
+            }
+            while (!window.isEmpty()) {
+                awaitAck(window.poll());
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -32,53 +53,94 @@ public class MessageSender implements Runnable {
         }
     }
 
-    private void sendWithRetry(ChatMessage msg) {
-        long backoff = ClientConfig.INITIAL_BACKOFF_MS;
+    // Single attempt: registers the message in the connection's in-flight table and writes it
+    // without waiting for the ack.
+    private PendingSend send(ChatMessage msg, WebSocketMessage<?> frame, int attempt) {
+        if (msg.getMessageId() == 0) {
+            msg.setMessageId(nextMessageId());
+        }
+
+        ConnectionManager.PooledConnection conn = null;
+        try {
+            conn = connectionManager.borrowConnection(msg.getRoomId());
+            CompletableFuture<Long> ackFuture = conn.prepareForResponse(msg.getMessageId());
 
-        for (int attempt = 1; attempt <= ClientConfig.MAX_RETRIES; attempt++) {
-            ConnectionManager.PooledConnection conn = null;
-            try {
-                conn = connectionManager.borrowConnection(msg.getRoomId());
+            if (frame == null) {
+                frame = encoder.encodeFrame(msg);
+            }
+            long sendTs = System.currentTimeMillis();
+            long startNs = System.nanoTime();
+            conn.send(msg, frame);
+
+            return new PendingSend(msg, frame, conn, ackFuture, attempt, sendTs, startNs);
 
-                String json = mapper.writeValueAsString(msg);
+        } catch (Exception e) {
+            if (conn != null) {
+                conn.abandon(msg.getMessageId());
+                reconnectIfBroken(conn);
+            }
+            return new PendingSend(msg, frame, null, CompletableFuture.failedFuture(e),
+                    attempt, System.currentTimeMillis(), System.nanoTime());
+        }
+    }
 
-                CompletableFuture<String> responseFuture = conn.prepareForResponse();
-                long sendTs = System.currentTimeMillis();
-                long startNs = System.nanoTime();
-                conn.send(json);
+    private void awaitAck(PendingSend pending) throws InterruptedException {
+        long backoff = ClientConfig.INITIAL_BACKOFF_MS << (pending.attempt - 1);
 
-                // Wait for echo
-                responseFuture.get(1, TimeUnit.SECONDS);
-                long latencyMicros = (System.nanoTime() - startNs) / 1_000;
+        while (true) {
+            try {
+                // Wait for echo, at most 1 s after the send
+                long remainingNs = ACK_TIMEOUT_NS - (System.nanoTime() - pending.startNs);
+                long ackNs = pending.ackFuture.get(Math.max(0, remainingNs), TimeUnit.NANOSECONDS);
+                long latencyMicros = (ackNs - pending.startNs) / 1_000;
 
-                metrics.recordSuccess(new MetricsRecord(
-                        sendTs, msg.getMessageType(), latencyMicros, 200, msg.getRoomId()));
+                metrics.recordSuccess(
+                        pending.sendTs, pending.msg.getMessageType(), latencyMicros, pending.msg.getRoomId());
                 return;
 
+            } catch (InterruptedException e) {
+                throw e;
             } catch (Exception e) {
-                // Reconnect broken connections
-                if (conn != null && !conn.isOpen()) {
-                    try {
-                        connectionManager.reconnect(conn);
-                        metrics.incrementReconnections();
-                    } catch (Exception ignored) {}
+                long waitMs = backoff;
+                if (e.getCause() instanceof ConnectionManager.ErrorAckException) {
+                    // The server answered: only a message it turned away for now is worth sending again
+                    ConnectionManager.ErrorAckException error = (ConnectionManager.ErrorAckException) e.getCause();
+                    if (!error.isRetryable()) {
+                        metrics.recordFailure(pending.msg.getMessageType());
+                        return;
+                    }
+                    if (error.getRetryAfterMs() > 0) waitMs = error.getRetryAfterMs();
+                } else if (pending.conn != null) {
+                    pending.conn.abandon(pending.msg.getMessageId());
+                    reconnectIfBroken(pending.conn);
                 }
 
                 // Track failed messages after 5 retries
-                if (attempt == ClientConfig.MAX_RETRIES) {
-                    metrics.recordFailure(new MetricsRecord(
-                            System.currentTimeMillis(), msg.getMessageType(),
-                            -1, 0, msg.getRoomId()));
-                } else {
-                    try { Thread.sleep(backoff); } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        return;
-                    }
-                    backoff *= 2;
+                if (pending.attempt == ClientConfig.MAX_RETRIES) {
+                    metrics.recordFailure(pending.msg.getMessageType());
+                    return;
                 }
-            } finally {
-                if (conn != null) connectionManager.returnConnection(conn);
+                Thread.sleep(waitMs);
+                backoff *= 2;
+                pending = send(pending.msg, pending.frame, pending.attempt + 1);
             }
         }
     }
-}
\ No newline at end of file
+
+    private void reconnectIfBroken(ConnectionManager.PooledConnection conn) {
+        try {
+            if (connectionManager.reconnectIfBroken(conn)) metrics.incrementReconnections();
+        } catch (Exception ignored) {}
+    }
+
+    @AllArgsConstructor
+    private static class PendingSend {
+        private final ChatMessage msg;
+        private final WebSocketMessage<?> frame;
+        private final ConnectionManager.PooledConnection conn;
+        private final CompletableFuture<Long> ackFuture;
+        private final int attempt;
+        private final long sendTs;
+        private final long startNs;
+    }
+}
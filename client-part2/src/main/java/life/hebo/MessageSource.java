@@ -0,0 +1,7 @@
+package life.hebo;
+
+// Where a sender gets its next message: the shared generator queue or a per-sender inline generator
+public interface MessageSource {
+
+    ChatMessage next() throws InterruptedException;
+}
@@ -7,37 +7,98 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 @Getter
 public class MetricsCollector {
 
-    private final ConcurrentLinkedQueue<MetricsRecord> records = new ConcurrentLinkedQueue<>();
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+    // Stages of the server's ServerTimings, up to the ack
+    static final String[] SERVER_STAGES = {"Decode", "Checks", "Queue", "Persist", "Timestamp"};
+
+    // Every recording thread owns one ThreadMetrics; they are merged when a report is built
+    private final ConcurrentLinkedQueue<ThreadMetrics> threadMetrics = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ThreadMetrics> localMetrics = ThreadLocal.withInitial(() -> {
+        ThreadMetrics tm = new ThreadMetrics();
+        threadMetrics.add(tm);
+        return tm;
+    });
+
+    // Failures are rare and may be recorded from short-lived (virtual) threads, so they are not thread-local
+    private final AtomicLongArray failedByType = new AtomicLongArray(MESSAGE_TYPES.length);
+
+    // Successful sends per wall-clock second, for the throughput chart
+    private final ConcurrentHashMap<Long, LongAdder> successPerSecond = new ConcurrentHashMap<>();
 
     private final AtomicInteger successCount = new AtomicInteger(0);
     private final AtomicInteger failedCount = new AtomicInteger(0);
     private final AtomicInteger totalConnections = new AtomicInteger(0);
     private final AtomicInteger reconnectionCount = new AtomicInteger(0);
-    private final AtomicLong totalLatency = new AtomicLong(0);
 
-    public void recordSuccess(MetricsRecord record) {
-        records.add(record);
+    // Room sequence numbers on acks and broadcasts (from a server with a sequencer), checked per connection
+    private final LongAdder sequencedFrames = new LongAdder();
+    private final LongAdder sequenceGaps = new LongAdder();
+    private final LongAdder sequenceReorders = new LongAdder();
+
+    public void recordSuccess(long sendTimestamp, MessageType messageType, long latencyMicros, int roomId) {
+        ThreadMetrics tm = localMetrics.get();
+        tm.latency.record(latencyMicros);
+        tm.roomLatency(roomId).record(latencyMicros);
+        tm.typeLatency[messageType.ordinal()].record(latencyMicros);
+
+        successPerSecond.computeIfAbsent(sendTimestamp / 1000, k -> new LongAdder()).increment();
         successCount.incrementAndGet();
-        totalLatency.addAndGet(record.getLatencyMs());
     }
 
-    public void recordFailure(MetricsRecord record) {
-        records.add(record);
+    // Open-loop samples: latencyMicros is measured from the intended send time (corrected),
+    // uncorrectedMicros from the moment the frame was actually written.
+    public void recordSuccess(long sendTimestamp, MessageType messageType, long latencyMicros,
+                              long uncorrectedMicros, int roomId) {
+        localMetrics.get().uncorrectedLatency.record(uncorrectedMicros);
+        recordSuccess(sendTimestamp, messageType, latencyMicros, roomId);
+    }
+
+    public void recordFailure(MessageType messageType) {
+        failedByType.incrementAndGet(messageType.ordinal());
         failedCount.incrementAndGet();
     }
 
+    // Time a sender spent waiting for a free connection slot
+    public void recordBorrowWait(long waitMicros) {
+        localMetrics.get().borrowWait.record(waitMicros);
+    }
+
+    // Checks a room sequence number against the highest one its connection has seen (0 = none yet)
+    // and returns the new highest. Numbers jumped over count as gaps; a number at or below the
+    // highest (late, or seen twice) counts as a reorder. The first number only sets the baseline,
+    // since a connection joins a room mid-stream.
+    public long recordSequence(long highest, long sequence) {
+        sequencedFrames.increment();
+        if (highest == 0) return sequence;
+        if (sequence > highest) {
+            if (sequence > highest + 1) sequenceGaps.add(sequence - highest - 1);
+            return sequence;
+        }
+        sequenceReorders.increment();
+        return highest;
+    }
+
+    // Server timings from an ack (see ConnectionManager.requestServerTimings), in microseconds
+    public void recordServerTimings(long[] stageMicros, long serverMicros) {
+        ThreadMetrics tm = localMetrics.get();
+        tm.serverTime.record(serverMicros);
+        for (int i = 0; i < stageMicros.length; i++) {
+            tm.serverStageMicros[i] += stageMicros[i];
+        }
+    }
+
     public void incrementConnections() {
         totalConnections.incrementAndGet();
     }
@@ -46,15 +107,42 @@ public class MetricsCollector {
         reconnectionCount.incrementAndGet();
     }
 
-    public void printStatistics(long wallTimeMs) {
-        List<MetricsRecord> all = new ArrayList<>(records);
-        List<Double> latenciesMs = all.stream()
-                .filter(r -> r.getStatusCode() == 200 && r.getLatencyMs() >= 0)
-                .mapToDouble(r -> r.getLatencyMs() / 1000.0)
-                .sorted()
-                .boxed()
-                .collect(Collectors.toList());
+    // Merged latency of all threads. Call once the recording threads have finished.
+    public LatencyHistogram getLatencySnapshot() {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (ThreadMetrics tm : threadMetrics) {
+            merged.add(tm.latency);
+        }
+        return merged;
+    }
 
+    public void printStatistics(long wallTimeMs) {
+        LatencyHistogram latency = getLatencySnapshot();
+        LatencyHistogram uncorrected = new LatencyHistogram();
+        LatencyHistogram borrowWait = new LatencyHistogram();
+        LatencyHistogram serverTime = new LatencyHistogram();
+        long[] serverStageMicros = new long[SERVER_STAGES.length];
+        TreeMap<Integer, LatencyHistogram> perRoom = new TreeMap<>();
+        LatencyHistogram[] perType = new LatencyHistogram[MESSAGE_TYPES.length];
+        for (int t = 0; t < MESSAGE_TYPES.length; t++) {
+            perType[t] = new LatencyHistogram();
+        }
+        for (ThreadMetrics tm : threadMetrics) {
+            for (int room = 0; room < tm.roomLatency.length; room++) {
+                if (tm.roomLatency[room] != null) {
+                    perRoom.computeIfAbsent(room, k -> new LatencyHistogram()).add(tm.roomLatency[room]);
+                }
+            }
+            uncorrected.add(tm.uncorrectedLatency);
+            borrowWait.add(tm.borrowWait);
+            serverTime.add(tm.serverTime);
+            for (int i = 0; i < SERVER_STAGES.length; i++) {
+                serverStageMicros[i] += tm.serverStageMicros[i];
+            }
+            for (int t = 0; t < MESSAGE_TYPES.length; t++) {
+                perType[t].add(tm.typeLatency[t]);
+            }
+        }
 
         System.out.println("\n************* ChatSystem Client Performance Metrics *************");
 
@@ -67,64 +155,98 @@ public class MetricsCollector {
         System.out.println("\n── Connection Statistics ────────────────────────────");
         System.out.printf("  Total connections   : %,d%n", totalConnections.get());
         System.out.printf("  Reconnections       : %,d%n", reconnectionCount.get());
+        if (borrowWait.getTotalCount() > 0) {
+            System.out.printf("  Borrow wait (ms)    : mean %,.3f  p99 %,.3f  max %,.3f%n",
+                    borrowWait.getMean() / 1000.0,
+                    borrowWait.getValueAtPercentile(99) / 1000.0,
+                    borrowWait.getMax() / 1000.0);
+        }
+
+        if (sequencedFrames.sum() > 0) {
+            System.out.println("\n── Room Ordering ────────────────────────────────────");
+            System.out.printf("  Sequenced frames    : %,d%n", sequencedFrames.sum());
+            System.out.printf("  Gaps                : %,d%n", sequenceGaps.sum());
+            System.out.printf("  Reorders            : %,d%n", sequenceReorders.sum());
+        }
 
-        if (latenciesMs.isEmpty()) {
+        if (latency.getTotalCount() == 0) {
             System.out.println("\n  No successful latency samples recorded.");
             return;
         }
 
         // Latency (sub-ms precision via nanoTime → micros → ms)
-        double mean   = latenciesMs.stream().mapToDouble(Double::doubleValue).average().orElse(0);
-        double median = percentile(latenciesMs, 50);
-        double p95    = percentile(latenciesMs, 95);
-        double p99    = percentile(latenciesMs, 99);
-        double min    = latenciesMs.get(0);
-        double max    = latenciesMs.get(latenciesMs.size() - 1);
-
-        System.out.println("\n── Latency (ms) ────────────────────────────────────");
-        System.out.printf("  Mean    : %,.2f%n", mean);
-        System.out.printf("  Median  : %,.2f%n", median);
-        System.out.printf("  P95     : %,.2f%n", p95);
-        System.out.printf("  P99     : %,.2f%n", p99);
-        System.out.printf("  Min     : %,.2f%n", min);
-        System.out.printf("  Max     : %,.2f%n", max);
-
-        // Throughput per room
-        Map<Integer, Long> perRoom = all.stream()
-                .filter(r -> r.getStatusCode() == 200)
-                .collect(Collectors.groupingBy(MetricsRecord::getRoomId, Collectors.counting()));
+        if (uncorrected.getTotalCount() > 0) {
+            System.out.println("\n── Latency (ms)      corrected   uncorrected ───────");
+        } else {
+            System.out.println("\n── Latency (ms) ────────────────────────────────────");
+        }
+        printLatencyRow("Mean", latency.getMean(), uncorrected, uncorrected.getMean());
+        printLatencyRow("Median", latency.getValueAtPercentile(50), uncorrected, uncorrected.getValueAtPercentile(50));
+        printLatencyRow("P95", latency.getValueAtPercentile(95), uncorrected, uncorrected.getValueAtPercentile(95));
+        printLatencyRow("P99", latency.getValueAtPercentile(99), uncorrected, uncorrected.getValueAtPercentile(99));
+        printLatencyRow("P99.9", latency.getValueAtPercentile(99.9), uncorrected, uncorrected.getValueAtPercentile(99.9));
+        printLatencyRow("Min", latency.getMin(), uncorrected, uncorrected.getMin());
+        printLatencyRow("Max", latency.getMax(), uncorrected, uncorrected.getMax());
+
+        // Round trip split into the server's part (up to its ack) and the rest: network, queues, client
+        if (serverTime.getTotalCount() > 0) {
+            System.out.println("\n── Server Time (ms) ─────────────────────────────────");
+            System.out.printf("  Timed acks          : %,d%n", serverTime.getTotalCount());
+            System.out.printf("  Server (to ack)     : mean %,.3f  p50 %,.3f  p99 %,.3f%n",
+                    serverTime.getMean() / 1000.0,
+                    serverTime.getValueAtPercentile(50) / 1000.0,
+                    serverTime.getValueAtPercentile(99) / 1000.0);
+            for (int i = 0; i < SERVER_STAGES.length; i++) {
+                System.out.printf("    %-17s : mean %,.3f%n", SERVER_STAGES[i],
+                        serverStageMicros[i] / 1000.0 / serverTime.getTotalCount());
+            }
+            System.out.printf("  Network + client    : mean %,.3f%n", (latency.getMean() - serverTime.getMean()) / 1000.0);
+        }
 
+        // Throughput and latency per room
         System.out.println("\n── Throughput per Room ──────────────────────────────");
-        perRoom.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .forEach(e -> System.out.printf("  Room %2d : %,6d messages  (%,.1f msg/s)%n",
-                        e.getKey(), e.getValue(),
-                        e.getValue() / (wallTimeMs / 1000.0)));
+        perRoom.forEach((room, h) ->
+                System.out.printf("  Room %2d : %,6d messages  (%,.1f msg/s)  p50 %,.2f ms  p99 %,.2f ms%n",
+                        room, h.getTotalCount(),
+                        h.getTotalCount() / (wallTimeMs / 1000.0),
+                        h.getValueAtPercentile(50) / 1000.0,
+                        h.getValueAtPercentile(99) / 1000.0));
 
         // Message-type distribution
-        Map<String, Long> typeDist = all.stream()
-                .collect(Collectors.groupingBy(r -> r.getMessageType().name(), Collectors.counting()));
-
-
+        long all = successCount.get() + failedCount.get();
         System.out.println("\n── Message Type Distribution ────────────────────────");
-        typeDist.forEach((type, count) ->
-                System.out.printf("  %-6s : %,d (%.1f%%)%n",
-                        type, count, 100.0 * count / all.size()));
+        for (int t = 0; t < MESSAGE_TYPES.length; t++) {
+            long count = perType[t].getTotalCount() + failedByType.get(t);
+            if (count == 0) continue;
+            System.out.printf("  %-6s : %,d (%.1f%%)  p50 %,.2f ms  p99 %,.2f ms%n",
+                    MESSAGE_TYPES[t].name(), count, 100.0 * count / all,
+                    perType[t].getValueAtPercentile(50) / 1000.0,
+                    perType[t].getValueAtPercentile(99) / 1000.0);
+        }
 
         System.out.println("\n════════════════════════════════════════════════════");
     }
 
-    // CSV Export
+    // Second column only for open-loop runs, which also record uncorrected latency
+    private void printLatencyRow(String label, double micros, LatencyHistogram uncorrected, double uncorrectedMicros) {
+        if (uncorrected.getTotalCount() > 0) {
+            System.out.printf("  %-7s : %,12.2f %,13.2f%n", label, micros / 1000.0, uncorrectedMicros / 1000.0);
+        } else {
+            System.out.printf("  %-7s : %,.2f%n", label, micros / 1000.0);
+        }
+    }
+
+    // CSV Export: successful messages per second
     public void writeCsv(String filePath) {
         try {
             Path path = Paths.get(filePath);
             Files.createDirectories(path.getParent());
 
             try (BufferedWriter bw = Files.newBufferedWriter(path)) {
-                bw.write("timestamp,messageType,latency_micros,statusCode,roomId");
+                bw.write("timestamp_sec,success_count");
                 bw.newLine();
-                for (MetricsRecord r : records) {
-                    bw.write(r.toCsvRow());
+                for (Map.Entry<Long, LongAdder> e : new TreeMap<>(successPerSecond).entrySet()) {
+                    bw.write(e.getKey() + "," + e.getValue().sum());
                     bw.newLine();
                 }
             }
@@ -136,28 +258,42 @@ public class MetricsCollector {
 
     public Map<Long, Integer> getThroughputBuckets(int bucketSeconds) {
         TreeMap<Long, Integer> buckets = new TreeMap<>();
-        int successRecords = 0;
-
-        for (MetricsRecord r : records) {
-            if (r.getStatusCode() != 200) continue;
-            successRecords++;
-
-            // Convert timestamp to seconds, then round down to bucket boundary
-            long timestampSec = r.getSendTimestamp() / 1000;
-            long bucketKey = (timestampSec / bucketSeconds) * bucketSeconds;
-            buckets.merge(bucketKey, 1, Integer::sum);
-        }
 
-        if (successRecords > 0 && buckets.isEmpty()) {
-            System.err.println("WARNING: Have success records but no buckets created!");
+        for (Map.Entry<Long, LongAdder> e : successPerSecond.entrySet()) {
+            // Round the second down to bucket boundary
+            long bucketKey = (e.getKey() / bucketSeconds) * bucketSeconds;
+            buckets.merge(bucketKey, (int) e.getValue().sum(), Integer::sum);
         }
 
         return buckets;
     }
 
-    private double percentile(List<Double> sorted, int p) {
-        int idx = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
-        return sorted.get(Math.max(0, idx));
-    }
+    private static class ThreadMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram uncorrectedLatency = new LatencyHistogram();
+        private final LatencyHistogram borrowWait = new LatencyHistogram();
+        private final LatencyHistogram serverTime = new LatencyHistogram();
+        private final long[] serverStageMicros = new long[SERVER_STAGES.length];
+        // Indexed by roomId, allocated on first use
+        private LatencyHistogram[] roomLatency = new LatencyHistogram[ClientConfig.NUM_ROOMS + 1];
+        private final LatencyHistogram[] typeLatency = new LatencyHistogram[MESSAGE_TYPES.length];
+
+        private ThreadMetrics() {
+            for (int t = 0; t < MESSAGE_TYPES.length; t++) {
+                typeLatency[t] = new LatencyHistogram();
+            }
+        }
 
+        private LatencyHistogram roomLatency(int roomId) {
+            if (roomId >= roomLatency.length) {
+                roomLatency = Arrays.copyOf(roomLatency, roomId + 1);
+            }
+            LatencyHistogram h = roomLatency[roomId];
+            if (h == null) {
+                h = new LatencyHistogram();
+                roomLatency[roomId] = h;
+            }
+            return h;
+        }
+    }
 }
@@ -0,0 +1,98 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs the same load with one pool of connections per room (/chat/{roomId}) and with a few shared
+// connections to /chat-mux, and prints connections, memory, throughput and p99 for each.
+//
+// Pass -Dchat.serverPid=<pid> of a local server to add its resident set size. The server does not
+// hand memory back once connections close, so for RSS give each layout a fresh server:
+// run with "per-room" or "multiplexed" as the argument (default: both, one after the other).
+public class MultiplexComparison {
+
+    private static final long SERVER_PID = Long.getLong("chat.serverPid", 0L);
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        boolean perRoom = args.length == 0 || args[0].equalsIgnoreCase("per-room");
+        boolean multiplexed = args.length == 0 || args[0].equalsIgnoreCase("multiplexed");
+
+        System.out.println("\n── Multiplexing Comparison ──────────────────────────────────────────────────────");
+        System.out.printf("  %-11s %11s %8s %13s %15s %14s %10s%n",
+                "layout", "connections", "joins", "server RSS", "client heap", "throughput", "p99 (ms)");
+        if (perRoom) run(mapper, false);
+        if (multiplexed) run(mapper, true);
+        System.out.println("──────────────────────────────────────────────────────────────────────────────────");
+    }
+
+    private static void run(ObjectMapper mapper, boolean multiplexed) throws Exception {
+        int threads = ClientConfig.MAIN_PHASE_THREADS;
+        int connections = multiplexed ? ClientConfig.MUX_CONNECTIONS : ClientConfig.CONNECTIONS_PER_ROOM;
+        // Same in-flight capacity in both layouts: the senders' combined window
+        int depth = multiplexed
+                ? Math.max(ClientConfig.PIPELINE_DEPTH, threads * ClientConfig.PIPELINE_DEPTH / connections + 1)
+                : ClientConfig.PIPELINE_DEPTH;
+
+        MetricsCollector metrics = new MetricsCollector();
+        ConnectionManager connManager = new ConnectionManager(metrics, connections, depth, WireProtocol.JSON);
+        if (multiplexed) connManager.enableMultiplexing();
+        connManager.prewarm(ClientConfig.NUM_ROOMS);
+
+        int total = ClientConfig.PIPELINE_SWEEP_MESSAGES;
+        CountDownLatch latch = new CountDownLatch(threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        SplittableRandom rootRandom = new SplittableRandom(42);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < threads; i++) {
+            int count = total / threads + (i < total % threads ? 1 : 0);
+            pool.submit(new MessageSender(new InlineMessageGenerator(rootRandom.split()), connManager, metrics,
+                    new ChatMessageEncoder(mapper), count, latch, ClientConfig.PIPELINE_DEPTH));
+        }
+        latch.await();
+        long elapsedMs = System.currentTimeMillis() - start;
+        pool.shutdown();
+
+        // Measured while the connections are still open
+        String serverRss = SERVER_PID > 0 ? serverRssMb() : "n/a";
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long clientHeapMb = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        int opened = metrics.getTotalConnections().get();
+        connManager.closeAll();
+
+        int success = metrics.getSuccessCount().get();
+        System.out.printf("  %-11s %,11d %,8d %13s %,12d MB %,8.0f msg/s %10.2f%n",
+                multiplexed ? "multiplexed" : "per-room", opened, connManager.getSubscriptionJoins(),
+                serverRss, clientHeapMb,
+                success / (elapsedMs / 1000.0),
+                metrics.getLatencySnapshot().getValueAtPercentile(99) / 1000.0);
+        long gaps = metrics.getSequenceGaps().sum();
+        long reorders = metrics.getSequenceReorders().sum();
+        if (gaps + reorders > 0) {
+            System.out.printf("  %-11s %,d sequence gaps, %,d reorders%n", "", gaps, reorders);
+        }
+    }
+
+    // VmRSS of the server process, from /proc (Linux only)
+    private static String serverRssMb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", Long.toString(SERVER_PID), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    long kb = Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+                    return String.format("%,d MB", kb / 1024);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Could not read server RSS: " + e.getMessage());
+        }
+        return "n/a";
+    }
+}
@@ -0,0 +1,90 @@
+package life.hebo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-loop sender: messages go out on the ArrivalSchedule whether or not earlier acks came back.
+// Latency is measured from the intended send time, so a stalled server shows up as queueing delay
+// instead of as fewer samples (coordinated-omission correction). Failed sends are not retried.
+@RequiredArgsConstructor
+public class OpenLoopSender implements Runnable {
+
+    private static final long ACK_TIMEOUT_MS = 1000;
+
+    private final MessageSource source;
+    private final ConnectionManager connectionManager;
+    private final MetricsCollector metrics;
+    private final MessageEncoder encoder;
+    private final int messageCount;
+    private final ArrivalSchedule schedule;
+    private final CountDownLatch latch;
+    // Counted down once per message when it is acked, times out or fails to send
+    private final CountDownLatch completionLatch;
+
+    @Override
+    public void run() {
+        try {
+            long startNs = System.nanoTime();
+            long intendedNs = startNs;
+            for (int i = 0; i < messageCount; i++) {
+                ChatMessage msg = source.next();
+                intendedNs += schedule.nextIntervalNanos(intendedNs - startNs);
+                waitUntil(intendedNs);
+                send(msg, intendedNs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    private void send(ChatMessage msg, long intendedNs) {
+        msg.setMessageId(MessageSender.nextMessageId());
+
+        ConnectionManager.PooledConnection conn = null;
+        try {
+            conn = connectionManager.borrowConnection(msg.getRoomId());
+            CompletableFuture<Long> ackFuture = conn.prepareForResponse(msg.getMessageId());
+
+            WebSocketMessage<?> frame = encoder.encodeFrame(msg);
+            long sendTs = System.currentTimeMillis();
+            long actualNs = System.nanoTime();
+            conn.send(msg, frame);
+
+            ConnectionManager.PooledConnection sentOn = conn;
+            ackFuture.orTimeout(ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS).whenComplete((ackNs, error) -> {
+                if (error != null) {
+                    sentOn.abandon(msg.getMessageId());
+                    metrics.recordFailure(msg.getMessageType());
+                } else {
+                    metrics.recordSuccess(sendTs, msg.getMessageType(),
+                            (ackNs - intendedNs) / 1_000, (ackNs - actualNs) / 1_000, msg.getRoomId());
+                }
+                completionLatch.countDown();
+            });
+
+        } catch (Exception e) {
+            if (conn != null) {
+                conn.abandon(msg.getMessageId());
+                try {
+                    if (connectionManager.reconnectIfBroken(conn)) metrics.incrementReconnections();
+                } catch (Exception ignored) {}
+            }
+            metrics.recordFailure(msg.getMessageType());
+            completionLatch.countDown();
+        }
+    }
+
+    private static void waitUntil(long deadlineNs) {
+        long remaining;
+        while ((remaining = deadlineNs - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
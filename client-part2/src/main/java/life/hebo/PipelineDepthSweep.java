@@ -0,0 +1,58 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Runs the same load once per pipeline depth and prints throughput for each
+public class PipelineDepthSweep {
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+
+        System.out.println("\n── Pipeline Depth Sweep ─────────────────────────────");
+        System.out.printf("  %6s %12s %10s %14s %12s %12s%n",
+                "depth", "succeeded", "failed", "throughput", "mean (ms)", "p99 (ms)");
+
+        for (int depth : ClientConfig.PIPELINE_DEPTH_SWEEP) {
+            MetricsCollector metrics = new MetricsCollector();
+            ConnectionManager connManager = new ConnectionManager(
+                    metrics, ClientConfig.CONNECTIONS_PER_ROOM, depth, ClientConfig.WIRE_PROTOCOL);
+            BlockingQueue<ChatMessage> queue = new LinkedBlockingQueue<>(ClientConfig.QUEUE_CAPACITY);
+
+            int total = ClientConfig.PIPELINE_SWEEP_MESSAGES;
+            Thread generatorThread = new Thread(new MessageGenerator(queue, total), "msg-generator");
+            generatorThread.start();
+            MessageSource source = new QueuedMessageSource(queue);
+
+            int threads = ClientConfig.MAIN_PHASE_THREADS;
+            CountDownLatch latch = new CountDownLatch(threads);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < threads; i++) {
+                int count = total / threads + (i < total % threads ? 1 : 0);
+                pool.submit(new MessageSender(
+                        source, connManager, metrics, ClientConfig.WIRE_PROTOCOL.newEncoder(mapper), count, latch, depth));
+            }
+            latch.await();
+            long elapsedMs = System.currentTimeMillis() - start;
+            pool.shutdown();
+            generatorThread.join(5000);
+            connManager.closeAll();
+
+            int success = metrics.getSuccessCount().get();
+            LatencyHistogram latency = metrics.getLatencySnapshot();
+            System.out.printf("  %6d %,12d %,10d %,10.0f msg/s %12.2f %12.2f%n",
+                    depth, success, metrics.getFailedCount().get(),
+                    success / (elapsedMs / 1000.0),
+                    latency.getMean() / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0);
+        }
+        System.out.println("─────────────────────────────────────────────────────");
+    }
+}
@@ -0,0 +1,18 @@
+package life.hebo;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Takes messages produced by the MessageGenerator thread
+@RequiredArgsConstructor
+public class QueuedMessageSource implements MessageSource {
+
+    private final BlockingQueue<ChatMessage> queue;
+
+    @Override
+    public ChatMessage next() throws InterruptedException {
+        return queue.poll(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,137 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// One chat user with its own WebSocket session: connect → JOIN → TEXT × n → LEAVE → close.
+// Runs on its own (virtual) thread; acks are timed and recorded on the WebSocket I/O threads,
+// so MetricsCollector's per-thread histograms are not created once per user.
+public class SimulatedUser extends TextWebSocketHandler implements Runnable {
+
+    private final int userIndex;
+    private final int roomId;
+    private final StandardWebSocketClient client;
+    private final ChatMessageEncoder encoder;
+    private final MetricsCollector metrics;
+    private final long[] handshakeMicros;
+    private final CountDownLatch connectedLatch;
+    private final CountDownLatch startSignal;
+    private final CountDownLatch doneLatch;
+
+    private final String userId;
+    private final String username;
+    private volatile PendingAck pending;
+
+    public SimulatedUser(int userIndex, int roomId, StandardWebSocketClient client, ObjectMapper mapper,
+                         MetricsCollector metrics, long[] handshakeMicros,
+                         CountDownLatch connectedLatch, CountDownLatch startSignal, CountDownLatch doneLatch) {
+        this.userIndex = userIndex;
+        this.roomId = roomId;
+        this.client = client;
+        this.encoder = new ChatMessageEncoder(mapper);
+        this.metrics = metrics;
+        this.handshakeMicros = handshakeMicros;
+        this.connectedLatch = connectedLatch;
+        this.startSignal = startSignal;
+        this.doneLatch = doneLatch;
+        this.userId = String.valueOf(userIndex % ClientConfig.MAX_USER_ID + 1);
+        this.username = "user" + userId;
+    }
+
+    @Override
+    public void run() {
+        WebSocketSession session = null;
+        boolean counted = false;
+        try {
+            long startNs = System.nanoTime();
+            session = client.execute(this, ClientConfig.SERVER_URI + roomId).get(10, TimeUnit.SECONDS);
+            handshakeMicros[userIndex] = (System.nanoTime() - startNs) / 1_000;
+            metrics.incrementConnections();
+
+            connectedLatch.countDown();
+            counted = true;
+            startSignal.await();
+            // Spread the first sends over one think time so users don't all JOIN in the same instant
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ClientConfig.SIM_THINK_TIME_MS + 1));
+
+            send(session, MessageType.JOIN, "joined");
+            for (int i = 0; i < ClientConfig.SIM_MESSAGES_PER_USER; i++) {
+                Thread.sleep(ClientConfig.SIM_THINK_TIME_MS);
+                send(session, MessageType.TEXT,
+                        ClientConfig.MESSAGES_POOL[(userIndex + i) % ClientConfig.MESSAGES_POOL.length]);
+            }
+            send(session, MessageType.LEAVE, "left");
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            handshakeMicros[userIndex] = -1;
+        } finally {
+            if (!counted) connectedLatch.countDown();
+            if (session != null) {
+                try { session.close(); } catch (Exception ignored) {}
+            }
+            doneLatch.countDown();
+        }
+    }
+
+    private void send(WebSocketSession session, MessageType type, String text) throws InterruptedException {
+        ChatMessage msg = new ChatMessage(userId, username, text, Instant.now().toString(),
+                type, roomId, MessageSender.nextMessageId());
+        try {
+            String json = encoder.encode(msg);
+            PendingAck ack = new PendingAck(msg.getMessageId(), type, System.currentTimeMillis(), System.nanoTime());
+            pending = ack;
+            session.sendMessage(new TextMessage(json));
+            ack.future.get(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            metrics.recordFailure(type);
+        } finally {
+            pending = null;
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        String payload = message.getPayload();
+        if (!ConnectionManager.isAck(payload)) return;
+
+        PendingAck ack = pending;
+        if (ack != null && ack.messageId == ConnectionManager.extractMessageId(payload)) {
+            if (ConnectionManager.isErrorAck(payload)) {
+                // Counted as a failure by send
+                ack.future.completeExceptionally(new IOException("Message " + ack.messageId + " was rejected"));
+                return;
+            }
+            metrics.recordSuccess(ack.sendTs, ack.type, (System.nanoTime() - ack.startNs) / 1_000, roomId);
+            ack.future.complete(null);
+        }
+    }
+
+    private static class PendingAck {
+        private final long messageId;
+        private final MessageType type;
+        private final long sendTs;
+        private final long startNs;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingAck(long messageId, MessageType type, long sendTs, long startNs) {
+            this.messageId = messageId;
+            this.type = type;
+            this.sendTs = sendTs;
+            this.startNs = startNs;
+        }
+    }
+}
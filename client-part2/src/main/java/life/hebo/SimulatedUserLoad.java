@@ -0,0 +1,116 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives SIM_USERS SimulatedUsers, one thread and one WebSocket session each.
+// Users connect at SIM_RAMP_PER_SECOND, wait until everyone is connected, then chat concurrently.
+// Large runs need a raised fd limit (ulimit -n) on both client and server, and stay under the
+// ~28k ephemeral ports available per loopback destination unless the port range is widened.
+public class SimulatedUserLoad {
+
+    private SimulatedUserLoad() {}
+
+    public static void run(ObjectMapper mapper, MetricsCollector metrics) throws Exception {
+        int users = ClientConfig.SIM_USERS;
+        int rooms = Math.max(1, (users + ClientConfig.SIM_USERS_PER_ROOM - 1) / ClientConfig.SIM_USERS_PER_ROOM);
+
+        StandardWebSocketClient client = new StandardWebSocketClient();
+        // Connect on the calling user thread instead of one extra platform thread per handshake
+        client.setTaskExecutor(new TaskExecutorAdapter((TaskExecutor) Runnable::run));
+
+        long[] handshakeMicros = new long[users];
+        CountDownLatch connectedLatch = new CountDownLatch(users);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(users);
+
+        ExecutorService executor = newThreadPerTaskExecutor();
+        long heapBefore = usedHeap();
+        int threadsBefore = Thread.activeCount();
+
+        System.out.printf("%nConnecting %,d simulated users across %,d rooms (%s, %,d/s) ...%n",
+                users, rooms, executor.getClass().getSimpleName(), ClientConfig.SIM_RAMP_PER_SECOND);
+        long rampStart = System.nanoTime();
+        long intervalNs = 1_000_000_000L / ClientConfig.SIM_RAMP_PER_SECOND;
+        for (int i = 0; i < users; i++) {
+            long dueNs = rampStart + i * intervalNs;
+            long remaining;
+            while ((remaining = dueNs - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+            executor.submit(new SimulatedUser(i, i % rooms + 1, client, mapper, metrics, handshakeMicros,
+                    connectedLatch, startSignal, doneLatch));
+        }
+        connectedLatch.await();
+        long rampMs = (System.nanoTime() - rampStart) / 1_000_000;
+
+        int connected = metrics.getTotalConnections().get();
+        long heapAfter = usedHeap();
+        int threadsAfter = Thread.activeCount();
+        printConnectStats(handshakeMicros, connected, users, rampMs, heapAfter - heapBefore, threadsAfter - threadsBefore);
+
+        System.out.println("\nAll users connected, starting JOIN → TEXT × "
+                + ClientConfig.SIM_MESSAGES_PER_USER + " → LEAVE ...");
+        long chatStart = System.currentTimeMillis();
+        startSignal.countDown();
+
+        long expected = (long) connected * (ClientConfig.SIM_MESSAGES_PER_USER + 2);
+        while (!doneLatch.await(5, TimeUnit.SECONDS)) {
+            int done = metrics.getSuccessCount().get() + metrics.getFailedCount().get();
+            System.out.printf("  Progress: %,d / %,d  failed=%,d%n", done, expected, metrics.getFailedCount().get());
+        }
+        executor.shutdown();
+
+        metrics.printStatistics(System.currentTimeMillis() - chatStart);
+    }
+
+    private static void printConnectStats(long[] handshakeMicros, int connected, int users,
+                                          long rampMs, long heapDelta, int threadDelta) {
+        long[] ok = Arrays.stream(handshakeMicros).filter(v -> v >= 0).sorted().toArray();
+
+        System.out.println("\n========== Session Statistics ==========");
+        System.out.printf("Sessions open          : %,d / %,d%n", connected, users);
+        System.out.printf("Handshake rate         : %,.0f sessions/s%n", connected / Math.max(rampMs / 1000.0, 0.001));
+        if (ok.length > 0) {
+            System.out.printf("Handshake p50 / p99    : %.2f / %.2f ms%n",
+                    ok[(int) (ok.length * 0.50)] / 1000.0, ok[Math.min(ok.length - 1, (int) (ok.length * 0.99))] / 1000.0);
+        }
+        if (connected > 0) {
+            System.out.printf("Heap per session       : %,.1f KB%n", heapDelta / 1024.0 / connected);
+        }
+        System.out.printf("Platform threads added : %,d%n", threadDelta);
+    }
+
+    // Virtual threads when running on JDK 21+, otherwise small-stack platform threads
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads unavailable on this JDK, using platform threads");
+            AtomicInteger counter = new AtomicInteger();
+            ThreadFactory factory = r -> {
+                Thread t = new Thread(null, r, "user-" + counter.getAndIncrement(), 256 * 1024);
+                t.setDaemon(true);
+                return t;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
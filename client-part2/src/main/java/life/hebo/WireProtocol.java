@@ -0,0 +1,23 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Frame format a ConnectionManager speaks; the server picks the handler by path
+public enum WireProtocol {
+    JSON(ClientConfig.SERVER_URI),
+    BINARY(ClientConfig.SERVER_BINARY_URI);
+
+    private final String serverUri;
+
+    WireProtocol(String serverUri) {
+        this.serverUri = serverUri;
+    }
+
+    public String getServerUri() {
+        return serverUri;
+    }
+
+    public MessageEncoder newEncoder(ObjectMapper mapper) {
+        return this == BINARY ? new BinaryMessageEncoder() : new ChatMessageEncoder(mapper);
+    }
+}
@@ -0,0 +1,60 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.OperatingSystemMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs the same load once per WireProtocol and prints bytes on the wire, client CPU and throughput.
+// Inbound bytes include room broadcasts to the other pooled connections, not just acks.
+public class WireProtocolComparison {
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+        System.out.println("\n── Wire Protocol Comparison ─────────────────────────────────────────────");
+        System.out.printf("  %-7s %10s %12s %12s %14s %14s %10s%n",
+                "format", "succeeded", "out (B/msg)", "in (B/msg)", "CPU (µs/msg)", "throughput", "p99 (ms)");
+
+        for (WireProtocol protocol : WireProtocol.values()) {
+            MetricsCollector metrics = new MetricsCollector();
+            ConnectionManager connManager = new ConnectionManager(
+                    metrics, ClientConfig.CONNECTIONS_PER_ROOM, ClientConfig.PIPELINE_DEPTH, protocol);
+            connManager.prewarm(ClientConfig.NUM_ROOMS);
+
+            int total = ClientConfig.PIPELINE_SWEEP_MESSAGES;
+            int threads = ClientConfig.MAIN_PHASE_THREADS;
+            CountDownLatch latch = new CountDownLatch(threads);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            SplittableRandom rootRandom = new SplittableRandom(42);
+
+            long cpuStart = os.getProcessCpuTime();
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < threads; i++) {
+                int count = total / threads + (i < total % threads ? 1 : 0);
+                pool.submit(new MessageSender(new InlineMessageGenerator(rootRandom.split()), connManager, metrics,
+                        protocol.newEncoder(mapper), count, latch, ClientConfig.PIPELINE_DEPTH));
+            }
+            latch.await();
+            long elapsedMs = System.currentTimeMillis() - start;
+            long cpuNs = os.getProcessCpuTime() - cpuStart;
+            pool.shutdown();
+            connManager.closeAll();
+
+            int success = metrics.getSuccessCount().get();
+            System.out.printf("  %-7s %,10d %12.1f %12.1f %14.1f %,8.0f msg/s %10.2f%n",
+                    protocol, success,
+                    connManager.getBytesSent() / (double) total,
+                    connManager.getBytesReceived() / (double) total,
+                    cpuNs / 1_000.0 / total,
+                    success / (elapsedMs / 1000.0),
+                    metrics.getLatencySnapshot().getValueAtPercentile(99) / 1000.0);
+        }
+        System.out.println("──────────────────────────────────────────────────────────────────────────");
+    }
+}
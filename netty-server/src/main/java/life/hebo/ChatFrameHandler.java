@@ -0,0 +1,74 @@
+package life.hebo;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketCloseStatus;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+
+import java.net.URI;
+import java.util.Map;
+
+// Per-connection glue between Netty and ChatWebSocketHandler. Text frames are decoded straight
+// from the pooled inbound ByteBuf (no TextMessage, no String) on the channel's event loop; the
+// buffer goes back to the pool when this handler returns.
+public class ChatFrameHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
+
+    private final ChatWebSocketHandler chatHandler;
+    private NettyWebSocketSession session;
+
+    public ChatFrameHandler(ChatWebSocketHandler chatHandler) {
+        this.chatHandler = chatHandler;
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object event) throws Exception {
+        if (!(event instanceof WebSocketServerProtocolHandler.HandshakeComplete)) {
+            super.userEventTriggered(ctx, event);
+            return;
+        }
+        WebSocketServerProtocolHandler.HandshakeComplete handshake = (WebSocketServerProtocolHandler.HandshakeComplete) event;
+        HttpHeaders headers = new HttpHeaders();
+        handshake.requestHeaders().forEach(header -> headers.add(header.getKey(), header.getValue()));
+        Map<String, Object> attributes = ctx.channel().attr(RoomHandshakeHandler.ATTRIBUTES).get();
+        session = new NettyWebSocketSession(ctx.channel(), URI.create(handshake.requestUri()), headers, attributes);
+        chatHandler.afterConnectionEstablished(session);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
+        if (!(frame instanceof TextWebSocketFrame)) {
+            // /chat/{roomId} is JSON only, as on the Tomcat endpoint
+            session.close(new CloseStatus(WebSocketCloseStatus.INVALID_MESSAGE_TYPE.code(), "Text frames only"));
+            return;
+        }
+        ByteBuf content = frame.content();
+        boolean batch = ChatMessageDecoder.isBatch(content.nioBuffer());
+        chatHandler.handleFrame(session, new ByteBufInputStream(content), batch);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (session != null) {
+            chatHandler.afterConnectionClosed(session, CloseStatus.NORMAL);
+            session = null;
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        if (session != null) {
+            chatHandler.handleTransportError(session, cause);
+            session = null;
+        } else {
+            System.err.println("Transport error before handshake on " + ctx.channel().remoteAddress() + ": " + cause.getMessage());
+        }
+        ctx.close();
+    }
+}
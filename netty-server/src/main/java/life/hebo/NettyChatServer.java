@@ -0,0 +1,88 @@
+package life.hebo;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolConfig;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+
+import java.io.Closeable;
+
+// Standalone transport for the /chat/{roomId} protocol on Netty event loops, without the servlet
+// container: HTTP upgrade, framing and reads happen on pooled ByteBufs, and each frame is handed
+// to the same ChatWebSocketHandler (validation, rooms, acks) the Tomcat server uses.
+//
+// Run with: java -jar netty-server/target/netty-server-1.0-SNAPSHOT.jar [port], default 8090.
+// The handler runs with its defaults (no history, log, rate limit, dedup or cluster).
+public class NettyChatServer implements Closeable {
+
+    static final int DEFAULT_PORT = 8090;
+    static final int MAX_FRAME_BYTES = 64 * 1024;
+    // Pending connections the kernel may queue, as server.tomcat.accept-count
+    private static final int ACCEPT_BACKLOG = 1000;
+
+    private final int port;
+    private final ChatWebSocketHandler chatHandler;
+    private EventLoopGroup acceptGroup;
+    private EventLoopGroup ioGroup;
+    private Channel serverChannel;
+
+    public NettyChatServer(int port, ChatWebSocketHandler chatHandler) {
+        this.port = port;
+        this.chatHandler = chatHandler;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        NettyChatServer server = new NettyChatServer(port, new ChatWebSocketHandler(new RoomRegistry()));
+        server.start();
+        server.serverChannel.closeFuture().sync();
+    }
+
+    public void start() throws InterruptedException {
+        acceptGroup = new NioEventLoopGroup(1);
+        // One event loop per core (Netty's default is two)
+        ioGroup = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors());
+        WebSocketServerProtocolConfig protocol = WebSocketServerProtocolConfig.newBuilder()
+                // Netty matches "/chat" followed by '/', '?' or nothing; RoomHandshakeHandler already checked the rest
+                .websocketPath("/chat")
+                .checkStartsWith(true)
+                .maxFramePayloadLength(MAX_FRAME_BYTES)
+                .build();
+        serverChannel = new ServerBootstrap()
+                .group(acceptGroup, ioGroup)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, ACCEPT_BACKLOG)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        ChannelPipeline pipeline = channel.pipeline();
+                        pipeline.addLast(new HttpServerCodec());
+                        pipeline.addLast(new HttpObjectAggregator(8192));
+                        pipeline.addLast(new RoomHandshakeHandler());
+                        pipeline.addLast(new WebSocketServerProtocolHandler(protocol));
+                        pipeline.addLast(new WebSocketFrameAggregator(MAX_FRAME_BYTES));
+                        pipeline.addLast(new ChatFrameHandler(chatHandler));
+                    }
+                })
+                .bind(port).sync().channel();
+        System.out.println("Netty chat server listening on port " + port);
+    }
+
+    @Override
+    public void close() {
+        if (serverChannel != null) serverChannel.close().syncUninterruptibly();
+        if (acceptGroup != null) acceptGroup.shutdownGracefully();
+        if (ioGroup != null) ioGroup.shutdownGracefully();
+    }
+}
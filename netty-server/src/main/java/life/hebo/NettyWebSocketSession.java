@@ -0,0 +1,146 @@
+package life.hebo;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// A Netty channel seen as a WebSocketSession, so ChatWebSocketHandler, Room and
+// BoundedSendSession work on it unchanged. Writes go through the AsyncSender side: the frame is
+// handed to the channel and the send completes when Netty has written it, which keeps the
+// per-session send buffer limit and overflow policy in force.
+public class NettyWebSocketSession implements WebSocketSession, BoundedSendSession.AsyncSender {
+
+    private final Channel channel;
+    private final URI uri;
+    private final HttpHeaders handshakeHeaders;
+    private final Map<String, Object> attributes;
+
+    public NettyWebSocketSession(Channel channel, URI uri, HttpHeaders handshakeHeaders, Map<String, Object> attributes) {
+        this.channel = channel;
+        this.uri = uri;
+        this.handshakeHeaders = handshakeHeaders;
+        this.attributes = attributes;
+    }
+
+    @Override
+    public void sendAsync(WebSocketMessage<?> message, SendHandler onSent) {
+        channel.writeAndFlush(toFrame(message)).addListener(future -> onSent.onResult(
+                future.isSuccess() ? new SendResult() : new SendResult(future.cause())));
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        channel.writeAndFlush(toFrame(message));
+    }
+
+    // The payload is wrapped, not copied; Netty copies it into a pooled direct buffer as it writes
+    private static WebSocketFrame toFrame(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage) {
+            return new TextWebSocketFrame(Unpooled.wrappedBuffer(((TextMessage) message).asBytes()));
+        }
+        if (message instanceof BinaryMessage) {
+            return new BinaryWebSocketFrame(Unpooled.wrappedBuffer(((BinaryMessage) message).getPayload()));
+        }
+        throw new IllegalArgumentException("Unsupported message type: " + message.getClass().getSimpleName());
+    }
+
+    @Override
+    public String getId() {
+        return channel.id().asShortText();
+    }
+
+    @Override
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return handshakeHeaders;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) channel.localAddress();
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return (InetSocketAddress) channel.remoteAddress();
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return NettyChatServer.MAX_FRAME_BYTES;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return NettyChatServer.MAX_FRAME_BYTES;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isActive();
+    }
+
+    @Override
+    public void close() {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        if (!channel.isActive()) return;
+        channel.writeAndFlush(new CloseWebSocketFrame(status.getCode(), status.getReason()))
+                .addListener(ChannelFutureListener.CLOSE);
+    }
+}
@@ -0,0 +1,88 @@
+package life.hebo;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.AttributeKey;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Netty counterpart of RoomHandshakeInterceptor: resolves {roomId} from /chat/{roomId} and the
+// optional ?ackBatch=N&ackFlushMicros=T&timings=true into the session attributes before the upgrade. Anything
+// else is answered here: GET /health for load balancers, 404 for other paths, 400 for a bad roomId.
+public class RoomHandshakeHandler extends ChannelInboundHandlerAdapter {
+
+    static final AttributeKey<Map<String, Object>> ATTRIBUTES = AttributeKey.valueOf("sessionAttributes");
+    static final String CHAT_PATH = "/chat/";
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof FullHttpRequest)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        FullHttpRequest request = (FullHttpRequest) msg;
+        QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+        String path = uri.path();
+        if (path.equals("/health")) {
+            request.release();
+            respond(ctx, HttpResponseStatus.OK, "{\"status\":\"UP\",\"timestamp\":\"" + Instant.now()
+                    + "\",\"service\":\"ChatRoom WebSocket Server (Netty)\"}");
+            return;
+        }
+        if (!path.startsWith(CHAT_PATH)) {
+            request.release();
+            respond(ctx, HttpResponseStatus.NOT_FOUND, null);
+            return;
+        }
+        try {
+            Map<String, Object> attributes = new ConcurrentHashMap<>();
+            attributes.put(RoomHandshakeInterceptor.ROOM_ID_ATTRIBUTE, Integer.parseInt(path.substring(CHAT_PATH.length())));
+            String ackBatch = first(uri, RoomHandshakeInterceptor.ACK_BATCH_ATTRIBUTE);
+            if (ackBatch != null) {
+                attributes.put(RoomHandshakeInterceptor.ACK_BATCH_ATTRIBUTE, Integer.parseInt(ackBatch));
+            }
+            String ackFlushMicros = first(uri, RoomHandshakeInterceptor.ACK_FLUSH_MICROS_ATTRIBUTE);
+            if (ackFlushMicros != null) {
+                attributes.put(RoomHandshakeInterceptor.ACK_FLUSH_MICROS_ATTRIBUTE, Long.parseLong(ackFlushMicros));
+            }
+            if (Boolean.parseBoolean(first(uri, RoomHandshakeInterceptor.TIMINGS_ATTRIBUTE))) {
+                attributes.put(RoomHandshakeInterceptor.TIMINGS_ATTRIBUTE, Boolean.TRUE);
+            }
+            ctx.channel().attr(ATTRIBUTES).set(attributes);
+        } catch (NumberFormatException e) {
+            request.release();
+            respond(ctx, HttpResponseStatus.BAD_REQUEST, null);
+            return;
+        }
+        // One upgrade per connection: after this the channel only carries WebSocket frames
+        ctx.pipeline().remove(this);
+        ctx.fireChannelRead(request);
+    }
+
+    private static String first(QueryStringDecoder uri, String name) {
+        List<String> values = uri.parameters().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static void respond(ChannelHandlerContext ctx, HttpResponseStatus status, String json) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+                json == null ? Unpooled.EMPTY_BUFFER : Unpooled.copiedBuffer(json, StandardCharsets.UTF_8));
+        if (json != null) response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+        response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+}
@@ -0,0 +1,298 @@
+package life.hebo;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Side-by-side load test of the Tomcat and Netty transports for /chat/{roomId}. Start both
+// servers, then run with one name=uri[@pid] argument per server, e.g.
+//   tomcat=ws://localhost:8080/chat/@12345 netty=ws://localhost:8090/chat/@12346
+// With a pid the server's resident memory is read from /proc.
+//
+// For each server:
+//  1. connections: opens sockets in batches of CONNECT_BATCH until a batch has a failed or
+//     timed-out handshake or MAX_CONNECTIONS is reached; reports the count and handshake p99.
+//  2. throughput: LOAD_CONNECTIONS sessions in rooms of ROOM_SIZE, each keeping WINDOW messages
+//     in flight and sending the next one as each ack comes back; reports acked msgs/s, ack
+//     round-trip p50/p99 and broadcast frames received per second.
+public class TransportLoadTest {
+
+    private static final int MAX_CONNECTIONS = 15_000;
+    private static final int CONNECT_BATCH = 500;
+    private static final long HANDSHAKE_TIMEOUT_MS = 30_000;
+    private static final int LOAD_CONNECTIONS = 200;
+    private static final int ROOM_SIZE = 10;
+    private static final int WINDOW = 1;
+    private static final long WARMUP_MS = 5_000;
+    private static final long MEASURE_MS = 10_000;
+
+    private final EventLoopGroup group = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors());
+    private final Bootstrap bootstrap = new Bootstrap()
+            .group(group)
+            .channel(NioSocketChannel.class)
+            .option(ChannelOption.TCP_NODELAY, true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) HANDSHAKE_TIMEOUT_MS);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: TransportLoadTest name=ws://host:port/chat/[@pid] ...");
+            return;
+        }
+        TransportLoadTest test = new TransportLoadTest();
+        List<String> connectionRows = new ArrayList<>();
+        List<String> throughputRows = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                String name = arg.substring(0, arg.indexOf('='));
+                String target = arg.substring(arg.indexOf('=') + 1);
+                long pid = target.contains("@") ? Long.parseLong(target.substring(target.lastIndexOf('@') + 1)) : -1;
+                String baseUri = pid < 0 ? target : target.substring(0, target.lastIndexOf('@'));
+                connectionRows.add(test.connections(name, baseUri, pid));
+                throughputRows.add(test.throughput(name, baseUri, pid));
+            }
+        } finally {
+            test.group.shutdownGracefully();
+        }
+
+        System.out.println("\n── Transport Load Test: connections ─────────────────");
+        System.out.printf("  %-8s %10s %12s %18s %16s%n", "server", "max conns", "conn/s", "handshake p99 (ms)", "server RSS (MB)");
+        connectionRows.forEach(System.out::println);
+        System.out.println("\n── Transport Load Test: throughput (" + LOAD_CONNECTIONS + " sessions, rooms of "
+                + ROOM_SIZE + ", " + WINDOW + " in flight each) ──");
+        System.out.printf("  %-8s %12s %12s %12s %14s %16s%n", "server", "msgs/s", "p50 (us)", "p99 (us)", "broadcast/s", "server RSS (MB)");
+        throughputRows.forEach(System.out::println);
+        System.out.println("─────────────────────────────────────────────────────");
+    }
+
+    private String connections(String name, String baseUri, long pid) throws Exception {
+        ConcurrentLatencyHistogram handshakes = new ConcurrentLatencyHistogram();
+        List<Session> sessions = new ArrayList<>();
+        long start = System.nanoTime();
+        boolean failed = false;
+        while (!failed && sessions.size() < MAX_CONNECTIONS) {
+            List<Session> batch = new ArrayList<>(CONNECT_BATCH);
+            for (int i = 0; i < CONNECT_BATCH && sessions.size() + batch.size() < MAX_CONNECTIONS; i++) {
+                // Spread over the 20 rooms the load client uses
+                batch.add(open(baseUri, 1 + (sessions.size() + i) % 20, handshakes));
+            }
+            for (Session session : batch) {
+                if (session.handshake.await(HANDSHAKE_TIMEOUT_MS, TimeUnit.MILLISECONDS) && session.handshake.isSuccess()) {
+                    sessions.add(session);
+                } else {
+                    failed = true;
+                    session.channel.close();
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        String rss = residentMegabytes(pid);
+        closeAll(sessions);
+        return String.format("  %-8s %,10d %,12.0f %18.1f %16s%s", name, sessions.size(), sessions.size() / seconds,
+                handshakes.snapshot().getValueAtPercentile(99) / 1e6, rss, failed ? "  (stopped at first failed handshake)" : "");
+    }
+
+    private String throughput(String name, String baseUri, long pid) throws Exception {
+        ConcurrentLatencyHistogram roundTrips = new ConcurrentLatencyHistogram();
+        LongAdder acks = new LongAdder();
+        LongAdder broadcasts = new LongAdder();
+        List<Session> sessions = new ArrayList<>(LOAD_CONNECTIONS);
+        for (int i = 0; i < LOAD_CONNECTIONS; i++) {
+            Session session = open(baseUri, 1 + i / ROOM_SIZE, null);
+            session.acks = acks;
+            session.broadcasts = broadcasts;
+            sessions.add(session);
+        }
+        for (Session session : sessions) {
+            if (!session.handshake.await(HANDSHAKE_TIMEOUT_MS, TimeUnit.MILLISECONDS) || !session.handshake.isSuccess()) {
+                closeAll(sessions);
+                return String.format("  %-8s could not open %d sessions", name, LOAD_CONNECTIONS);
+            }
+        }
+        for (Session session : sessions) {
+            session.channel.eventLoop().execute(session::startSending);
+        }
+        Thread.sleep(WARMUP_MS);
+        for (Session session : sessions) session.roundTrips = roundTrips;
+        long acksBefore = acks.sum();
+        long broadcastsBefore = broadcasts.sum();
+        long start = System.nanoTime();
+        Thread.sleep(MEASURE_MS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long acked = acks.sum() - acksBefore;
+        long broadcast = broadcasts.sum() - broadcastsBefore;
+        ConcurrentLatencyHistogram.Snapshot snapshot = roundTrips.snapshot();
+        String rss = residentMegabytes(pid);
+        closeAll(sessions);
+        return String.format("  %-8s %,12.0f %12.1f %12.1f %,14.0f %16s", name, acked / seconds,
+                snapshot.getValueAtPercentile(50) / 1000.0, snapshot.getValueAtPercentile(99) / 1000.0,
+                broadcast / seconds, rss);
+    }
+
+    private Session open(String baseUri, int roomId, ConcurrentLatencyHistogram handshakes) {
+        URI uri = URI.create(baseUri + roomId);
+        Session session = new Session(roomId, handshakes);
+        ChannelFuture connect = bootstrap.clone().handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel channel) {
+                channel.pipeline().addLast(new HttpClientCodec());
+                channel.pipeline().addLast(new HttpObjectAggregator(8192));
+                channel.pipeline().addLast(new WebSocketClientProtocolHandler(WebSocketClientHandshakerFactory.newHandshaker(
+                        uri, WebSocketVersion.V13, null, false, new DefaultHttpHeaders(), NettyChatServer.MAX_FRAME_BYTES)));
+                channel.pipeline().addLast(session);
+            }
+        }).connect(uri.getHost(), uri.getPort());
+        session.channel = connect.channel();
+        connect.addListener(future -> {
+            if (!future.isSuccess()) session.handshake.tryFailure(future.cause());
+        });
+        return session;
+    }
+
+    private static void closeAll(List<Session> sessions) throws InterruptedException {
+        for (Session session : sessions) {
+            session.running = false;
+            session.channel.close();
+        }
+        for (Session session : sessions) {
+            session.channel.closeFuture().await(HANDSHAKE_TIMEOUT_MS);
+        }
+        // Let the server finish its afterConnectionClosed work before the next phase
+        Thread.sleep(2_000);
+    }
+
+    private static String residentMegabytes(long pid) {
+        if (pid < 0) return "-";
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/" + pid + "/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return String.valueOf(Long.parseLong(line.replaceAll("\\D", "")) / 1024);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Could not read memory of pid " + pid + ": " + e.getMessage());
+        }
+        return "?";
+    }
+
+    // One client connection; all of its state is touched on its event loop only
+    private static class Session extends SimpleChannelInboundHandler<Object> {
+
+        private static final int SENT_AT_SLOTS = 64;
+
+        private final byte[] framePrefix;
+        private final ConcurrentLatencyHistogram handshakes;
+        private final long[] sentAt = new long[SENT_AT_SLOTS];
+        private final long connectStart = System.nanoTime();
+        private Channel channel;
+        private final Promise<Void> handshake = GlobalEventExecutor.INSTANCE.newPromise();
+        private LongAdder acks;
+        private LongAdder broadcasts;
+        private volatile ConcurrentLatencyHistogram roundTrips;
+        private volatile boolean running;
+        private long nextMessageId;
+
+        private Session(int roomId, ConcurrentLatencyHistogram handshakes) {
+            this.handshakes = handshakes;
+            this.framePrefix = ("{\"userId\":\"42\",\"username\":\"user42\",\"message\":\"hello room\","
+                    + "\"timestamp\":\"" + Instant.now() + "\",\"messageType\":\"TEXT\",\"roomId\":" + roomId
+                    + ",\"messageId\":").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object event) throws Exception {
+            if (event == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+                if (handshakes != null) handshakes.record(System.nanoTime() - connectStart);
+                handshake.trySuccess(null);
+            } else if (event == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_TIMEOUT) {
+                handshake.tryFailure(new IllegalStateException("handshake timed out"));
+            }
+            super.userEventTriggered(ctx, event);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            handshake.tryFailure(new IllegalStateException("connection closed"));
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            handshake.tryFailure(cause);
+            ctx.close();
+        }
+
+        private void startSending() {
+            running = true;
+            for (int i = 0; i < WINDOW; i++) send();
+        }
+
+        private void send() {
+            long messageId = ++nextMessageId;
+            ByteBuf frame = channel.alloc().buffer(framePrefix.length + 24);
+            frame.writeBytes(framePrefix);
+            frame.writeCharSequence(Long.toString(messageId), StandardCharsets.US_ASCII);
+            frame.writeByte('}');
+            sentAt[(int) (messageId & (SENT_AT_SLOTS - 1))] = System.nanoTime();
+            channel.writeAndFlush(new TextWebSocketFrame(frame));
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
+            if (!(msg instanceof TextWebSocketFrame)) return;
+            ByteBuf content = ((TextWebSocketFrame) msg).content();
+            // Acks start with {"status"; anything else is a room broadcast
+            if (content.readableBytes() < 3 || content.getByte(content.readerIndex() + 2) != 's') {
+                if (broadcasts != null) broadcasts.increment();
+                return;
+            }
+            if (acks == null) return;
+            acks.increment();
+            ConcurrentLatencyHistogram histogram = roundTrips;
+            if (histogram != null) {
+                histogram.record(System.nanoTime() - sentAt[(int) (messageIdOf(content) & (SENT_AT_SLOTS - 1))]);
+            }
+            if (running) send();
+        }
+
+        // messageId is the last field of a ServerResponse: the digits before the closing brace
+        private static long messageIdOf(ByteBuf content) {
+            int i = content.writerIndex() - 2;
+            long id = 0;
+            long scale = 1;
+            for (; i >= content.readerIndex(); i--, scale *= 10) {
+                byte b = content.getByte(i);
+                if (b < '0' || b > '9') break;
+                id += (b - '0') * scale;
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Per-session ack aggregator: acks are held until maxAcks are pending or the oldest has waited
+// flushMicros, then go out as one BatchResponse frame. All writes happen under this object's
+// lock, so acks for a session are written by one thread at a time and in arrival order.
+public class AckCoalescer {
+
+    private final WebSocketSession session;
+    private final ObjectMapper objectMapper;
+    private final ServerMetrics metrics;
+    private final ScheduledExecutorService flushTimer;
+    private final int maxAcks;
+    private final long flushMicros;
+
+    private List<BatchResponse.ItemResult> pending = new ArrayList<>();
+    private long generation;
+    private boolean closed;
+
+    public AckCoalescer(WebSocketSession session, ObjectMapper objectMapper, ServerMetrics metrics,
+                        ScheduledExecutorService flushTimer, int maxAcks, long flushMicros) {
+        this.session = session;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.flushTimer = flushTimer;
+        this.maxAcks = maxAcks;
+        this.flushMicros = flushMicros;
+    }
+
+    public synchronized void add(BatchResponse.ItemResult ack) {
+        if (closed) return;
+        pending.add(ack);
+        if (pending.size() == 1) {
+            long scheduled = ++generation;
+            flushTimer.schedule(() -> flushIfPending(scheduled), flushMicros, TimeUnit.MICROSECONDS);
+        }
+        if (pending.size() >= maxAcks) {
+            flush();
+        }
+    }
+
+    // Session is gone; acks still pending can't be delivered
+    public synchronized void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    private synchronized void flushIfPending(long scheduled) {
+        if (scheduled == generation && !pending.isEmpty()) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        List<BatchResponse.ItemResult> acks = pending;
+        pending = new ArrayList<>(maxAcks);
+        try {
+            byte[] frame = objectMapper.writeValueAsBytes(new BatchResponse("BATCH", Instant.now().toString(), acks));
+            session.sendMessage(new TextMessage(frame));
+            metrics.recordOutbound(1);
+        } catch (Exception e) {
+            System.err.println("Error sending acks to session " + session.getId() + ": " + e.getMessage());
+        }
+    }
+}
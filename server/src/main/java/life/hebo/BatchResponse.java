@@ -0,0 +1,52 @@
+package life.hebo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Ack for a {"messages":[...]} batch: one result per item, in the order they were sent
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchResponse {
+
+    private String status;
+    private String serverTimestamp;
+    private List<ItemResult> results;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ItemResult {
+        private long messageId;
+        private String status;
+        // Only set for errors
+        private String message;
+        // Only set for errors the sender should retry: how long to wait first (see ServerResponse)
+        private Long retryAfterMs;
+        // Only set for acks to multiplexed connections
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+        private int roomId;
+        // Only set for messages accepted through a RoomSequencer
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+        private long sequence;
+        // Only set for coalesced acks to connections that asked for them (?timings=true)
+        private ServerTimings timings;
+
+        public ItemResult(long messageId, String status, String message) {
+            this(messageId, status, message, null, 0, 0L, null);
+        }
+
+        public ItemResult(long messageId, String status, String message, Long retryAfterMs) {
+            this(messageId, status, message, retryAfterMs, 0, 0L, null);
+        }
+
+        public ItemResult(long messageId, String status, String message, int roomId, long sequence) {
+            this(messageId, status, message, null, roomId, sequence, null);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// BinaryProtocol counterpart of ChatWebSocketHandler, served on /chat-bin/{roomId}.
+// Same validation rules and rooms; acks carry only the messageId and server time.
+public class BinaryChatWebSocketHandler extends BinaryWebSocketHandler {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RoomRegistry roomRegistry;
+    private final RoomBroadcaster broadcaster;
+    // Dedup claims and storage, shared with the other endpoint
+    private MessageStore messageStore = new MessageStore();
+    private ServerMetrics metrics = new ServerMetrics();
+    // Optional per-user message rate limit, applied after validation
+    private RateLimiter rateLimiter;
+    // Set in cluster mode: passes accepted messages on to the room's members on other nodes
+    private ClusterNode clusterNode;
+    // Optional single writer per room, shared with the JSON endpoint so mixed rooms keep one order
+    private RoomSequencer sequencer;
+    private int sendTimeLimitMs = ChatWebSocketHandler.SEND_TIME_LIMIT_MS;
+    private int sendBufferSizeLimit = ChatWebSocketHandler.SEND_BUFFER_SIZE_LIMIT;
+    private OverflowPolicy overflowPolicy = ChatWebSocketHandler.OVERFLOW_POLICY;
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    public BinaryChatWebSocketHandler(RoomRegistry roomRegistry) {
+        this.roomRegistry = roomRegistry;
+        this.broadcaster = new RoomBroadcaster(roomRegistry, objectMapper);
+    }
+
+    public void setSendLimits(int timeLimitMs, int bufferSizeLimit, OverflowPolicy overflowPolicy) {
+        this.sendTimeLimitMs = timeLimitMs;
+        this.sendBufferSizeLimit = bufferSizeLimit;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public void setMessageStore(MessageStore messageStore) {
+        this.messageStore = messageStore;
+    }
+
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public void setClusterNode(ClusterNode clusterNode) {
+        this.clusterNode = clusterNode;
+    }
+
+    public void setSequencer(RoomSequencer sequencer) {
+        this.sequencer = sequencer;
+    }
+
+    public void setMetrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        WebSocketSession concurrentSession = new BoundedSendSession(
+                session, sendTimeLimitMs, sendBufferSizeLimit, overflowPolicy, metrics);
+        sessions.put(session.getId(), concurrentSession);
+        roomRegistry.join(getRoomId(session), concurrentSession, true);
+        System.out.println("Binary WebSocket connection established: " + session.getId()
+                + " in room " + getRoomId(session));
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        long start = System.nanoTime();
+        handle(session, message);
+        metrics.recordHandlerTime(System.nanoTime() - start);
+    }
+
+    private void handle(WebSocketSession session, BinaryMessage message) {
+        metrics.recordInbound();
+        WebSocketSession sender = sessions.getOrDefault(session.getId(), session);
+        ChatMessage chatMessage = new ChatMessage();
+        // Room of this message's dedup claim, released if handling fails before it is stored
+        int claimedRoomId = 0;
+        try {
+            MessageValidator.ValidationResult validation = BinaryProtocol.decode(message.getPayload(), chatMessage);
+            if (!validation.isValid()) {
+                metrics.recordValidationFailure(validation.getErrorMessage());
+                reply(sender, BinaryProtocol.encodeError(
+                        chatMessage.getMessageId(), Instant.now(), validation.getErrorMessage()));
+                return;
+            }
+
+            int roomId = getRoomId(sender);
+            DedupWindow.Claim claim = messageStore.claim(roomId, chatMessage);
+            if (claim == DedupWindow.Claim.DUPLICATE) {
+                reply(sender, BinaryProtocol.encodeAck(chatMessage.getMessageId(), Instant.now()));
+                return;
+            }
+            if (claim == DedupWindow.Claim.IN_PROGRESS) {
+                metrics.recordValidationFailure(MessageStore.IN_PROGRESS_MESSAGE);
+                reply(sender, BinaryProtocol.encodeError(chatMessage.getMessageId(), Instant.now(),
+                        MessageStore.IN_PROGRESS_MESSAGE + ", retry later"));
+                return;
+            }
+            claimedRoomId = roomId;
+
+            long retryAfterMs = rateLimiter != null ? rateLimiter.tryAcquire(chatMessage.getUserId()) : RateLimiter.ALLOWED;
+            if (retryAfterMs != RateLimiter.ALLOWED) {
+                messageStore.forget(roomId, chatMessage);
+                String error = RateLimiter.errorMessage(retryAfterMs);
+                metrics.recordValidationFailure(error);
+                reply(sender, BinaryProtocol.encodeError(chatMessage.getMessageId(), Instant.now(), error));
+                return;
+            }
+
+            if (sequencer == null) {
+                accept(sender, roomId, chatMessage, null);
+            } else if (!sequencer.submit(roomId, sequence -> {
+                // The lane would only log the exception; answer it here as below
+                try {
+                    accept(sender, roomId, chatMessage, sequence);
+                } catch (Exception e) {
+                    reject(sender, roomId, chatMessage, e);
+                }
+            })) {
+                messageStore.forget(roomId, chatMessage);
+                metrics.recordValidationFailure(RoomSequencer.BUSY_MESSAGE);
+                reply(sender, BinaryProtocol.encodeError(chatMessage.getMessageId(), Instant.now(),
+                        RoomSequencer.BUSY_MESSAGE + ", retry later"));
+            }
+
+        } catch (Exception e) {
+            reject(sender, claimedRoomId, chatMessage, e);
+        }
+    }
+
+    // Answers a message whose handling threw before it was acked, releasing its dedup claim if it
+    // had one (claimedRoomId non-zero)
+    private void reject(WebSocketSession sender, int claimedRoomId, ChatMessage chatMessage, Exception e) {
+        if (claimedRoomId != 0) messageStore.forget(claimedRoomId, chatMessage);
+        System.err.println("Error processing binary message: " + e.getMessage());
+        metrics.recordValidationFailure("Invalid message format");
+        reply(sender, BinaryProtocol.encodeError(
+                chatMessage.getMessageId(), Instant.now(), "Invalid message format: " + e.getMessage()));
+    }
+
+    // Stores, acks and broadcasts a message that passed every check; on the room's lane thread when
+    // there is a sequencer. Binary frames have no sequence field, but are still sent in sequence order.
+    private void accept(WebSocketSession sender, int roomId, ChatMessage chatMessage,
+                        RoomSequencer.Sequence sequence) throws Exception {
+        byte[] json;
+        try {
+            json = messageStore.persist(roomId, chatMessage, sequence, clusterNode != null);
+        } catch (IOException e) {
+            messageStore.forget(roomId, chatMessage);
+            metrics.recordValidationFailure("Message could not be stored");
+            reply(sender, BinaryProtocol.encodeError(chatMessage.getMessageId(), Instant.now(),
+                    "Message could not be stored: " + e.getMessage()));
+            return;
+        }
+        reply(sender, BinaryProtocol.encodeAck(chatMessage.getMessageId(), Instant.now()));
+        // The sender has its ack by now, so a failure from here on is logged, not answered
+        try {
+            if (chatMessage.getMessageType() == MessageType.JOIN) {
+                metrics.recordOutbound(broadcaster.replayHistory(sender, roomId, true));
+            }
+            metrics.recordOutbound(broadcaster.broadcast(sender, roomId, chatMessage, json));
+            if (clusterNode != null) clusterNode.publish(roomId, json);
+        } catch (Exception e) {
+            System.err.println("Error broadcasting binary message: " + e.getMessage());
+            metrics.recordBroadcastFailure();
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        removeSession(session);
+        System.out.println("Binary WebSocket connection closed: " + session.getId() + " with status: " + status);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        System.err.println("Transport error for session " + session.getId() + ": " + exception.getMessage());
+        removeSession(session);
+    }
+
+    private void removeSession(WebSocketSession session) {
+        WebSocketSession concurrentSession = sessions.remove(session.getId());
+        if (concurrentSession != null) {
+            roomRegistry.leave(getRoomId(session), concurrentSession);
+        }
+    }
+
+    private int getRoomId(WebSocketSession session) {
+        return (Integer) session.getAttributes().get(RoomHandshakeInterceptor.ROOM_ID_ATTRIBUTE);
+    }
+
+    private void reply(WebSocketSession session, byte[] frame) {
+        try {
+            session.sendMessage(new BinaryMessage(frame));
+            metrics.recordOutbound(1);
+        } catch (Exception e) {
+            System.err.println("Error sending message: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package life.hebo;
+
+import life.hebo.MessageValidator.ValidationResult;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+// Compact binary frames for /chat-bin/{roomId} connections. Every frame starts with a kind byte;
+// integers are unsigned LEB128 varints of at most 63 bits, timestamps are epoch microseconds
+// zigzag-encoded into one (they may be before 1970) and strings are a varint byte length
+// followed by UTF-8.
+//
+//   CHAT  (client -> server, and room broadcasts): messageId, userId, type (1 byte), roomId, timestamp, username, message
+//   ACK   (server -> client): messageId, serverTimestamp
+//   ERROR (server -> client): messageId, serverTimestamp, error message
+public class BinaryProtocol {
+
+    public static final byte CHAT = 1;
+    public static final byte ACK = 2;
+    public static final byte ERROR = 3;
+
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+    private static final long NOT_A_VARINT = -1;
+    // readSignedVarint's NOT_A_VARINT: no 63-bit zigzag value decodes to it
+    private static final long NOT_A_VARINT_SIGNED = Long.MIN_VALUE;
+    // 0000-01-01T00:00:00Z and 9999-12-31T23:59:59.999999Z, the first and last instants the JSON
+    // timestamp format can express
+    private static final long MIN_TIMESTAMP_MICROS = -62_167_219_200_000_000L;
+    private static final long MAX_TIMESTAMP_MICROS = 253_402_300_799_999_999L;
+
+    private BinaryProtocol() {}
+
+    // Applies the same rules, in the same order, as ChatMessageDecoder
+    public static ValidationResult decode(ByteBuffer frame, ChatMessage target) {
+        ByteBuffer in = frame.duplicate();
+        if (!in.hasRemaining() || in.get() != CHAT) return ChatMessageDecoder.MALFORMED;
+
+        long messageId = readVarint(in);
+        long userId = readVarint(in);
+        int type = in.hasRemaining() ? in.get() & 0xFF : -1;
+        long roomId = readVarint(in);
+        long timestampMicros = readSignedVarint(in);
+        String username = readString(in);
+        String message = readString(in);
+        if (messageId == NOT_A_VARINT || userId == NOT_A_VARINT || type < 0 || roomId == NOT_A_VARINT
+                || roomId > Integer.MAX_VALUE || timestampMicros == NOT_A_VARINT_SIGNED
+                || username == null || message == null || in.hasRemaining()) {
+            return ChatMessageDecoder.MALFORMED;
+        }
+        target.setMessageId(messageId);
+        target.setRoomId((int) roomId);
+
+        if (userId < MessageValidator.MIN_USERID || userId > MessageValidator.MAX_USERID) {
+            return ChatMessageDecoder.USER_ID_OUT_OF_RANGE;
+        }
+        if (username.length() < MessageValidator.MIN_USERNAME_LENGTH
+                || username.length() > MessageValidator.MAX_USERNAME_LENGTH) {
+            return ChatMessageDecoder.INVALID_USERNAME;
+        }
+        if (message.length() < MessageValidator.MIN_MESSAGE_LENGTH
+                || message.length() > MessageValidator.MAX_MESSAGE_LENGTH) {
+            return ChatMessageDecoder.INVALID_MESSAGE;
+        }
+        if (timestampMicros < MIN_TIMESTAMP_MICROS || timestampMicros > MAX_TIMESTAMP_MICROS) {
+            return ChatMessageDecoder.INVALID_TIMESTAMP;
+        }
+        if (type >= MESSAGE_TYPES.length) return ChatMessageDecoder.INVALID_MESSAGE_TYPE;
+
+        target.setUserId(String.valueOf(userId));
+        target.setUsername(username);
+        target.setMessage(message);
+        target.setTimestamp(toIsoString(timestampMicros));
+        target.setMessageType(MESSAGE_TYPES[type]);
+        return ValidationResult.valid();
+    }
+
+    // Room broadcast frame for a message that has passed validation
+    public static byte[] encodeChat(ChatMessage msg) {
+        byte[] username = msg.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] message = msg.getMessage().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(1 + 10 * 5 + 1 + username.length + message.length);
+        out.put(CHAT);
+        writeVarint(out, msg.getMessageId());
+        writeVarint(out, Integer.parseInt(msg.getUserId()));
+        out.put((byte) msg.getMessageType().ordinal());
+        writeVarint(out, msg.getRoomId());
+        writeSignedVarint(out, toEpochMicros(Instant.parse(msg.getTimestamp())));
+        writeBytes(out, username);
+        writeBytes(out, message);
+        return trim(out);
+    }
+
+    public static byte[] encodeAck(long messageId, Instant serverTime) {
+        ByteBuffer out = ByteBuffer.allocate(1 + 10 + 10);
+        out.put(ACK);
+        writeVarint(out, messageId);
+        writeSignedVarint(out, toEpochMicros(serverTime));
+        return trim(out);
+    }
+
+    public static byte[] encodeError(long messageId, Instant serverTime, String error) {
+        byte[] text = error.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(1 + 10 + 10 + 5 + text.length);
+        out.put(ERROR);
+        writeVarint(out, messageId);
+        writeSignedVarint(out, toEpochMicros(serverTime));
+        writeBytes(out, text);
+        return trim(out);
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 63; shift += 7) {
+            if (!in.hasRemaining()) return NOT_A_VARINT;
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        return NOT_A_VARINT;
+    }
+
+    static void writeVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    // Zigzag: 0, -1, 1, -2, ... become 0, 1, 2, 3, ..., so small negatives stay short and any value
+    // within +-2^62 fits the 63 bits readVarint takes
+    static long readSignedVarint(ByteBuffer in) {
+        long value = readVarint(in);
+        return value == NOT_A_VARINT ? NOT_A_VARINT_SIGNED : (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeSignedVarint(ByteBuffer out, long value) {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static String readString(ByteBuffer in) {
+        long length = readVarint(in);
+        if (length == NOT_A_VARINT || length > in.remaining()) return null;
+        if (!in.hasArray()) {
+            byte[] bytes = new byte[(int) length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), (int) length, StandardCharsets.UTF_8);
+        in.position(in.position() + (int) length);
+        return s;
+    }
+
+    private static void writeBytes(ByteBuffer out, byte[] bytes) {
+        writeVarint(out, bytes.length);
+        out.put(bytes);
+    }
+
+    private static byte[] trim(ByteBuffer out) {
+        byte[] frame = new byte[out.position()];
+        System.arraycopy(out.array(), 0, frame, 0, frame.length);
+        return frame;
+    }
+
+    private static long toEpochMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    private static String toIsoString(long epochMicros) {
+        return Instant.ofEpochSecond(epochMicros / 1_000_000L, (epochMicros % 1_000_000L) * 1_000).toString();
+    }
+}
@@ -0,0 +1,216 @@
+package life.hebo;
+
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Outbound side of a session: frames go into a bounded queue and are written one at a time with
+// the container's async send, so a broadcaster never waits on a slow client's socket. A session
+// whose queue would exceed bufferSizeLimit is handled by its OverflowPolicy; a session whose
+// current write has been in flight longer than sendTimeLimit is closed as stalled.
+//
+// Sessions without an async API (e.g. InMemoryWebSocketSession) are written synchronously by
+// whichever thread drains the queue, which keeps in-process benchmarks deterministic.
+public class BoundedSendSession extends WebSocketSessionDecorator {
+
+    // Non-blocking write; the handler runs once the frame has left, possibly on the calling thread
+    public interface AsyncSender {
+        void sendAsync(WebSocketMessage<?> message, SendHandler onSent);
+    }
+
+    private static final int CALLING = 0;
+    private static final int PENDING = 1;
+    private static final int COMPLETED_INLINE = 2;
+
+    private final long sendTimeLimitNanos;
+    private final int bufferSizeLimit;
+    private final OverflowPolicy overflowPolicy;
+    private final ServerMetrics metrics;
+    private final AsyncSender asyncSender;
+    private final SendHandler onSent = this::onSendComplete;
+
+    private final Queue<WebSocketMessage<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger bufferedBytes = new AtomicInteger();
+    private final AtomicInteger bufferedFrames = new AtomicInteger();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    // Held by the thread draining the queue, or by an async write until it completes
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private final AtomicInteger asyncState = new AtomicInteger();
+    // Start of the write in flight, 0 when idle
+    private volatile long sendStartNanos;
+    private volatile boolean closed;
+
+    public BoundedSendSession(WebSocketSession delegate, int sendTimeLimitMs, int bufferSizeLimit,
+                              OverflowPolicy overflowPolicy, ServerMetrics metrics) {
+        super(delegate);
+        this.sendTimeLimitNanos = sendTimeLimitMs * 1_000_000L;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.overflowPolicy = overflowPolicy;
+        this.metrics = metrics;
+        this.asyncSender = asyncSenderFor(delegate);
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closed) return;
+        long started = sendStartNanos;
+        if (started != 0 && System.nanoTime() - started > sendTimeLimitNanos) {
+            disconnect("Send time limit exceeded");
+            return;
+        }
+        int size = message.getPayloadLength();
+        if (bufferedBytes.get() + size > bufferSizeLimit && !makeRoom(size)) return;
+        bufferedBytes.addAndGet(size);
+        bufferedFrames.incrementAndGet();
+        queue.add(message);
+        drain();
+    }
+
+    public int getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    public int getBufferedFrames() {
+        return bufferedFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        closed = true;
+        discardQueue();
+        super.close(status);
+    }
+
+    // Returns false if the new frame must not be queued
+    private boolean makeRoom(int size) {
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                dropped(1);
+                return false;
+            case DROP_OLDEST:
+                int evicted = 0;
+                while (bufferedBytes.get() + size > bufferSizeLimit) {
+                    WebSocketMessage<?> oldest = queue.poll();
+                    if (oldest == null) break;
+                    bufferedBytes.addAndGet(-oldest.getPayloadLength());
+                    bufferedFrames.decrementAndGet();
+                    evicted++;
+                }
+                dropped(evicted);
+                return true;
+            default:
+                disconnect("Send buffer limit exceeded");
+                return false;
+        }
+    }
+
+    // Writes queued frames until the queue is empty or an async write is left in flight
+    private void drain() {
+        while (sending.compareAndSet(false, true)) {
+            WebSocketMessage<?> message = queue.poll();
+            if (message == null) {
+                sending.set(false);
+                // A frame queued after our poll but before the release would otherwise be stranded
+                if (queue.isEmpty()) return;
+                continue;
+            }
+            bufferedBytes.addAndGet(-message.getPayloadLength());
+            bufferedFrames.decrementAndGet();
+            sendStartNanos = System.nanoTime();
+            if (write(message)) return;
+            sendStartNanos = 0;
+            sending.set(false);
+        }
+    }
+
+    // Returns true if the frame is still being written and onSendComplete will continue the drain
+    private boolean write(WebSocketMessage<?> message) {
+        try {
+            if (asyncSender == null || !message.isLast()
+                    || !(message instanceof TextMessage || message instanceof BinaryMessage)) {
+                getDelegate().sendMessage(message);
+                return false;
+            }
+            asyncState.set(CALLING);
+            asyncSender.sendAsync(message, onSent);
+            return asyncState.compareAndSet(CALLING, PENDING);
+        } catch (Exception e) {
+            System.err.println("Error sending to session " + getId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void onSendComplete(SendResult result) {
+        if (!result.isOK() && !closed) {
+            System.err.println("Error sending to session " + getId() + ": " + result.getException());
+        }
+        // Completed before sendAsync returned: the draining thread carries on
+        if (asyncState.compareAndSet(CALLING, COMPLETED_INLINE)) return;
+        sendStartNanos = 0;
+        sending.set(false);
+        if (!closed) drain();
+    }
+
+    private void disconnect(String reason) {
+        if (closed) return;
+        System.err.println("Closing slow consumer " + getId() + ": " + reason
+                + " (" + bufferedFrames.get() + " frames, " + bufferedBytes.get() + " bytes queued)");
+        metrics.recordSlowConsumerDisconnect();
+        try {
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            System.err.println("Error closing session " + getId() + ": " + e.getMessage());
+        }
+    }
+
+    private void discardQueue() {
+        WebSocketMessage<?> message;
+        while ((message = queue.poll()) != null) {
+            bufferedBytes.addAndGet(-message.getPayloadLength());
+            bufferedFrames.decrementAndGet();
+        }
+    }
+
+    private void dropped(int frames) {
+        if (frames == 0) return;
+        droppedFrames.addAndGet(frames);
+        metrics.recordDroppedFrames(frames);
+    }
+
+    // The container's async remote when there is one; null means write synchronously
+    private static AsyncSender asyncSenderFor(WebSocketSession delegate) {
+        if (delegate instanceof AsyncSender) {
+            return (AsyncSender) delegate;
+        }
+        if (!(delegate instanceof NativeWebSocketSession)) return null;
+        Session nativeSession = ((NativeWebSocketSession) delegate).getNativeSession(Session.class);
+        if (nativeSession == null) return null;
+        RemoteEndpoint.Async remote = nativeSession.getAsyncRemote();
+        return (message, onSent) -> {
+            if (message instanceof TextMessage) {
+                remote.sendText(((TextMessage) message).getPayload(), onSent);
+            } else {
+                remote.sendBinary(((BinaryMessage) message).getPayload(), onSent);
+            }
+        };
+    }
+}
@@ -1,5 +1,6 @@
 package life.hebo;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -19,4 +20,19 @@ public class ChatMessage {
     @JsonProperty(required = false)
     private int roomId;
 
+    // Client-assigned correlation ID, echoed back in the ServerResponse
+    @JsonProperty(required = false)
+    private long messageId;
+
+    // Position in the room's order, stamped by the RoomSequencer (1, 2, 3, ...); 0 and left out
+    // of the JSON when the server runs without one. Kept last, like ServerResponse.messageId.
+    @JsonProperty(required = false)
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private long sequence;
+
+    public ChatMessage(String userId, String username, String message, String timestamp,
+                       MessageType messageType, int roomId, long messageId) {
+        this(userId, username, message, timestamp, messageType, roomId, messageId, 0L);
+    }
+
 }
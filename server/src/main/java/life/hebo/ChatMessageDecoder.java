@@ -0,0 +1,330 @@
+package life.hebo;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import life.hebo.MessageValidator.ValidationResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Single-pass decoder for inbound ChatMessage frames. Fields are validated straight off the
+// Jackson token stream (no ObjectMapper binding, no Integer.parseInt / DateTimeFormatter), and
+// every outcome is a shared ValidationResult, so bad input never costs an exception or an allocation.
+// Applies the same rules, in the same order, as MessageValidator.
+public class ChatMessageDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    static final ValidationResult INVALID_USER_ID = ValidationResult.invalid(
+            "userId must be a valid integer");
+    static final ValidationResult USER_ID_OUT_OF_RANGE = ValidationResult.invalid(
+            "userId must be between " + MessageValidator.MIN_USERID + " and " + MessageValidator.MAX_USERID);
+    static final ValidationResult INVALID_USERNAME = ValidationResult.invalid(
+            "username must be " + MessageValidator.MIN_USERNAME_LENGTH + "-" + MessageValidator.MAX_USERNAME_LENGTH
+                    + " alphanumeric characters");
+    static final ValidationResult INVALID_MESSAGE = ValidationResult.invalid(
+            "message must be " + MessageValidator.MIN_MESSAGE_LENGTH + "-" + MessageValidator.MAX_MESSAGE_LENGTH
+                    + " characters");
+    static final ValidationResult INVALID_TIMESTAMP = ValidationResult.invalid(
+            "timestamp must be valid ISO-8601");
+    static final ValidationResult INVALID_MESSAGE_TYPE = ValidationResult.invalid(
+            "messageType must be one of the specified values: TEXT|JOIN|LEAVE");
+    // Binary frames carry messageIds as unsigned varints, so a negative one could not be broadcast there
+    static final ValidationResult INVALID_MESSAGE_ID = ValidationResult.invalid(
+            "messageId must not be negative");
+    static final ValidationResult MALFORMED = ValidationResult.invalid(
+            "Invalid message format");
+    static final int MAX_BATCH_SIZE = 1000;
+    static final ValidationResult BATCH_TOO_LARGE = ValidationResult.invalid(
+            "batch must contain 1-" + MAX_BATCH_SIZE + " messages");
+
+    private static final String BATCH_FIELD = "messages";
+    private static final String BATCH_PREFIX = "{\"" + BATCH_FIELD + "\"";
+
+    // Bits for fields that were present and passed their check
+    private static final int USER_ID = 1;
+    private static final int USERNAME = 1 << 1;
+    private static final int MESSAGE = 1 << 2;
+    private static final int TIMESTAMP = 1 << 3;
+    private static final int MESSAGE_TYPE = 1 << 4;
+
+    private static final long NOT_AN_INT = Long.MIN_VALUE;
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    public ValidationResult decode(String payload, ChatMessage target) {
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            return decode(parser, target);
+        } catch (IOException e) {
+            // Syntax errors are the only thing Jackson's tokenizer throws on
+            return MALFORMED;
+        }
+    }
+
+    // Same, reading the UTF-8 frame straight from a transport's buffer instead of a String
+    public ValidationResult decode(InputStream payload, ChatMessage target) {
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            return decode(parser, target);
+        } catch (IOException e) {
+            return MALFORMED;
+        }
+    }
+
+    // Batch envelope {"messages":[ChatMessage, ...]}. Each item is decoded into its own ChatMessage
+    // and gets its own result; the return value only says whether the envelope itself was usable.
+    public ValidationResult decodeBatch(String payload, List<ChatMessage> messages, List<ValidationResult> results) {
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            return decodeBatch(parser, messages, results);
+        } catch (IOException e) {
+            return MALFORMED;
+        }
+    }
+
+    public ValidationResult decodeBatch(InputStream payload, List<ChatMessage> messages, List<ValidationResult> results) {
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            return decodeBatch(parser, messages, results);
+        } catch (IOException e) {
+            return MALFORMED;
+        }
+    }
+
+    static boolean isBatch(String payload) {
+        return payload.startsWith(BATCH_PREFIX);
+    }
+
+    // Same check on the first bytes of a UTF-8 frame; the buffer's position is left alone
+    static boolean isBatch(ByteBuffer payload) {
+        if (payload.remaining() < BATCH_PREFIX.length()) return false;
+        for (int i = 0; i < BATCH_PREFIX.length(); i++) {
+            if (payload.get(payload.position() + i) != BATCH_PREFIX.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private ValidationResult decode(JsonParser parser, ChatMessage target) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) return MALFORMED;
+        return decodeObject(parser, target);
+    }
+
+    private ValidationResult decodeBatch(JsonParser parser, List<ChatMessage> messages, List<ValidationResult> results)
+            throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT
+                || parser.nextToken() != JsonToken.FIELD_NAME
+                || !BATCH_FIELD.equals(parser.currentName())
+                || parser.nextToken() != JsonToken.START_ARRAY) {
+            return MALFORMED;
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (messages.size() == MAX_BATCH_SIZE) return BATCH_TOO_LARGE;
+            ChatMessage target = new ChatMessage();
+            messages.add(target);
+            if (token == JsonToken.START_OBJECT) {
+                results.add(decodeObject(parser, target));
+            } else {
+                parser.skipChildren();
+                results.add(MALFORMED);
+            }
+        }
+        if (messages.isEmpty()) return BATCH_TOO_LARGE;
+        return parser.nextToken() == JsonToken.END_OBJECT ? ValidationResult.valid() : MALFORMED;
+    }
+
+    // Decodes one object; the parser is on its START_OBJECT and is left on its END_OBJECT
+    private ValidationResult decodeObject(JsonParser parser, ChatMessage target) throws IOException {
+        int validFields = 0;
+        boolean malformed = false;
+        boolean negativeMessageId = false;
+        ValidationResult userIdError = INVALID_USER_ID;
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            switch (field) {
+                case "userId":
+                    long userId = isScalarText(value)
+                            ? parseInt(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength())
+                            : NOT_AN_INT;
+                    if (userId == NOT_AN_INT) {
+                        userIdError = INVALID_USER_ID;
+                    } else if (userId < MessageValidator.MIN_USERID || userId > MessageValidator.MAX_USERID) {
+                        userIdError = USER_ID_OUT_OF_RANGE;
+                    } else {
+                        validFields |= USER_ID;
+                        target.setUserId(parser.getText());
+                    }
+                    break;
+                case "username":
+                    if (value == JsonToken.VALUE_STRING
+                            && parser.getTextLength() >= MessageValidator.MIN_USERNAME_LENGTH
+                            && parser.getTextLength() <= MessageValidator.MAX_USERNAME_LENGTH) {
+                        validFields |= USERNAME;
+                        target.setUsername(parser.getText());
+                    }
+                    break;
+                case "message":
+                    if (value == JsonToken.VALUE_STRING
+                            && parser.getTextLength() >= MessageValidator.MIN_MESSAGE_LENGTH
+                            && parser.getTextLength() <= MessageValidator.MAX_MESSAGE_LENGTH) {
+                        validFields |= MESSAGE;
+                        target.setMessage(parser.getText());
+                    }
+                    break;
+                case "timestamp":
+                    if (value == JsonToken.VALUE_STRING && isIsoInstant(
+                            parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength())) {
+                        validFields |= TIMESTAMP;
+                        target.setTimestamp(parser.getText());
+                    }
+                    break;
+                case "messageType":
+                    MessageType type = value == JsonToken.VALUE_STRING
+                            ? parseMessageType(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength())
+                            : null;
+                    if (type != null) {
+                        validFields |= MESSAGE_TYPE;
+                        target.setMessageType(type);
+                    }
+                    break;
+                case "roomId":
+                    if (value == JsonToken.VALUE_NUMBER_INT) {
+                        target.setRoomId(parser.getIntValue());
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        malformed = true;
+                    }
+                    break;
+                case "messageId":
+                    if (value == JsonToken.VALUE_NUMBER_INT) {
+                        target.setMessageId(parser.getLongValue());
+                        negativeMessageId = target.getMessageId() < 0;
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        malformed = true;
+                    }
+                    break;
+                case "sequence":
+                    // Present on broadcasts (history replay, cluster deliveries); the server stamps its own
+                    if (value == JsonToken.VALUE_NUMBER_INT) {
+                        target.setSequence(parser.getLongValue());
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        malformed = true;
+                    }
+                    break;
+                default:
+                    // Unknown properties are rejected, as with the ObjectMapper defaults.
+                    // The rest of the object is still read so a batch can carry on with the next item.
+                    malformed = true;
+                    break;
+            }
+            // Step over nested objects/arrays in place of a scalar value
+            parser.skipChildren();
+        }
+        if (token != JsonToken.END_OBJECT || malformed) return MALFORMED;
+
+        // Report the first failure in MessageValidator's order, not in field order
+        if ((validFields & USER_ID) == 0) return userIdError;
+        if ((validFields & USERNAME) == 0) return INVALID_USERNAME;
+        if ((validFields & MESSAGE) == 0) return INVALID_MESSAGE;
+        if ((validFields & TIMESTAMP) == 0) return INVALID_TIMESTAMP;
+        if ((validFields & MESSAGE_TYPE) == 0) return INVALID_MESSAGE_TYPE;
+        if (negativeMessageId) return INVALID_MESSAGE_ID;
+        return ValidationResult.valid();
+    }
+
+    private static boolean isScalarText(JsonToken token) {
+        return token == JsonToken.VALUE_STRING || token == JsonToken.VALUE_NUMBER_INT;
+    }
+
+    // Integer.parseInt rules (optional sign, int range), but returns NOT_AN_INT instead of throwing
+    static long parseInt(char[] c, int off, int len) {
+        if (len == 0) return NOT_AN_INT;
+        int i = off;
+        int end = off + len;
+        boolean negative = false;
+        if (c[i] == '-' || c[i] == '+') {
+            negative = c[i] == '-';
+            if (++i == end) return NOT_AN_INT;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char ch = c[i];
+            if (ch < '0' || ch > '9') return NOT_AN_INT;
+            value = value * 10 + (ch - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) return NOT_AN_INT;
+        }
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? NOT_AN_INT : value;
+    }
+
+    // yyyy-MM-ddTHH:mm:ss[.fffffffff](Z|+HH:MM|-HH:MM), the shape Instant.toString() produces
+    static boolean isIsoInstant(char[] c, int off, int len) {
+        int end = off + len;
+        if (len < 20) return false;
+
+        int year = digits(c, off, 4);
+        int month = digits(c, off + 5, 2);
+        int day = digits(c, off + 8, 2);
+        int hour = digits(c, off + 11, 2);
+        int minute = digits(c, off + 14, 2);
+        int second = digits(c, off + 17, 2);
+        if (year < 0 || c[off + 4] != '-' || month < 1 || month > 12 || c[off + 7] != '-'
+                || day < 1 || day > daysInMonth(year, month) || (c[off + 10] != 'T' && c[off + 10] != 't')
+                || hour < 0 || hour > 23 || c[off + 13] != ':'
+                || minute < 0 || minute > 59 || c[off + 16] != ':'
+                || second < 0 || second > 59) {
+            return false;
+        }
+
+        int i = off + 19;
+        if (c[i] == '.') {
+            int fractionStart = ++i;
+            while (i < end && c[i] >= '0' && c[i] <= '9') i++;
+            int fractionDigits = i - fractionStart;
+            if (fractionDigits < 1 || fractionDigits > 9 || i == end) return false;
+        }
+
+        if (c[i] == 'Z' || c[i] == 'z') {
+            return i + 1 == end;
+        }
+        if ((c[i] == '+' || c[i] == '-') && end - i == 6) {
+            int offsetHours = digits(c, i + 1, 2);
+            int offsetMinutes = digits(c, i + 4, 2);
+            return offsetHours >= 0 && offsetHours <= 18 && c[i + 3] == ':'
+                    && offsetMinutes >= 0 && offsetMinutes <= 59;
+        }
+        return false;
+    }
+
+    private static MessageType parseMessageType(char[] c, int off, int len) {
+        if (matches(c, off, len, "TEXT")) return MessageType.TEXT;
+        if (matches(c, off, len, "JOIN")) return MessageType.JOIN;
+        if (matches(c, off, len, "LEAVE")) return MessageType.LEAVE;
+        return null;
+    }
+
+    private static boolean matches(char[] c, int off, int len, String expected) {
+        if (len != expected.length()) return false;
+        for (int i = 0; i < len; i++) {
+            if (c[off + i] != expected.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int digits(char[] c, int off, int count) {
+        int value = 0;
+        for (int i = off; i < off + count; i++) {
+            char ch = c[i];
+            if (ch < '0' || ch > '9') return -1;
+            value = value * 10 + (ch - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) return 29;
+        return DAYS_IN_MONTH[month - 1];
+    }
+}
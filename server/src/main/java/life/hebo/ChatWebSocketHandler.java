@@ -6,77 +6,523 @@ import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class ChatWebSocketHandler extends TextWebSocketHandler {
 
+    static final int SEND_TIME_LIMIT_MS = 10_000;
+    static final int SEND_BUFFER_SIZE_LIMIT = 512 * 1024;
+    static final OverflowPolicy OVERFLOW_POLICY = OverflowPolicy.DISCONNECT;
+    // Items of one batch are sequenced, stored and acked together, which needs them in one room
+    static final String MULTIPLEXED_BATCH_ERROR = "messages batches are not supported on multiplexed connections";
+
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final MessageValidator validator = new MessageValidator();
-    // Map to store active WebSocket sessions, keyed by session ID
+    private final ChatMessageDecoder decoder = new ChatMessageDecoder();
+    private final RoomRegistry roomRegistry;
+    private final RoomBroadcaster broadcaster;
+    // Dedup claims and storage, shared with the other endpoint
+    private MessageStore messageStore = new MessageStore();
+    private ServerMetrics metrics = new ServerMetrics();
+    // Optional per-user message rate limit, applied after validation
+    private RateLimiter rateLimiter;
+    // Set in cluster mode: passes accepted messages on to the room's members on other nodes
+    private ClusterNode clusterNode;
+    // Optional single writer per room: accepted messages are sequenced, stored, acked and broadcast
+    // on the room's lane thread instead of the thread that received them
+    private RoomSequencer sequencer;
+    // Optional flight recording that is dumped when a message is slow
+    private SlowMessageRecorder slowMessageRecorder;
+    // Map to store active WebSocket sessions, keyed by session ID.
+    // Sessions are wrapped in a BoundedSendSession so room broadcasts and acks can write to them
+    // from several threads without waiting on a slow client.
     private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    // Rooms each multiplexed (/chat-mux) session has joined, keyed by session ID. Updated as frames
+    // are handled; the registry membership follows in the room's order (see accept).
+    private final Map<String, Set<Integer>> subscriptions = new ConcurrentHashMap<>();
+    // Sessions whose acks are coalesced, keyed by session ID
+    private final Map<String, AckCoalescer> coalescers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ackFlushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ack-flush");
+        t.setDaemon(true);
+        return t;
+    });
+    // Server-wide ack coalescing defaults (maxAcks <= 1 = off); clients can override them per connection
+    private int defaultMaxAcks;
+    private long defaultFlushMicros;
+    private int sendTimeLimitMs = SEND_TIME_LIMIT_MS;
+    private int sendBufferSizeLimit = SEND_BUFFER_SIZE_LIMIT;
+    private OverflowPolicy overflowPolicy = OVERFLOW_POLICY;
+
+    public ChatWebSocketHandler(RoomRegistry roomRegistry) {
+        this.roomRegistry = roomRegistry;
+        this.broadcaster = new RoomBroadcaster(roomRegistry, objectMapper);
+    }
+
+    public void setAckCoalescing(int maxAcks, long flushMicros) {
+        this.defaultMaxAcks = maxAcks;
+        this.defaultFlushMicros = flushMicros;
+    }
+
+    public void setSendLimits(int timeLimitMs, int bufferSizeLimit, OverflowPolicy overflowPolicy) {
+        this.sendTimeLimitMs = timeLimitMs;
+        this.sendBufferSizeLimit = bufferSizeLimit;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public void setMessageStore(MessageStore messageStore) {
+        this.messageStore = messageStore;
+    }
+
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public void setClusterNode(ClusterNode clusterNode) {
+        this.clusterNode = clusterNode;
+    }
+
+    public void setSequencer(RoomSequencer sequencer) {
+        this.sequencer = sequencer;
+    }
+
+    public void setSlowMessageRecorder(SlowMessageRecorder slowMessageRecorder) {
+        this.slowMessageRecorder = slowMessageRecorder;
+    }
+
+    public void setMetrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
-        sessions.put(session.getId(), session);
-        System.out.println("WebSocket connection established: " + session.getId());
+        WebSocketSession concurrentSession = new BoundedSendSession(
+                session, sendTimeLimitMs, sendBufferSizeLimit, overflowPolicy, metrics);
+        sessions.put(session.getId(), concurrentSession);
+        if (isMultiplexed(session)) {
+            subscriptions.put(session.getId(), ConcurrentHashMap.newKeySet());
+        } else {
+            roomRegistry.join(getRoomId(session), concurrentSession);
+        }
+
+        Map<String, Object> attributes = session.getAttributes();
+        int maxAcks = (Integer) attributes.getOrDefault(RoomHandshakeInterceptor.ACK_BATCH_ATTRIBUTE, defaultMaxAcks);
+        long flushMicros = (Long) attributes.getOrDefault(
+                RoomHandshakeInterceptor.ACK_FLUSH_MICROS_ATTRIBUTE, defaultFlushMicros);
+        if (maxAcks > 1) {
+            coalescers.put(session.getId(),
+                    new AckCoalescer(concurrentSession, objectMapper, metrics, ackFlushTimer, maxAcks, flushMicros));
+        }
+        System.out.println("WebSocket connection established: " + session.getId()
+                + (isMultiplexed(session) ? " (multiplexed)" : " in room " + getRoomId(session)));
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) {
-        try {
-            // Parse incoming message
-            ChatMessage chatMessage = objectMapper.readValue(message.getPayload(), ChatMessage.class);
+        long start = System.nanoTime();
+        WebSocketSession sender = sessions.getOrDefault(session.getId(), session);
+        String payload = message.getPayload();
+        // Parse and validate incoming messages in one pass
+        if (ChatMessageDecoder.isBatch(payload)) {
+            List<ChatMessage> messages = new ArrayList<>();
+            List<MessageValidator.ValidationResult> results = new ArrayList<>();
+            handleBatch(sender, decoder.decodeBatch(payload, messages, results), messages, results);
+        } else {
+            StageTimings timings = startTimings(sender);
+            ChatMessage chatMessage = new ChatMessage();
+            MessageValidator.ValidationResult validation = decoder.decode(payload, chatMessage);
+            timings.identify(chatMessage);
+            timings.end(StageTimings.Stage.DECODE);
+            handleSingle(sender, validation, chatMessage, timings);
+        }
+        metrics.recordHandlerTime(System.nanoTime() - start);
+    }
 
-            // Validate message
-            MessageValidator.ValidationResult validation = validator.validate(chatMessage);
+    // Entry point for transports that read frames themselves instead of passing TextMessages
+    // (the netty-server module): payload is one UTF-8 JSON frame, batch says whether it is a
+    // batch envelope (see ChatMessageDecoder.isBatch).
+    public void handleFrame(WebSocketSession session, InputStream payload, boolean batch) {
+        long start = System.nanoTime();
+        WebSocketSession sender = sessions.getOrDefault(session.getId(), session);
+        if (batch) {
+            List<ChatMessage> messages = new ArrayList<>();
+            List<MessageValidator.ValidationResult> results = new ArrayList<>();
+            handleBatch(sender, decoder.decodeBatch(payload, messages, results), messages, results);
+        } else {
+            StageTimings timings = startTimings(sender);
+            ChatMessage chatMessage = new ChatMessage();
+            MessageValidator.ValidationResult validation = decoder.decode(payload, chatMessage);
+            timings.identify(chatMessage);
+            timings.end(StageTimings.Stage.DECODE);
+            handleSingle(sender, validation, chatMessage, timings);
+        }
+        metrics.recordHandlerTime(System.nanoTime() - start);
+    }
 
+    private void handleSingle(WebSocketSession sender, MessageValidator.ValidationResult validation,
+                              ChatMessage chatMessage, StageTimings timings) {
+        metrics.recordInbound();
+        // Room of this message's dedup claim, released if handling fails before it is stored
+        int claimedRoomId = 0;
+        try {
             if (!validation.isValid()) {
+                metrics.recordValidationFailure(validation.getErrorMessage());
                 ServerResponse response = new ServerResponse(
                         "ERROR",
                         Instant.now().toString(),
-                        validation.getErrorMessage()
+                        validation.getErrorMessage(),
+                        chatMessage.getMessageId()
                 );
-                echoBackToSender(session, response);
+                acknowledge(sender, response);
+                return;
+            }
+
+            Set<Integer> joined = subscriptions.get(sender.getId());
+            int roomId = joined == null ? getRoomId(sender) : chatMessage.getRoomId();
+            if (joined != null) {
+                String error = checkMultiplexedRoom(joined, chatMessage);
+                if (error != null) {
+                    metrics.recordValidationFailure(error);
+                    acknowledge(sender, new ServerResponse("ERROR", Instant.now().toString(), error,
+                            chatMessage.getMessageId()));
+                    return;
+                }
+            }
+            DedupWindow.Claim claim = messageStore.claim(roomId, chatMessage);
+            if (claim == DedupWindow.Claim.DUPLICATE) {
+                acknowledge(sender, new ServerResponse("SUCCESS", Instant.now().toString(),
+                        "Duplicate of a message already received from user " + chatMessage.getUsername(),
+                        chatMessage.getMessageId()));
+                return;
+            }
+            if (claim == DedupWindow.Claim.IN_PROGRESS) {
+                metrics.recordValidationFailure(MessageStore.IN_PROGRESS_MESSAGE);
+                acknowledge(sender, new ServerResponse("ERROR", Instant.now().toString(),
+                        MessageStore.IN_PROGRESS_MESSAGE + ", retry later", MessageStore.IN_PROGRESS_RETRY_MS,
+                        chatMessage.getMessageId()));
+                return;
+            }
+            claimedRoomId = roomId;
+
+            long retryAfterMs = rateLimiter != null ? rateLimiter.tryAcquire(chatMessage.getUserId()) : RateLimiter.ALLOWED;
+            if (retryAfterMs != RateLimiter.ALLOWED) {
+                messageStore.forget(roomId, chatMessage);
+                String error = RateLimiter.errorMessage(retryAfterMs);
+                metrics.recordValidationFailure(error);
+                acknowledge(sender, new ServerResponse("ERROR", Instant.now().toString(), error,
+                        retryAfterMs, chatMessage.getMessageId()));
+                return;
+            }
+
+            // On a multiplexed session, JOIN and LEAVE also subscribe it to the room or end that
+            boolean subscribes = joined != null && updateSubscription(joined, chatMessage);
+            timings.end(StageTimings.Stage.CHECKS);
+            if (sequencer == null) {
+                accept(sender, roomId, chatMessage, subscribes, null, timings);
+            } else if (!sequencer.submit(roomId, sequence -> {
+                // The lane would only log the exception; answer it here as below
+                try {
+                    accept(sender, roomId, chatMessage, subscribes, sequence, timings);
+                } catch (Exception e) {
+                    reject(sender, roomId, chatMessage, e);
+                }
+            })) {
+                if (subscribes) updateSubscription(joined, chatMessage.getMessageType() == MessageType.JOIN
+                        ? MessageType.LEAVE : MessageType.JOIN, roomId);
+                messageStore.forget(roomId, chatMessage);
+                metrics.recordValidationFailure(RoomSequencer.BUSY_MESSAGE);
+                acknowledge(sender, new ServerResponse("ERROR", Instant.now().toString(),
+                        RoomSequencer.BUSY_MESSAGE + ", retry later", chatMessage.getMessageId()));
+            }
+
+        } catch (Exception e) {
+            reject(sender, claimedRoomId, chatMessage, e);
+        }
+    }
+
+    // Answers a message whose handling threw before it was acked, releasing its dedup claim if it
+    // had one (claimedRoomId non-zero). accept has already undone a JOIN's or LEAVE's subscription.
+    private void reject(WebSocketSession sender, int claimedRoomId, ChatMessage chatMessage, Exception e) {
+        if (claimedRoomId != 0) messageStore.forget(claimedRoomId, chatMessage);
+        System.err.println("Error processing message: " + e.getMessage());
+        metrics.recordValidationFailure("Invalid message format");
+        ServerResponse response = new ServerResponse(
+                "ERROR",
+                Instant.now().toString(),
+                "Invalid message format: " + e.getMessage(),
+                chatMessage.getMessageId()
+        );
+        acknowledge(sender, response);
+    }
+
+    // Stores, acks and broadcasts a message that passed every check. With a sequencer this runs on
+    // the room's lane thread (sequence non-null), one message of the room at a time. subscribes:
+    // a multiplexed session's JOIN (joins the room before anything else) or LEAVE (leaves it after
+    // the broadcast), so the session gets every message sequenced between the two. A JOIN or LEAVE
+    // that is answered with an ERROR leaves the session's rooms as they were.
+    private void accept(WebSocketSession sender, int roomId, ChatMessage chatMessage, boolean subscribes,
+                        RoomSequencer.Sequence sequence, StageTimings timings) throws Exception {
+        timings.end(StageTimings.Stage.QUEUE);
+        boolean multiplexed = subscriptions.containsKey(sender.getId());
+        MessageType type = chatMessage.getMessageType();
+        if (subscribes && type == MessageType.JOIN) roomRegistry.join(roomId, sender);
+        boolean acked = false;
+        try {
+            byte[] json;
+            try {
+                json = messageStore.persist(roomId, chatMessage, sequence, clusterNode != null);
+            } catch (IOException e) {
+                messageStore.forget(roomId, chatMessage);
+                metrics.recordValidationFailure("Message could not be stored");
+                acknowledge(sender, new ServerResponse("ERROR", Instant.now().toString(),
+                        "Message could not be stored: " + e.getMessage(), chatMessage.getMessageId()));
                 return;
             }
+            timings.end(StageTimings.Stage.PERSIST);
 
             // Create server response
+            String serverTimestamp = Instant.now().toString();
+            timings.end(StageTimings.Stage.TIMESTAMP);
             ServerResponse response = new ServerResponse(
                     "SUCCESS",
-                    Instant.now().toString(),
-                    "Message received from user " + chatMessage.getUsername()
+                    serverTimestamp,
+                    "Message received from user " + chatMessage.getUsername(),
+                    null,
+                    multiplexed ? roomId : 0,
+                    chatMessage.getSequence(),
+                    timings.report(),
+                    chatMessage.getMessageId()
             );
-            echoBackToSender(session, response);
+            acknowledge(sender, response);
+            acked = true;
+            timings.end(StageTimings.Stage.ACK);
 
-        } catch (Exception e) {
-            System.err.println("Error processing message: " + e.getMessage());
-            ServerResponse response = new ServerResponse(
-                    "ERROR",
-                    Instant.now().toString(),
-                    "Invalid message format: " + e.getMessage()
-            );
-            echoBackToSender(session, response);
+            // The sender has its SUCCESS by now, so a failure from here on is logged, not answered
+            try {
+                if (chatMessage.getMessageType() == MessageType.JOIN) {
+                    metrics.recordOutbound(broadcaster.replayHistory(sender, roomId, false));
+                }
+                metrics.recordOutbound(broadcaster.broadcast(sender, roomId, chatMessage, json));
+                if (clusterNode != null) clusterNode.publish(roomId, json);
+            } catch (Exception e) {
+                System.err.println("Error broadcasting message: " + e.getMessage());
+                metrics.recordBroadcastFailure();
+            }
+            timings.end(StageTimings.Stage.BROADCAST);
+            if (slowMessageRecorder != null) slowMessageRecorder.record(timings.elapsedNanos());
+        } finally {
+            if (subscribes) {
+                if (type == (acked ? MessageType.LEAVE : MessageType.JOIN)) roomRegistry.leave(roomId, sender);
+                Set<Integer> joined = subscriptions.get(sender.getId());
+                if (!acked && joined != null) {
+                    updateSubscription(joined, type == MessageType.JOIN ? MessageType.LEAVE : MessageType.JOIN, roomId);
+                }
+            }
+        }
+    }
+
+    // A multiplexed session's frame must name a room, and one it has joined unless it is the JOIN.
+    // Returns the error to answer with, or null.
+    private static String checkMultiplexedRoom(Set<Integer> joined, ChatMessage chatMessage) {
+        int roomId = chatMessage.getRoomId();
+        if (roomId <= 0) return "roomId is required on multiplexed connections";
+        if (chatMessage.getMessageType() != MessageType.JOIN && !joined.contains(roomId)) {
+            return "roomId " + roomId + " has not been joined on this connection";
+        }
+        return null;
+    }
+
+    // Returns true if the message changes the session's rooms: a JOIN of a room it is not in yet,
+    // or a LEAVE of one it is in
+    private static boolean updateSubscription(Set<Integer> joined, ChatMessage chatMessage) {
+        return updateSubscription(joined, chatMessage.getMessageType(), chatMessage.getRoomId());
+    }
+
+    private static boolean updateSubscription(Set<Integer> joined, MessageType type, int roomId) {
+        if (type == MessageType.JOIN) return joined.add(roomId);
+        if (type == MessageType.LEAVE) return joined.remove(roomId);
+        return false;
+    }
+
+    // Checks the decoded items for retries and rate limits, then has acceptBatch store, answer and
+    // broadcast them
+    private void handleBatch(WebSocketSession sender, MessageValidator.ValidationResult envelope,
+                             List<ChatMessage> messages, List<MessageValidator.ValidationResult> results) {
+        if (!envelope.isValid()) {
+            metrics.recordInbound();
+            metrics.recordValidationFailure(envelope.getErrorMessage());
+            echoBackToSender(sender, new ServerResponse(
+                    "ERROR", Instant.now().toString(), envelope.getErrorMessage(), 0L));
+            return;
+        }
+
+        if (isMultiplexed(sender)) {
+            metrics.recordInbound();
+            metrics.recordValidationFailure(MULTIPLEXED_BATCH_ERROR);
+            echoBackToSender(sender, new ServerResponse("ERROR", Instant.now().toString(), MULTIPLEXED_BATCH_ERROR, 0L));
+            return;
+        }
+
+        int roomId = getRoomId(sender);
+        // Retries of already accepted items: acked as SUCCESS but not stored or broadcast again
+        boolean[] duplicates = new boolean[messages.size()];
+        // Wait hints of items turned away for now (null if none), answered as their retryAfterMs
+        Long[] retryAfterMs = new Long[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage chatMessage = messages.get(i);
+            metrics.recordInbound();
+            if (!results.get(i).isValid()) continue;
+            DedupWindow.Claim claim = messageStore.claim(roomId, chatMessage);
+            if (claim == DedupWindow.Claim.DUPLICATE) {
+                duplicates[i] = true;
+                continue;
+            }
+            if (claim == DedupWindow.Claim.IN_PROGRESS) {
+                results.set(i, MessageValidator.ValidationResult.invalid(MessageStore.IN_PROGRESS_MESSAGE + ", retry later"));
+                retryAfterMs[i] = MessageStore.IN_PROGRESS_RETRY_MS;
+                continue;
+            }
+            if (rateLimiter != null) {
+                long waitMs = rateLimiter.tryAcquire(chatMessage.getUserId());
+                if (waitMs != RateLimiter.ALLOWED) {
+                    messageStore.forget(roomId, chatMessage);
+                    results.set(i, MessageValidator.ValidationResult.invalid(RateLimiter.errorMessage(waitMs)));
+                    retryAfterMs[i] = waitMs;
+                }
+            }
+        }
+
+        if (sequencer == null) {
+            acceptBatch(sender, roomId, messages, results, duplicates, retryAfterMs, null);
+        } else if (!sequencer.submit(roomId, sequence -> acceptBatch(sender, roomId, messages, results, duplicates, retryAfterMs, sequence))) {
+            // The lane is full: turn the items away, which leaves only the response to send
+            for (int i = 0; i < messages.size(); i++) {
+                if (!results.get(i).isValid() || duplicates[i]) continue;
+                messageStore.forget(roomId, messages.get(i));
+                results.set(i, MessageValidator.ValidationResult.invalid(RoomSequencer.BUSY_MESSAGE + ", retry later"));
+            }
+            acceptBatch(sender, roomId, messages, results, duplicates, retryAfterMs, null);
+        }
+    }
+
+    // Stores the items that passed every check, answers them all with one BatchResponse, then
+    // broadcasts the stored ones. Runs on the room's lane thread when there is a sequencer.
+    private void acceptBatch(WebSocketSession sender, int roomId, List<ChatMessage> messages,
+                             List<MessageValidator.ValidationResult> results, boolean[] duplicates,
+                             Long[] retryAfterMs, RoomSequencer.Sequence sequence) {
+        byte[][] encoded = new byte[messages.size()][];
+        List<BatchResponse.ItemResult> itemResults = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage chatMessage = messages.get(i);
+            MessageValidator.ValidationResult result = results.get(i);
+            if (duplicates[i]) {
+                itemResults.add(new BatchResponse.ItemResult(chatMessage.getMessageId(), "SUCCESS", null));
+                continue;
+            }
+            if (result.isValid()) {
+                try {
+                    encoded[i] = messageStore.persist(roomId, chatMessage, sequence, clusterNode != null);
+                } catch (IOException e) {
+                    messageStore.forget(roomId, chatMessage);
+                    result = MessageValidator.ValidationResult.invalid("Message could not be stored: " + e.getMessage());
+                    results.set(i, result);
+                }
+            }
+            if (!result.isValid()) metrics.recordValidationFailure(result.getErrorMessage());
+            itemResults.add(result.isValid()
+                    ? new BatchResponse.ItemResult(chatMessage.getMessageId(), "SUCCESS", null, 0, chatMessage.getSequence())
+                    : new BatchResponse.ItemResult(chatMessage.getMessageId(), "ERROR", result.getErrorMessage(), retryAfterMs[i]));
+        }
+        echoBackToSender(sender, new BatchResponse("BATCH", Instant.now().toString(), itemResults));
+
+        for (int i = 0; i < messages.size(); i++) {
+            if (!results.get(i).isValid() || duplicates[i]) continue;
+            try {
+                if (messages.get(i).getMessageType() == MessageType.JOIN) {
+                    metrics.recordOutbound(broadcaster.replayHistory(sender, roomId, false));
+                }
+                metrics.recordOutbound(broadcaster.broadcast(sender, roomId, messages.get(i), encoded[i]));
+                if (clusterNode != null) clusterNode.publish(roomId, encoded[i]);
+            } catch (Exception e) {
+                System.err.println("Error broadcasting batch item: " + e.getMessage());
+                metrics.recordBroadcastFailure();
+            }
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        sessions.remove(session.getId());
+        removeSession(session);
         System.out.println("WebSocket connection closed: " + session.getId() + " with status: " + status);
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) {
         System.err.println("Transport error for session " + session.getId() + ": " + exception.getMessage());
-        sessions.remove(session.getId());
+        removeSession(session);
+    }
+
+    private void removeSession(WebSocketSession session) {
+        AckCoalescer coalescer = coalescers.remove(session.getId());
+        if (coalescer != null) {
+            coalescer.close();
+        }
+        WebSocketSession concurrentSession = sessions.remove(session.getId());
+        if (concurrentSession == null) return;
+        Set<Integer> joined = subscriptions.remove(session.getId());
+        if (joined == null) {
+            roomRegistry.leave(getRoomId(session), concurrentSession);
+            return;
+        }
+        for (int roomId : joined) {
+            // Behind any JOIN of this session still queued for the room, so that one cannot re-add it
+            if (sequencer == null || !sequencer.submit(roomId, sequence -> roomRegistry.leave(roomId, concurrentSession))) {
+                roomRegistry.leave(roomId, concurrentSession);
+            }
+        }
+    }
+
+    // Single frames are timed when the client asked for ServerTimings, a slow-message recording is
+    // kept, or a flight recording has HandlerStageEvent enabled
+    private StageTimings startTimings(WebSocketSession session) {
+        return StageTimings.start(session.getAttributes().containsKey(RoomHandshakeInterceptor.TIMINGS_ATTRIBUTE),
+                slowMessageRecorder != null);
+    }
+
+    // /chat-mux sessions have no room of their own
+    private static boolean isMultiplexed(WebSocketSession session) {
+        return !session.getAttributes().containsKey(RoomHandshakeInterceptor.ROOM_ID_ATTRIBUTE);
+    }
+
+    private int getRoomId(WebSocketSession session) {
+        return (Integer) session.getAttributes().get(RoomHandshakeInterceptor.ROOM_ID_ATTRIBUTE);
+    }
+
+    private void acknowledge(WebSocketSession sender, ServerResponse response) {
+        AckCoalescer coalescer = coalescers.get(sender.getId());
+        if (coalescer == null) {
+            echoBackToSender(sender, response);
+            return;
+        }
+        // Coalesced acks keep only the error text and retry hint; the success text is the same for every message
+        coalescer.add(new BatchResponse.ItemResult(response.getMessageId(), response.getStatus(),
+                "ERROR".equals(response.getStatus()) ? response.getMessage() : null,
+                response.getRetryAfterMs(), response.getRoomId(), response.getSequence(), response.getTimings()));
     }
 
-    private void echoBackToSender(WebSocketSession session, ServerResponse response) {
+    private void echoBackToSender(WebSocketSession session, Object response) {
         try {
             String responseJson = objectMapper.writeValueAsString(response);
             session.sendMessage(new TextMessage(responseJson));
+            metrics.recordOutbound(1);
         } catch (Exception e) {
             System.err.println("Error sending message: " + e.getMessage());
         }
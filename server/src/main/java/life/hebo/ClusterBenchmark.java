@@ -0,0 +1,208 @@
+package life.hebo;
+
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// In-process cluster benchmark: 1 to 4 nodes in one JVM, each its own RoomRegistry,
+// ChatWebSocketHandler and ClusterNode, connected by LocalClusterBus or, with the "nio"
+// argument, by NioClusterBus over loopback.
+//
+// Each room's members are spread round-robin over the nodes, as a load balancer would spread
+// connections, and one sender thread per node sends into that node's rooms. Throughput is
+// messages accepted per second over all nodes. A probe sends once a millisecond from node 0 to
+// a room whose only other member is on the last node, first with the cluster idle and then
+// alongside the senders: its latency is the cross-node hop (local delivery with one node).
+public class ClusterBenchmark {
+
+    private static final int MAX_NODES = 4;
+    private static final int ROOMS = 20;
+    private static final int MEMBERS_PER_ROOM = 20;
+    private static final int PROBE_ROOM = 1000;
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+    private static final long MEASURE_NANOS = 5_000_000_000L;
+    private static final long PROBE_INTERVAL_NANOS = 1_000_000;
+    private static final long IDLE_PROBE_NANOS = 1_000_000_000L;
+    private static final long PROBE_TIMEOUT_NANOS = 1_000_000_000L;
+    private static final int MAX_PROBES = 1 << 16;
+    // Senders wait while more cluster frames than this are in flight: the buses never overflow and
+    // the probe measures the hop rather than time spent queued behind a backlog
+    private static final long MAX_IN_FLIGHT_FRAMES = 1_024;
+
+    public static void main(String[] args) throws Exception {
+        boolean nio = args.length > 0 && args[0].equals("nio");
+        System.out.println("\n── Cluster Benchmark (" + (nio ? "NIO bus" : "in-process bus") + ") ──────────────────");
+        System.out.printf("  %6s %10s %10s %12s %12s %12s %12s %12s %8s%n", "nodes", "messages", "msg/s",
+                "delivered/s", "idle p50", "idle p99", "loaded p50", "loaded p99", "dropped");
+
+        // Unreported pass so the first row is not the one that pays for JIT compilation
+        run(MAX_NODES, nio, false);
+        for (int nodes = 1; nodes <= MAX_NODES; nodes++) {
+            run(nodes, nio, true);
+        }
+        System.out.println("─────────────────────────────────────────────────────");
+    }
+
+    private static void run(int nodeCount, boolean nio, boolean report) throws Exception {
+        ClusterRing ring = new ClusterRing(nodeCount, 128);
+        LocalClusterBus.Hub hub = new LocalClusterBus.Hub();
+        List<InetSocketAddress> addresses = nio ? freeLoopbackAddresses(nodeCount) : null;
+        ServerMetrics[] metrics = new ServerMetrics[nodeCount];
+        ChatWebSocketHandler[] handlers = new ChatWebSocketHandler[nodeCount];
+        ClusterNode[] clusterNodes = new ClusterNode[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            RoomRegistry registry = new RoomRegistry();
+            metrics[node] = new ServerMetrics();
+            clusterNodes[node] = new ClusterNode(node, ring,
+                    nio ? new NioClusterBus(addresses) : new LocalClusterBus(hub), registry);
+            clusterNodes[node].setMetrics(metrics[node]);
+            clusterNodes[node].start();
+            handlers[node] = new ChatWebSocketHandler(registry);
+            handlers[node].setMetrics(metrics[node]);
+            handlers[node].setClusterNode(clusterNodes[node]);
+        }
+
+        // senders[node][i]: a member on that node, one per room the node has members in
+        List<List<InMemoryWebSocketSession>> senders = new ArrayList<>();
+        for (int node = 0; node < nodeCount; node++) senders.add(new ArrayList<>());
+        List<InMemoryWebSocketSession> members = new ArrayList<>();
+        for (int room = 1; room <= ROOMS; room++) {
+            for (int i = 0; i < MEMBERS_PER_ROOM; i++) {
+                int node = (room + i) % nodeCount;
+                InMemoryWebSocketSession session = new InMemoryWebSocketSession(room);
+                handlers[node].afterConnectionEstablished(session);
+                members.add(session);
+                if (i < nodeCount) senders.get(node).add(session);
+            }
+        }
+        InMemoryWebSocketSession probeSender = new InMemoryWebSocketSession(PROBE_ROOM);
+        InMemoryWebSocketSession probeReceiver = new InMemoryWebSocketSession(PROBE_ROOM);
+        handlers[0].afterConnectionEstablished(probeSender);
+        handlers[nodeCount - 1].afterConnectionEstablished(probeReceiver);
+        // Let SUBSCRIBEs reach the owners (and NIO connections come up) before anything is sent
+        Thread.sleep(nio ? 500 : 100);
+        TextMessage probe = frame(PROBE_ROOM);
+        long[] idleHops = probe(handlers[0], probeSender, probeReceiver, probe, System.nanoTime() + IDLE_PROBE_NANOS);
+
+        CountDownLatch done = new CountDownLatch(nodeCount);
+        AtomicLong sent = new AtomicLong();
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        long end = warmupEnd + MEASURE_NANOS;
+        for (int node = 0; node < nodeCount; node++) {
+            int n = node;
+            Thread sender = new Thread(() -> {
+                send(handlers[n], senders.get(n), metrics, warmupEnd, end, sent);
+                done.countDown();
+            }, "cluster-sender-" + node);
+            sender.setDaemon(true);
+            sender.start();
+        }
+
+        while (System.nanoTime() < warmupEnd) {
+            LockSupport.parkNanos(PROBE_INTERVAL_NANOS);
+        }
+        long deliveredBefore = totalDelivered(members);
+        long start = System.nanoTime();
+        long[] loadedHops = probe(handlers[0], probeSender, probeReceiver, probe, end);
+        done.await();
+        long elapsedNs = System.nanoTime() - start;
+        // Less the senders' own acks
+        long delivered = totalDelivered(members) - deliveredBefore - sent.get();
+        long dropped = 0;
+        for (ServerMetrics m : metrics) dropped += m.getClusterDroppedFrames();
+        for (ClusterNode clusterNode : clusterNodes) clusterNode.close();
+        if (!report) return;
+
+        System.out.printf("  %6d %,10d %,10.0f %,12.0f %12.1f %12.1f %12.1f %12.1f %,8d%n",
+                nodeCount, sent.get(), sent.get() / (elapsedNs / 1e9), delivered / (elapsedNs / 1e9),
+                percentile(idleHops, 50) / 1000.0, percentile(idleHops, 99) / 1000.0,
+                percentile(loadedHops, 50) / 1000.0, percentile(loadedHops, 99) / 1000.0, dropped);
+    }
+
+    // Sends one probe a millisecond until end; returns the sorted send-to-delivery times
+    private static long[] probe(ChatWebSocketHandler handler, InMemoryWebSocketSession sender,
+                                InMemoryWebSocketSession receiver, TextMessage probe, long end) throws Exception {
+        long[] hopNs = new long[MAX_PROBES];
+        int probes = 0;
+        while (System.nanoTime() < end && probes < MAX_PROBES) {
+            long before = receiver.getDeliveredFrames();
+            long t0 = System.nanoTime();
+            handler.handleMessage(sender, probe);
+            while (receiver.getDeliveredFrames() == before && System.nanoTime() - t0 < PROBE_TIMEOUT_NANOS) {
+                Thread.onSpinWait();
+            }
+            hopNs[probes++] = receiver.getLastDeliveryNanos() - t0;
+            LockSupport.parkNanos(PROBE_INTERVAL_NANOS);
+        }
+        long[] sorted = Arrays.copyOf(hopNs, probes);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static void send(ChatWebSocketHandler handler, List<InMemoryWebSocketSession> senders,
+                             ServerMetrics[] metrics, long warmupEnd, long end, AtomicLong sent) {
+        TextMessage[] frames = new TextMessage[senders.size()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = frame((Integer) senders.get(i).getAttributes().get(RoomHandshakeInterceptor.ROOM_ID_ATTRIBUTE));
+        }
+        long count = 0;
+        try {
+            for (long now = System.nanoTime(); now < end; count++) {
+                int i = (int) (count % frames.length);
+                handler.handleMessage(senders.get(i), frames[i]);
+                if ((count & 63) == 0) {
+                    while (inFlight(metrics) > MAX_IN_FLIGHT_FRAMES) Thread.yield();
+                    now = System.nanoTime();
+                    if (now < warmupEnd) count = -1;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Cluster sender failed: " + e.getMessage());
+        }
+        sent.addAndGet(count);
+    }
+
+    private static long inFlight(ServerMetrics[] metrics) {
+        long inFlight = 0;
+        for (ServerMetrics m : metrics) {
+            inFlight += m.getClusterFramesSent() - m.getClusterFramesReceived() - m.getClusterDroppedFrames();
+        }
+        return inFlight;
+    }
+
+    private static TextMessage frame(int roomId) {
+        return new TextMessage("{\"userId\":\"42\",\"username\":\"user42\","
+                + "\"message\":\"hello room\",\"timestamp\":\"" + Instant.now() + "\","
+                + "\"messageType\":\"TEXT\",\"roomId\":" + roomId + "}");
+    }
+
+    private static List<InetSocketAddress> freeLoopbackAddresses(int count) throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                addresses.add(new InetSocketAddress("127.0.0.1", socket.getLocalPort()));
+            }
+        }
+        return addresses;
+    }
+
+    private static long totalDelivered(List<InMemoryWebSocketSession> members) {
+        long total = 0;
+        for (InMemoryWebSocketSession member : members) total += member.getDeliveredFrames();
+        return total;
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, idx)];
+    }
+}
@@ -0,0 +1,24 @@
+package life.hebo;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Node-to-node transport for ClusterNode. Frames are opaque byte arrays, delivered to a peer in
+// the order they were sent to it; a frame for a peer that cannot be reached may be dropped.
+public interface ClusterBus extends Closeable {
+
+    interface Receiver {
+        // Called on the bus's own thread, one frame at a time
+        void onFrame(byte[] frame);
+
+        // A (re)connection to node: anything it should know about this node must be sent again
+        void onPeerConnected(int node);
+    }
+
+    void start(int self, Receiver receiver) throws IOException;
+
+    void send(int node, byte[] frame);
+
+    // Frames given up on: peer unreachable and its queue full
+    long getDroppedFrames();
+}
@@ -0,0 +1,181 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One server in a multi-node cluster. Clients may connect to any node; each room has an owner
+// node picked by the ClusterRing, and the owner knows which other nodes have members in it.
+//
+// A message accepted here is delivered to this node's members as before, then handed to
+// publish(): it goes to the room's owner (PUBLISH), which delivers it to its own members and
+// relays it (DELIVER) to every other subscribed node except the one it came from. Nodes tell
+// the owner when a room gains its first or loses its last local member (SUBSCRIBE / UNSUBSCRIBE),
+// and say it again whenever their connection to the owner is re-established.
+//
+// Frames are [type:1][origin node:4][roomId:4][payload], the payload being the message JSON.
+public class ClusterNode implements ClusterBus.Receiver, RoomRegistry.Listener, Closeable {
+
+    static final byte SUBSCRIBE = 1;
+    static final byte UNSUBSCRIBE = 2;
+    static final byte PUBLISH = 3;
+    static final byte DELIVER = 4;
+    private static final int HEADER_BYTES = 1 + Integer.BYTES + Integer.BYTES;
+    private static final int[] NO_NODES = new int[0];
+
+    private final int self;
+    private final ClusterRing ring;
+    private final ClusterBus bus;
+    private final RoomRegistry roomRegistry;
+    private final RoomBroadcaster broadcaster;
+    private ServerMetrics metrics = new ServerMetrics();
+    // Rooms this node owns -> other nodes with members in them. Arrays are replaced, never
+    // modified, so publishers read them without locking; they change only on join/leave.
+    private final Map<Integer, int[]> subscribers = new ConcurrentHashMap<>();
+
+    public ClusterNode(int self, ClusterRing ring, ClusterBus bus, RoomRegistry roomRegistry) {
+        this.self = self;
+        this.ring = ring;
+        this.bus = bus;
+        this.roomRegistry = roomRegistry;
+        this.broadcaster = new RoomBroadcaster(roomRegistry, new ObjectMapper());
+    }
+
+    public void setMetrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+        metrics.setClusterDroppedFrames(bus::getDroppedFrames);
+    }
+
+    public void start() throws IOException {
+        roomRegistry.setListener(this);
+        bus.start(self, this);
+    }
+
+    public int getNode() {
+        return self;
+    }
+
+    // Passes a message accepted on this node (and already delivered to its members) to the
+    // room's members on other nodes
+    public void publish(int roomId, byte[] json) {
+        int owner = ring.ownerOf(roomId);
+        if (owner == self) {
+            relay(self, roomId, frame(DELIVER, self, roomId, json));
+        } else {
+            send(owner, frame(PUBLISH, self, roomId, json));
+        }
+    }
+
+    @Override
+    public void roomOpened(int roomId) {
+        int owner = ring.ownerOf(roomId);
+        if (owner != self) send(owner, frame(SUBSCRIBE, self, roomId, null));
+    }
+
+    @Override
+    public void roomClosed(int roomId) {
+        int owner = ring.ownerOf(roomId);
+        if (owner != self) send(owner, frame(UNSUBSCRIBE, self, roomId, null));
+    }
+
+    @Override
+    public void onPeerConnected(int node) {
+        for (Room room : roomRegistry.getRooms()) {
+            if (ring.ownerOf(room.getRoomId()) == node) {
+                send(node, frame(SUBSCRIBE, self, room.getRoomId(), null));
+            }
+        }
+    }
+
+    @Override
+    public void onFrame(byte[] frame) {
+        metrics.recordClusterFrameReceived();
+        ByteBuffer header = ByteBuffer.wrap(frame);
+        byte type = header.get();
+        int origin = header.getInt();
+        int roomId = header.getInt();
+        switch (type) {
+            case SUBSCRIBE:
+                subscribers.compute(roomId, (id, nodes) -> with(nodes, origin));
+                break;
+            case UNSUBSCRIBE:
+                subscribers.computeIfPresent(roomId, (id, nodes) -> without(nodes, origin));
+                break;
+            case PUBLISH:
+                deliver(roomId, frame);
+                // Relayed as is apart from the type, so the origin still names the accepting node
+                frame[0] = DELIVER;
+                relay(origin, roomId, frame);
+                break;
+            case DELIVER:
+                if (!deliver(roomId, frame)) {
+                    // Everyone here left before the owner heard: stop it sending more
+                    roomRegistry.runIfAbsent(roomId, () -> roomClosed(roomId));
+                }
+                break;
+            default:
+                System.err.println("Unknown cluster frame type " + type + " on node " + self);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        roomRegistry.setListener(null);
+        bus.close();
+    }
+
+    // Returns false if no one on this node is in the room
+    private boolean deliver(int roomId, byte[] frame) {
+        if (roomRegistry.getRoom(roomId) == null) return false;
+        try {
+            metrics.recordOutbound(broadcaster.broadcastRemote(roomId, Arrays.copyOfRange(frame, HEADER_BYTES, frame.length)));
+        } catch (Exception e) {
+            System.err.println("Error delivering cluster message to room " + roomId + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    private void relay(int origin, int roomId, byte[] frame) {
+        for (int node : subscribers.getOrDefault(roomId, NO_NODES)) {
+            if (node != origin) send(node, frame);
+        }
+    }
+
+    private void send(int node, byte[] frame) {
+        bus.send(node, frame);
+        metrics.recordClusterFrameSent();
+    }
+
+    private static byte[] frame(byte type, int origin, int roomId, byte[] json) {
+        int length = json == null ? 0 : json.length;
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + length);
+        frame.put(type).putInt(origin).putInt(roomId);
+        if (json != null) frame.put(json);
+        return frame.array();
+    }
+
+    private static int[] with(int[] nodes, int node) {
+        if (nodes == null) return new int[]{node};
+        for (int n : nodes) {
+            if (n == node) return nodes;
+        }
+        int[] grown = Arrays.copyOf(nodes, nodes.length + 1);
+        grown[nodes.length] = node;
+        return grown;
+    }
+
+    // Returns null (dropping the room) once no other node is subscribed
+    private static int[] without(int[] nodes, int node) {
+        int[] shrunk = new int[nodes.length];
+        int size = 0;
+        for (int n : nodes) {
+            if (n != node) shrunk[size++] = n;
+        }
+        return size == 0 ? null : Arrays.copyOf(shrunk, size);
+    }
+}
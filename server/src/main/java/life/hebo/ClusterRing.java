@@ -0,0 +1,49 @@
+package life.hebo;
+
+import java.util.Arrays;
+
+// Consistent-hash ring that assigns each room to an owner node. Every node is placed on the ring
+// at virtualNodes points; a room belongs to the first point at or after its own hash. Adding or
+// removing a node therefore only moves the rooms next to that node's points, and every node that
+// is given the same node count works out the same owners without talking to the others.
+public class ClusterRing {
+
+    private final long[] points;
+    private final int[] owners;
+
+    public ClusterRing(int nodeCount, int virtualNodes) {
+        if (nodeCount < 1) throw new IllegalArgumentException("A cluster needs at least one node");
+        int size = nodeCount * virtualNodes;
+        long[] hashes = new long[size];
+        for (int node = 0, i = 0; node < nodeCount; node++) {
+            for (int v = 0; v < virtualNodes; v++, i++) {
+                // Low 32 bits: the index, so equal hashes still sort deterministically
+                hashes[i] = (mix(((long) node << 32) | v) & ~0xFFFFFFFFL) | i;
+            }
+        }
+        Arrays.sort(hashes);
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[i];
+            owners[i] = (int) (hashes[i] & 0xFFFFFFFFL) / virtualNodes;
+        }
+    }
+
+    public int ownerOf(int roomId) {
+        long hash = mix(0x5DEECE66DL ^ roomId) & ~0xFFFFFFFFL;
+        int i = Arrays.binarySearch(points, hash);
+        if (i < 0) i = -i - 1;
+        return owners[i == points.length ? 0 : i];
+    }
+
+    // murmur3 fmix64
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,133 @@
+package life.hebo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Log-linear latency histogram in nanoseconds, safe to record into from any number of threads.
+// Same bucket layout as the client's LatencyHistogram: values below 128 ns are exact, above that
+// each power-of-two range has 64 linear sub-buckets (~1.6% error), and memory is fixed.
+//
+// Recording is a single getAndIncrement on one of several stripes, picked by thread id, so
+// container threads rarely touch the same cache line. Readers sum the stripes; a snapshot taken
+// while writers are active may be off by the few values recorded during the read.
+public class ConcurrentLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int VALUE_BITS = 36;
+
+    // Highest trackable value: ~68 seconds. Larger values are clamped.
+    public static final long MAX_TRACKABLE_NANOS = (1L << VALUE_BITS) - 1;
+
+    private static final int BUCKET_COUNT = VALUE_BITS - SUB_BUCKET_BITS + 1;
+    private static final int COUNTS_LENGTH = (BUCKET_COUNT + 1) * SUB_BUCKET_HALF_COUNT;
+    // Two extra slots per stripe: total count and sum
+    private static final int TOTAL = COUNTS_LENGTH;
+    private static final int SUM = COUNTS_LENGTH + 1;
+    private static final int STRIPE_LENGTH = COUNTS_LENGTH + 2;
+
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+
+    public ConcurrentLatencyHistogram() {
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(STRIPE_LENGTH);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_TRACKABLE_NANOS);
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+        stripe.getAndIncrement(indexFor(value));
+        stripe.getAndIncrement(TOTAL);
+        stripe.getAndAdd(SUM, value);
+    }
+
+    // Sums the stripes into a point-in-time copy
+    public Snapshot snapshot() {
+        long[] counts = new long[COUNTS_LENGTH];
+        long total = 0;
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < COUNTS_LENGTH; i++) {
+                counts[i] += stripe.get(i);
+            }
+            total += stripe.get(TOTAL);
+            sum += stripe.get(SUM);
+        }
+        return new Snapshot(counts, total, sum);
+    }
+
+    private static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int bucket = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> bucket);
+        return bucket * SUB_BUCKET_HALF_COUNT + subBucket;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int bucket = index / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return (subBucket << bucket) + (1L << bucket) - 1;
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+        private final long sum;
+
+        private Snapshot(long[] counts, long totalCount, long sum) {
+            this.counts = counts;
+            this.totalCount = totalCount;
+            this.sum = sum;
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public double getMean() {
+            return totalCount == 0 ? 0 : (double) sum / totalCount;
+        }
+
+        public long getMax() {
+            for (int i = COUNTS_LENGTH - 1; i >= 0; i--) {
+                if (counts[i] > 0) return highestEquivalentValue(i);
+            }
+            return 0;
+        }
+
+        // Nearest rank: the smallest bucket value such that at least p% of the samples are <= it
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < COUNTS_LENGTH; i++) {
+                seen += counts[i];
+                if (seen >= rank) return highestEquivalentValue(i);
+            }
+            return getMax();
+        }
+
+        // Number of values <= upperBound, for Prometheus cumulative buckets
+        public long getCountAtOrBelow(long upperBound) {
+            long count = 0;
+            for (int i = 0; i < COUNTS_LENGTH && highestEquivalentValue(i) <= upperBound; i++) {
+                count += counts[i];
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package life.hebo;
+
+import java.util.Arrays;
+
+// Recently accepted (room, user, messageId) keys, so a client retry of a message the server already
+// took can be acked without being stored or broadcast again.
+//
+// Keys are 64-bit hashes kept in open-addressing long[] tables: no object per message and a fixed
+// footprint. Each shard has two generations; new keys go into the current one, lookups check both,
+// and when the current one is full or windowMs/2 old it becomes the previous one and the oldest
+// is cleared. A key is therefore remembered for between windowMs/2 and windowMs (or until
+// capacity newer keys have arrived). An exact set rather than a Bloom filter: a false positive
+// here would ack a message that was never delivered.
+//
+// A key is claimed before its message is stored and only accepted once it has been: until then
+// the entry carries the PENDING bit, and a retry that finds it is told IN_PROGRESS rather than
+// being acked for a message that may still fail.
+public class DedupWindow {
+
+    private static final int SHARDS = 64;
+    private static final long EMPTY = 0;
+    // Set on entries whose message is still being handled; keys themselves never have it
+    private static final long PENDING = Long.MIN_VALUE;
+
+    public enum Claim {
+        // First sighting: the caller handles the message, then accepts or removes the key
+        NEW,
+        // A message with this key was accepted
+        DUPLICATE,
+        // A message with this key is still being handled and may yet fail
+        IN_PROGRESS
+    }
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final long halfWindowNanos;
+
+    // capacity: keys per generation across all shards
+    public DedupWindow(int capacity, long windowMs) {
+        this.halfWindowNanos = windowMs * 1_000_000L / 2;
+        int perShard = Math.max(16, capacity / SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(perShard);
+        }
+    }
+
+    public static long key(int roomId, String userId, long messageId) {
+        long h = messageId * 0x9E3779B97F4A7C15L + userId.hashCode();
+        h = h * 0x9E3779B97F4A7C15L + roomId;
+        // murmur3 fmix64
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        h &= ~PENDING;
+        return h == EMPTY ? 1 : h;
+    }
+
+    // Claims the key for a message about to be handled, unless a message with it was seen before
+    public Claim claim(long key) {
+        return shardFor(key).claim(key, System.nanoTime());
+    }
+
+    // Marks a claimed key's message as accepted: retries are now DUPLICATEs
+    public void accept(long key) {
+        shardFor(key).accept(key);
+    }
+
+    // Releases a claimed key whose message was not accepted after all, so a retry is processed
+    // again. Accepted keys are kept.
+    public void remove(long key) {
+        shardFor(key).remove(key);
+    }
+
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            bytes += 2L * shard.current.length * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    private Shard shardFor(long key) {
+        // Bit 63 is never set in a key
+        return shards[(int) (key >>> 57) & (SHARDS - 1)];
+    }
+
+    // Guarded by its own monitor; with 64 shards two senders rarely wait on the same one
+    private final class Shard {
+        private final int generationCapacity;
+        private long[] current;
+        private long[] previous;
+        private int currentSize;
+        private long currentStartNanos = System.nanoTime();
+
+        private Shard(int generationCapacity) {
+            this.generationCapacity = generationCapacity;
+            // At most half full, so probes stay short
+            int tableSize = Integer.highestOneBit(generationCapacity * 2 - 1) * 2;
+            this.current = new long[tableSize];
+            this.previous = new long[tableSize];
+        }
+
+        private synchronized Claim claim(long key, long now) {
+            if (currentSize >= generationCapacity || now - currentStartNanos >= halfWindowNanos) {
+                long[] oldest = previous;
+                previous = current;
+                Arrays.fill(oldest, EMPTY);
+                current = oldest;
+                currentSize = 0;
+                currentStartNanos = now;
+            }
+            int i = indexOf(previous, key);
+            if (i >= 0) return (previous[i] & PENDING) != 0 ? Claim.IN_PROGRESS : Claim.DUPLICATE;
+            int mask = current.length - 1;
+            i = (int) key & mask;
+            while (current[i] != EMPTY) {
+                if ((current[i] & ~PENDING) == key) {
+                    return (current[i] & PENDING) != 0 ? Claim.IN_PROGRESS : Claim.DUPLICATE;
+                }
+                i = (i + 1) & mask;
+            }
+            current[i] = key | PENDING;
+            currentSize++;
+            return Claim.NEW;
+        }
+
+        private synchronized void accept(long key) {
+            int i = indexOf(current, key);
+            if (i >= 0) {
+                current[i] = key;
+                return;
+            }
+            i = indexOf(previous, key);
+            if (i >= 0) previous[i] = key;
+        }
+
+        // Pending entries only
+        private synchronized void remove(long key) {
+            int i = indexOf(current, key);
+            if (i >= 0) {
+                if ((current[i] & PENDING) != 0 && delete(current, key)) currentSize--;
+                return;
+            }
+            i = indexOf(previous, key);
+            if (i >= 0 && (previous[i] & PENDING) != 0) delete(previous, key);
+        }
+
+        // Slot of key, with or without its PENDING bit
+        private int indexOf(long[] table, long key) {
+            int mask = table.length - 1;
+            for (int i = (int) key & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+                if ((table[i] & ~PENDING) == key) return i;
+            }
+            return -1;
+        }
+
+        // Linear-probing delete: shift later entries of the same cluster back so lookups still find them
+        private boolean delete(long[] table, long key) {
+            int hole = indexOf(table, key);
+            if (hole < 0) return false;
+            int mask = table.length - 1;
+            for (int i = (hole + 1) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+                int home = (int) table[i] & mask;
+                // Move table[i] into the hole unless its home slot lies cyclically in (hole, i]
+                boolean homeBetween = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+                if (!homeBetween) {
+                    table[hole] = table[i];
+                    hole = i;
+                }
+            }
+            table[hole] = EMPTY;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package life.hebo;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Fixed-size direct ByteBuffers for off-heap room histories. A slab goes back to the pool when its
+// room closes and is handed to the next room, so direct memory is allocated once per peak room
+// rather than left for the GC's Cleaner to free.
+public class DirectSlabPool {
+
+    private final int slabBytes;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocatedSlabs = new AtomicInteger();
+    private final AtomicInteger freeSlabs = new AtomicInteger();
+
+    public DirectSlabPool(int slabBytes) {
+        this.slabBytes = slabBytes;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer slab = free.poll();
+        if (slab != null) {
+            freeSlabs.decrementAndGet();
+            return slab;
+        }
+        allocatedSlabs.incrementAndGet();
+        return ByteBuffer.allocateDirect(slabBytes);
+    }
+
+    public void release(ByteBuffer slab) {
+        free.offer(slab);
+        freeSlabs.incrementAndGet();
+    }
+
+    public int getSlabBytes() {
+        return slabBytes;
+    }
+
+    public int getAllocatedSlabs() {
+        return allocatedSlabs.get();
+    }
+
+    public int getFreeSlabs() {
+        return freeSlabs.get();
+    }
+}
@@ -0,0 +1,8 @@
+package life.hebo;
+
+// When MessageLog forces appended records to disk
+public enum FsyncPolicy {
+    NONE,           // leave it to the OS page cache
+    INTERVAL,       // a background thread forces every room's active segment every N ms
+    EVERY_MESSAGE   // force each record before the append returns (and so before the ack)
+}
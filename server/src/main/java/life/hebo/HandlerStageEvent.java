@@ -0,0 +1,28 @@
+package life.hebo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One stage of one message in ChatWebSocketHandler (see StageTimings.Stage). Recorded whenever a
+// flight recording is running, e.g. -XX:StartFlightRecording or chat.jfr.enabled=true; without
+// one, creating the event is skipped.
+@Name("life.hebo.HandlerStage")
+@Label("Chat Handler Stage")
+@Category({"Chat Server", "Handler"})
+@Description("Time one message spent in one stage of the chat handler")
+@StackTrace(false)
+public class HandlerStageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Room ID")
+    int roomId;
+
+    @Label("Message ID")
+    long messageId;
+}
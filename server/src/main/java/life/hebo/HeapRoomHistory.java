@@ -0,0 +1,49 @@
+package life.hebo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// RoomHistory on the Java heap. Lock-free: a writer claims the next sequence number and publishes
+// its entry into that slot; readers walk the window behind the sequence and skip slots that were
+// overwritten or are still being filled. Replaying never holds up the room's writers.
+public class HeapRoomHistory implements RoomHistory {
+
+    private final int capacity;
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong nextSeq = new AtomicLong();
+
+    public HeapRoomHistory(int capacity) {
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public void append(byte[] json) {
+        long seq = nextSeq.getAndIncrement();
+        slots.set((int) (seq % capacity), new Entry(seq, json));
+    }
+
+    @Override
+    public int forEach(Consumer<byte[]> visitor) {
+        long end = nextSeq.get();
+        int visited = 0;
+        for (long seq = Math.max(0, end - capacity); seq < end; seq++) {
+            Entry entry = slots.get((int) (seq % capacity));
+            if (entry == null || entry.seq != seq) continue;
+            visitor.accept(entry.json);
+            visited++;
+        }
+        return visited;
+    }
+
+    private static final class Entry {
+        private final long seq;
+        private final byte[] json;
+
+        private Entry(long seq, byte[] json) {
+            this.seq = seq;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package life.hebo;
+
+import org.springframework.web.socket.TextMessage;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// In-process soak for room history storage: pushes messages through ChatWebSocketHandler into
+// many rooms with a deep history, then reports GC counts, pause totals and heap occupancy.
+// Usage: HistorySoak [heap|off-heap] [minutes]   (run each mode in its own JVM, same -Xmx)
+public class HistorySoak {
+
+    private static final int ROOMS = 10_000;
+    private static final int HISTORY_SIZE = 128;
+    private static final int SLOT_BYTES = 512;
+    private static final int JOIN_EVERY = 20;               // 5% JOIN, as in the load client
+    private static final int LATENCY_SAMPLE_EVERY = 16;
+    private static final int LATENCY_SAMPLES = 1 << 20;
+
+    public static void main(String[] args) throws Exception {
+        boolean offHeap = args.length > 0 && args[0].equals("off-heap");
+        long minutes = args.length > 1 ? Long.parseLong(args[1]) : 10;
+
+        RoomRegistry registry = offHeap
+                ? new RoomRegistry(HISTORY_SIZE, new DirectSlabPool(HISTORY_SIZE * SLOT_BYTES))
+                : new RoomRegistry(HISTORY_SIZE);
+        ChatWebSocketHandler handler = new ChatWebSocketHandler(registry);
+
+        List<InMemoryWebSocketSession> senders = new ArrayList<>(ROOMS);
+        for (int roomId = 1; roomId <= ROOMS; roomId++) {
+            InMemoryWebSocketSession sender = new InMemoryWebSocketSession(roomId);
+            handler.afterConnectionEstablished(sender);
+            handler.afterConnectionEstablished(new InMemoryWebSocketSession(roomId));
+            senders.add(sender);
+        }
+
+        long[] gcCountsBefore = gcCounts();
+        long[] gcTimesBefore = gcTimes();
+        long[] latenciesNs = new long[LATENCY_SAMPLES];
+        long sampled = 0;
+        long messages = 0;
+        long maxNs = 0;
+        String timestamp = Instant.now().toString();
+        long deadline = System.nanoTime() + minutes * 60_000_000_000L;
+
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 10_000; i++, messages++) {
+                InMemoryWebSocketSession sender = senders.get((int) (messages % ROOMS));
+                int userId = 1 + (int) (messages % 100_000);
+                TextMessage frame = new TextMessage("{\"userId\":\"" + userId + "\",\"username\":\"user" + userId
+                        + "\",\"message\":\"" + messages + ". This is a message for the history soak.\""
+                        + ",\"timestamp\":\"" + timestamp + "\",\"messageType\":\""
+                        + (messages % JOIN_EVERY == 0 ? "JOIN" : "TEXT") + "\",\"roomId\":0,\"messageId\":"
+                        + messages + "}");
+                long t0 = System.nanoTime();
+                handler.handleMessage(sender, frame);
+                long ns = System.nanoTime() - t0;
+                if (ns > maxNs) maxNs = ns;
+                if (messages % LATENCY_SAMPLE_EVERY == 0) {
+                    latenciesNs[(int) (sampled++ % LATENCY_SAMPLES)] = ns;
+                }
+            }
+        }
+
+        long[] gcCounts = gcCounts();
+        long[] gcTimes = gcTimes();
+        long[] samples = Arrays.copyOf(latenciesNs, (int) Math.min(sampled, LATENCY_SAMPLES));
+        Arrays.sort(samples);
+
+        System.out.println("\n── History Soak (" + (offHeap ? "off-heap" : "heap") + ", " + minutes + " min) ──────────");
+        System.out.printf("  rooms %,d x history %d, %,d messages (%,.0f msg/s)%n",
+                ROOMS, HISTORY_SIZE, messages, messages / (minutes * 60.0));
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        for (int i = 0; i < collectors.size(); i++) {
+            System.out.printf("  %-24s %,8d collections %,10d ms%n", collectors.get(i).getName(),
+                    gcCounts[i] - gcCountsBefore[i], gcTimes[i] - gcTimesBefore[i]);
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || pool.getCollectionUsage() == null) continue;
+            System.out.printf("  %-24s %,8d MB after last GC, %,d MB peak%n", pool.getName(),
+                    pool.getCollectionUsage().getUsed() >> 20, pool.getPeakUsage().getUsed() >> 20);
+        }
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                System.out.printf("  %-24s %,8d MB%n", "direct buffers", pool.getMemoryUsed() >> 20);
+            }
+        }
+        System.out.printf("  handler time p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f ms%n",
+                percentile(samples, 50) / 1000.0, percentile(samples, 99) / 1000.0,
+                percentile(samples, 99.9) / 1000.0, maxNs / 1e6);
+        System.out.println("─────────────────────────────────────────────────────");
+    }
+
+    private static long[] gcCounts() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).toArray();
+    }
+
+    private static long[] gcTimes() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).toArray();
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, idx)];
+    }
+}
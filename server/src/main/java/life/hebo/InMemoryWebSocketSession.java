@@ -0,0 +1,131 @@
+package life.hebo;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Socket-less WebSocketSession used by the in-process benchmarks.
+// Counts delivered frames and remembers when the last one arrived.
+public class InMemoryWebSocketSession implements WebSocketSession {
+
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong();
+
+    private final String id = "mem-" + ID_SEQUENCE.incrementAndGet();
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final AtomicLong deliveredFrames = new AtomicLong();
+    private final AtomicLong deliveredBytes = new AtomicLong();
+    private volatile long lastDeliveryNanos;
+    private volatile boolean open = true;
+
+    public InMemoryWebSocketSession(int roomId) {
+        attributes.put(RoomHandshakeInterceptor.ROOM_ID_ATTRIBUTE, roomId);
+    }
+
+    public long getDeliveredFrames() {
+        return deliveredFrames.get();
+    }
+
+    public long getDeliveredBytes() {
+        return deliveredBytes.get();
+    }
+
+    public long getLastDeliveryNanos() {
+        return lastDeliveryNanos;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        deliveredFrames.incrementAndGet();
+        deliveredBytes.addAndGet(message.getPayloadLength());
+        lastDeliveryNanos = System.nanoTime();
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return URI.create("ws://localhost/chat/" + attributes.get(RoomHandshakeInterceptor.ROOM_ID_ATTRIBUTE));
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return new HttpHeaders();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        open = false;
+    }
+}
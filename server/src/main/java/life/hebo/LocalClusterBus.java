@@ -0,0 +1,92 @@
+package life.hebo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// In-process stand-in for NioClusterBus: nodes in the same JVM that share a Hub hand frames to
+// each other through bounded queues. Each node drains its queue on its own thread, so a frame
+// crosses a thread boundary just as it would cross a socket, without needing ports or peers.
+public class LocalClusterBus implements ClusterBus {
+
+    private static final int MAX_QUEUED_FRAMES = 65_536;
+    private static final int DRAIN_BATCH = 256;
+
+    // The nodes of one in-process cluster
+    public static class Hub {
+        private final Map<Integer, LocalClusterBus> nodes = new ConcurrentHashMap<>();
+    }
+
+    private final Hub hub;
+    private final BlockingQueue<byte[]> inbox = new ArrayBlockingQueue<>(MAX_QUEUED_FRAMES);
+    private final LongAdder droppedFrames = new LongAdder();
+    private int self;
+    private Receiver receiver;
+    private Thread dispatcher;
+    private volatile boolean closed;
+
+    public LocalClusterBus(Hub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void start(int self, Receiver receiver) {
+        this.self = self;
+        this.receiver = receiver;
+        dispatcher = new Thread(() -> dispatch(receiver), "cluster-bus-" + self);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        hub.nodes.put(self, this);
+        // Both ways, as NioClusterBus does once each side has connected: a (re)started node must
+        // learn the others' subscriptions as much as they must learn its own
+        hub.nodes.forEach((node, bus) -> {
+            if (node == self) return;
+            receiver.onPeerConnected(node);
+            bus.receiver.onPeerConnected(self);
+        });
+    }
+
+    @Override
+    public void send(int node, byte[] frame) {
+        LocalClusterBus target = hub.nodes.get(node);
+        if (target == null || target.closed || !target.inbox.offer(frame)) {
+            droppedFrames.increment();
+        }
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        hub.nodes.remove(self, this);
+        if (dispatcher != null) dispatcher.interrupt();
+    }
+
+    private void dispatch(Receiver receiver) {
+        List<byte[]> batch = new ArrayList<>(DRAIN_BATCH);
+        while (!closed) {
+            try {
+                batch.add(inbox.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            inbox.drainTo(batch, DRAIN_BATCH - 1);
+            for (byte[] frame : batch) {
+                try {
+                    receiver.onFrame(frame);
+                } catch (Exception e) {
+                    System.err.println("Error handling cluster frame on node " + self + ": " + e.getMessage());
+                }
+            }
+            batch.clear();
+        }
+    }
+}
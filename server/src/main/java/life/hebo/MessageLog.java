@@ -0,0 +1,196 @@
+package life.hebo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Append-only message log, one directory per room: <dir>/room-<id>/<baseOffset>.log.
+// Segments are fixed-size files mapped with FileChannel.map; a full segment is forced and a new
+// one is started. Records are [int length][int crc32][payload]; a zero length marks the end
+// of the written part, which is how the write position is found again after a restart.
+public class MessageLog implements AutoCloseable {
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final Map<Integer, RoomLog> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService fsyncTimer;
+
+    public MessageLog(Path dir, int segmentBytes, FsyncPolicy fsyncPolicy, long fsyncIntervalMs) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            fsyncTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "log-fsync");
+                t.setDaemon(true);
+                return t;
+            });
+            fsyncTimer.scheduleWithFixedDelay(this::forceAll, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            fsyncTimer = null;
+        }
+    }
+
+    // Returns the record's offset within the room (0, 1, 2, ...)
+    public long append(int roomId, byte[] payload) throws IOException {
+        if (payload.length > segmentBytes - 2 * HEADER_BYTES) {
+            throw new IOException("Record of " + payload.length + " bytes does not fit a " + segmentBytes + " byte segment");
+        }
+        RoomLog room = rooms.get(roomId);
+        if (room == null) {
+            room = openRoom(roomId);
+        }
+        return room.append(payload);
+    }
+
+    public void forceAll() {
+        for (RoomLog room : rooms.values()) {
+            room.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (fsyncTimer != null) {
+            fsyncTimer.shutdownNow();
+        }
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            forceAll();
+        }
+    }
+
+    private RoomLog openRoom(int roomId) throws IOException {
+        try {
+            return rooms.computeIfAbsent(roomId, id -> {
+                try {
+                    return new RoomLog(Files.createDirectories(dir.resolve("room-" + id)));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    private class RoomLog {
+        private final Path roomDir;
+        private final CRC32 crc = new CRC32();
+        private volatile MappedByteBuffer segment;
+        private long nextOffset;
+        // Set by appends, cleared by the interval fsync
+        private volatile boolean dirty;
+
+        private RoomLog(Path roomDir) throws IOException {
+            this.roomDir = roomDir;
+            File[] segments = roomDir.toFile().listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+            long lastBase = segments == null ? -1 : Arrays.stream(segments)
+                    .mapToLong(f -> baseOffsetOf(f.getName()))
+                    .max().orElse(-1);
+            if (lastBase < 0) {
+                segment = mapSegment(0);
+                return;
+            }
+            // Reopen the newest segment and skip past the records it already holds. A record torn by
+            // a crash (length out of range or CRC mismatch) ends the log: its length word is zeroed
+            // so the next append overwrites it.
+            segment = mapSegment(lastBase);
+            nextOffset = lastBase;
+            while (segment.remaining() >= HEADER_BYTES) {
+                int position = segment.position();
+                int length = segment.getInt(position);
+                if (length == 0) break;
+                if (length < 0 || length > segment.remaining() - HEADER_BYTES
+                        || checksum(position + HEADER_BYTES, length) != segment.getInt(position + 4)) {
+                    System.err.println("Truncating torn record at offset " + nextOffset + " in " + roomDir);
+                    segment.putInt(position, 0);
+                    break;
+                }
+                segment.position(position + HEADER_BYTES + length);
+                nextOffset++;
+            }
+        }
+
+        private int checksum(int from, int length) {
+            ByteBuffer payload = segment.duplicate();
+            payload.limit(from + length).position(from);
+            crc.reset();
+            crc.update(payload);
+            return (int) crc.getValue();
+        }
+
+        private synchronized long append(byte[] payload) throws IOException {
+            // Keep room for the record plus the zero length that terminates the segment
+            if (segment.remaining() < HEADER_BYTES + payload.length + 4) {
+                if (fsyncPolicy != FsyncPolicy.NONE) {
+                    segment.force();
+                }
+                segment = mapSegment(nextOffset);
+            }
+            crc.reset();
+            crc.update(payload);
+            int start = segment.position();
+            segment.putInt(payload.length);
+            segment.putInt((int) crc.getValue());
+            segment.put(payload);
+            // Terminate the log again: past a truncated record there may be leftovers of it
+            segment.putInt(segment.position(), 0);
+
+            if (fsyncPolicy == FsyncPolicy.EVERY_MESSAGE) {
+                segment.force(start, HEADER_BYTES + payload.length + 4);
+            } else {
+                dirty = true;
+            }
+            return nextOffset++;
+        }
+
+        // Not under the append lock: msync covers the whole mapping and runs alongside appends
+        private void force() {
+            if (dirty) {
+                dirty = false;
+                segment.force();
+            }
+        }
+
+        // An existing segment is mapped at its own length, which chat.log.segment-bytes may no longer
+        // match; only a new one is sized to segmentBytes
+        private MappedByteBuffer mapSegment(long baseOffset) throws IOException {
+            Path file = roomDir.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                long length = raf.length();
+                if (length == 0) {
+                    length = segmentBytes;
+                    raf.setLength(length);
+                }
+                // The mapping stays valid after the channel is closed
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            }
+        }
+
+        // The base offset a segment file is named after, or -1 for a stray *.log file
+        private long baseOffsetOf(String name) {
+            try {
+                return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring " + name + " in " + roomDir + ": not a log segment");
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+// The steps every endpoint takes for a message it may accept: claiming its (room, user, messageId)
+// in the dedup window, then stamping and storing it. Shared by ChatWebSocketHandler and
+// BinaryChatWebSocketHandler so a retry is recognised, and a message stored, the same way on both.
+public class MessageStore {
+
+    // Answer to a retry that arrives while the original is still being handled
+    public static final String IN_PROGRESS_MESSAGE = "Original message still in progress";
+    public static final long IN_PROGRESS_RETRY_MS = 100;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Optional window of recently accepted messageIds; retries inside it are acked, not reprocessed
+    private final DedupWindow dedupWindow;
+    // Optional durable log; accepted messages are appended before they are acked
+    private final MessageLog messageLog;
+    private final ServerMetrics metrics;
+
+    // No dedup window and no log
+    public MessageStore() {
+        this(null, null, new ServerMetrics());
+    }
+
+    public MessageStore(DedupWindow dedupWindow, MessageLog messageLog, ServerMetrics metrics) {
+        this.dedupWindow = dedupWindow;
+        this.messageLog = messageLog;
+        this.metrics = metrics;
+    }
+
+    // Claims the message's (room, user, messageId) in the dedup window. NEW: handle it, and either
+    // persist it or forget it. DUPLICATE: a copy was stored, ack it. IN_PROGRESS: a copy is still
+    // being handled and may fail, so the sender must retry (IN_PROGRESS_MESSAGE).
+    // Messages without a client messageId (0) are never treated as duplicates.
+    public DedupWindow.Claim claim(int roomId, ChatMessage chatMessage) {
+        if (dedupWindow == null || chatMessage.getMessageId() == 0) return DedupWindow.Claim.NEW;
+        DedupWindow.Claim claim = dedupWindow.claim(
+                DedupWindow.key(roomId, chatMessage.getUserId(), chatMessage.getMessageId()));
+        metrics.recordDedupCheck(claim != DedupWindow.Claim.NEW);
+        return claim;
+    }
+
+    // Releases the claim of a message that was rejected after all, so its retry is processed.
+    // Does nothing once the message has been persisted.
+    public void forget(int roomId, ChatMessage chatMessage) {
+        if (dedupWindow == null || chatMessage.getMessageId() == 0) return;
+        dedupWindow.remove(DedupWindow.key(roomId, chatMessage.getUserId(), chatMessage.getMessageId()));
+    }
+
+    // Stamps the room's next sequence number (0 without a sequencer) and appends the message to its
+    // room's log; returns the encoded JSON for the broadcast and the cluster to reuse (null if
+    // neither the log nor the caller, with encode, needed it). Once stored, the message's claim is
+    // accepted: from then on its retries are DUPLICATEs.
+    public byte[] persist(int roomId, ChatMessage chatMessage, RoomSequencer.Sequence sequence, boolean encode)
+            throws IOException {
+        chatMessage.setSequence(sequence != null ? sequence.next() : 0);
+        byte[] json = null;
+        if (messageLog != null || encode) {
+            chatMessage.setRoomId(roomId);
+            json = objectMapper.writeValueAsBytes(chatMessage);
+            if (messageLog != null) messageLog.append(roomId, json);
+        }
+        if (dedupWindow != null && chatMessage.getMessageId() != 0) {
+            dedupWindow.accept(DedupWindow.key(roomId, chatMessage.getUserId(), chatMessage.getMessageId()));
+        }
+        if (sequence != null) sequence.advance();
+        return json;
+    }
+}
@@ -4,12 +4,12 @@ import java.time.format.DateTimeFormatter;
 
 public class MessageValidator {
 
-    private static final int MIN_USERID = 1;
-    private static final int MAX_USERID = 100000;
-    private static final int MIN_USERNAME_LENGTH = 3;
-    private static final int MAX_USERNAME_LENGTH = 20;
-    private static final int MIN_MESSAGE_LENGTH = 1;
-    private static final int MAX_MESSAGE_LENGTH = 500;
+    static final int MIN_USERID = 1;
+    static final int MAX_USERID = 100000;
+    static final int MIN_USERNAME_LENGTH = 3;
+    static final int MAX_USERNAME_LENGTH = 20;
+    static final int MIN_MESSAGE_LENGTH = 1;
+    static final int MAX_MESSAGE_LENGTH = 500;
 
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ISO_INSTANT;
 
@@ -55,6 +55,8 @@ public class MessageValidator {
     }
 
     public static class ValidationResult {
+        private static final ValidationResult VALID = new ValidationResult(true, null);
+
         private boolean valid;
         private String errorMessage;
 
@@ -63,8 +65,9 @@ public class MessageValidator {
             this.errorMessage = errorMessage;
         }
 
+        // Success carries no state, so every caller shares one instance
         public static ValidationResult valid() {
-            return new ValidationResult(true, null);
+            return VALID;
         }
 
         public static ValidationResult invalid(String errorMessage) {
@@ -0,0 +1,183 @@
+package life.hebo;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Live server metrics next to /health. JSON by default; Prometheus text exposition for
+// ?format=prometheus or any Accept header that asks for text/plain (as Prometheus scrapers do).
+@RestController
+public class MetricsController {
+
+    private static final MediaType PROMETHEUS_TEXT = MediaType.parseMediaType("text/plain; version=0.0.4; charset=utf-8");
+    // Handler-time histogram buckets exported to Prometheus, in seconds
+    private static final double[] BUCKET_SECONDS = {
+            0.000005, 0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005,
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1};
+
+    private final ServerMetrics metrics;
+    private final RoomRegistry roomRegistry;
+
+    public MetricsController(ServerMetrics metrics, RoomRegistry roomRegistry) {
+        this.metrics = metrics;
+        this.roomRegistry = roomRegistry;
+    }
+
+    @GetMapping("/metrics")
+    public ResponseEntity<?> metrics(@RequestParam(required = false) String format,
+                                     @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        boolean prometheus = format != null
+                ? format.equals("prometheus")
+                : accept != null && accept.contains(MediaType.TEXT_PLAIN_VALUE);
+        if (prometheus) {
+            return ResponseEntity.ok().contentType(PROMETHEUS_TEXT).body(prometheus());
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json());
+    }
+
+    private Map<String, Object> json() {
+        double[] rates = metrics.getRates();
+        ConcurrentLatencyHistogram.Snapshot handlerTime = metrics.getHandlerTime();
+
+        Map<String, Object> messages = new LinkedHashMap<>();
+        messages.put("inbound", metrics.getInbound());
+        messages.put("outbound", metrics.getOutbound());
+        messages.put("inboundPerSecond", Math.round(rates[0]));
+        messages.put("outboundPerSecond", Math.round(rates[1]));
+
+        Map<String, Object> handler = new LinkedHashMap<>();
+        handler.put("count", handlerTime.getTotalCount());
+        handler.put("mean", handlerTime.getMean() / 1000.0);
+        handler.put("p50", handlerTime.getValueAtPercentile(50) / 1000.0);
+        handler.put("p90", handlerTime.getValueAtPercentile(90) / 1000.0);
+        handler.put("p99", handlerTime.getValueAtPercentile(99) / 1000.0);
+        handler.put("p99.9", handlerTime.getValueAtPercentile(99.9) / 1000.0);
+        handler.put("max", handlerTime.getMax() / 1000.0);
+
+        Map<Integer, Object> rooms = new TreeMap<>();
+        long openSessions = 0;
+        long sendBacklog = 0;
+        for (Room room : roomRegistry.getRooms()) {
+            Map<String, Object> counters = new LinkedHashMap<>();
+            int sessions = room.size();
+            long backlog = room.getSendBacklogBytes();
+            counters.put("sessions", sessions);
+            counters.put("sendBacklogBytes", backlog);
+            counters.put("largestSessionBacklogBytes", room.getLargestSendBacklogBytes());
+            rooms.put(room.getRoomId(), counters);
+            openSessions += sessions;
+            sendBacklog += backlog;
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("timestamp", Instant.now().toString());
+        response.put("messages", messages);
+        response.put("validationFailures", metrics.getValidationFailures());
+        response.put("handlerTimeMicros", handler);
+        response.put("openSessions", openSessions);
+        response.put("sendBacklogBytes", sendBacklog);
+        response.put("droppedFrames", metrics.getDroppedFrames());
+        response.put("slowConsumerDisconnects", metrics.getSlowConsumerDisconnects());
+        response.put("broadcastFailures", metrics.getBroadcastFailures());
+        Map<String, Object> dedup = new LinkedHashMap<>();
+        long dedupChecks = metrics.getDedupChecks();
+        dedup.put("checks", dedupChecks);
+        dedup.put("duplicates", metrics.getDedupHits());
+        dedup.put("hitRate", dedupChecks == 0 ? 0.0 : (double) metrics.getDedupHits() / dedupChecks);
+        dedup.put("memoryBytes", metrics.getDedupMemoryBytes());
+        response.put("dedup", dedup);
+        Map<String, Object> cluster = new LinkedHashMap<>();
+        cluster.put("framesSent", metrics.getClusterFramesSent());
+        cluster.put("framesReceived", metrics.getClusterFramesReceived());
+        cluster.put("framesDropped", metrics.getClusterDroppedFrames());
+        response.put("cluster", cluster);
+        response.put("sequencerBacklog", metrics.getSequencerBacklog());
+        response.put("rooms", rooms);
+        return response;
+    }
+
+    private String prometheus() {
+        double[] rates = metrics.getRates();
+        ConcurrentLatencyHistogram.Snapshot handlerTime = metrics.getHandlerTime();
+        StringBuilder out = new StringBuilder(4096);
+
+        metric(out, "chat_messages_inbound_total", "counter", "Inbound chat messages, including invalid ones");
+        out.append("chat_messages_inbound_total ").append(metrics.getInbound()).append('\n');
+        metric(out, "chat_messages_outbound_total", "counter", "Frames sent to sessions: acks, broadcasts, replays");
+        out.append("chat_messages_outbound_total ").append(metrics.getOutbound()).append('\n');
+        metric(out, "chat_messages_inbound_per_second", "gauge", "Inbound rate over the last sample window");
+        out.append("chat_messages_inbound_per_second ").append(rates[0]).append('\n');
+        metric(out, "chat_messages_outbound_per_second", "gauge", "Outbound rate over the last sample window");
+        out.append("chat_messages_outbound_per_second ").append(rates[1]).append('\n');
+
+        metric(out, "chat_validation_failures_total", "counter", "Rejected messages by the field that failed");
+        metrics.getValidationFailures().forEach((reason, count) -> out.append("chat_validation_failures_total{reason=\"")
+                .append(reason).append("\"} ").append(count).append('\n'));
+
+        metric(out, "chat_handler_seconds", "histogram", "Time to parse, validate, ack and broadcast one message");
+        for (double le : BUCKET_SECONDS) {
+            out.append("chat_handler_seconds_bucket{le=\"").append(BigDecimal.valueOf(le).stripTrailingZeros().toPlainString()).append("\"} ")
+                    .append(handlerTime.getCountAtOrBelow(Math.round(le * 1e9))).append('\n');
+        }
+        out.append("chat_handler_seconds_bucket{le=\"+Inf\"} ").append(handlerTime.getTotalCount()).append('\n');
+        out.append("chat_handler_seconds_sum ").append(handlerTime.getSum() / 1e9).append('\n');
+        out.append("chat_handler_seconds_count ").append(handlerTime.getTotalCount()).append('\n');
+
+        metric(out, "chat_room_sessions", "gauge", "Open sessions per room");
+        StringBuilder backlogs = new StringBuilder();
+        long sendBacklog = 0;
+        for (Room room : roomRegistry.getRooms()) {
+            long backlog = room.getSendBacklogBytes();
+            out.append("chat_room_sessions{room=\"").append(room.getRoomId()).append("\"} ")
+                    .append(room.size()).append('\n');
+            backlogs.append("chat_room_send_backlog_bytes{room=\"").append(room.getRoomId()).append("\"} ")
+                    .append(backlog).append('\n');
+            sendBacklog += backlog;
+        }
+        metric(out, "chat_room_send_backlog_bytes", "gauge", "Bytes queued in room members' send buffers");
+        out.append(backlogs);
+        metric(out, "chat_room_largest_session_backlog_bytes", "gauge", "Bytes queued for the room's slowest member");
+        for (Room room : roomRegistry.getRooms()) {
+            out.append("chat_room_largest_session_backlog_bytes{room=\"").append(room.getRoomId()).append("\"} ")
+                    .append(room.getLargestSendBacklogBytes()).append('\n');
+        }
+        metric(out, "chat_send_backlog_bytes", "gauge", "Bytes queued in all send buffers");
+        out.append("chat_send_backlog_bytes ").append(sendBacklog).append('\n');
+        metric(out, "chat_dropped_frames_total", "counter", "Frames discarded by a drop overflow policy");
+        out.append("chat_dropped_frames_total ").append(metrics.getDroppedFrames()).append('\n');
+        metric(out, "chat_slow_consumer_disconnects_total", "counter", "Sessions closed for a full or stalled send buffer");
+        out.append("chat_slow_consumer_disconnects_total ").append(metrics.getSlowConsumerDisconnects()).append('\n');
+        metric(out, "chat_broadcast_failures_total", "counter", "Acked messages whose broadcast to the room failed");
+        out.append("chat_broadcast_failures_total ").append(metrics.getBroadcastFailures()).append('\n');
+        metric(out, "chat_dedup_checks_total", "counter", "Messages looked up in the dedup window");
+        out.append("chat_dedup_checks_total ").append(metrics.getDedupChecks()).append('\n');
+        metric(out, "chat_dedup_duplicates_total", "counter", "Retries acked without being processed again");
+        out.append("chat_dedup_duplicates_total ").append(metrics.getDedupHits()).append('\n');
+        metric(out, "chat_dedup_memory_bytes", "gauge", "Fixed size of the dedup window tables");
+        out.append("chat_dedup_memory_bytes ").append(metrics.getDedupMemoryBytes()).append('\n');
+        metric(out, "chat_cluster_frames_sent_total", "counter", "Frames sent to other cluster nodes");
+        out.append("chat_cluster_frames_sent_total ").append(metrics.getClusterFramesSent()).append('\n');
+        metric(out, "chat_cluster_frames_received_total", "counter", "Frames received from other cluster nodes");
+        out.append("chat_cluster_frames_received_total ").append(metrics.getClusterFramesReceived()).append('\n');
+        metric(out, "chat_cluster_frames_dropped_total", "counter", "Frames for unreachable cluster nodes that were given up on");
+        out.append("chat_cluster_frames_dropped_total ").append(metrics.getClusterDroppedFrames()).append('\n');
+        metric(out, "chat_sequencer_backlog", "gauge", "Accepted messages queued for their room's sequencer lane");
+        out.append("chat_sequencer_backlog ").append(metrics.getSequencerBacklog()).append('\n');
+        return out.toString();
+    }
+
+    private static void metric(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
@@ -0,0 +1,317 @@
+package life.hebo;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// ClusterBus over plain TCP, one selector thread per node. Every node listens on its own address
+// from the node list and opens one outbound connection to each peer, so each connection carries
+// frames one way only. Frames are length-prefixed; whatever is queued for a
+// peer is packed into one write buffer per wakeup, so a burst of small frames costs few syscalls.
+//
+// A peer that is down is reconnected with a backoff from MIN_RECONNECT_DELAY_NANOS up to
+// MAX_RECONNECT_DELAY_NANOS, whether or not anything is queued for it: a restarted node only
+// learns this node's subscriptions through onPeerConnected. Frames for a peer that is down queue
+// up to MAX_QUEUED_FRAMES and are then dropped, as is any frame that was half-written when a
+// connection broke.
+public class NioClusterBus implements ClusterBus {
+
+    private static final int MAX_QUEUED_FRAMES = 65_536;
+    private static final int WRITE_BUFFER_BYTES = 256 * 1024;
+    private static final int READ_BUFFER_BYTES = 256 * 1024;
+    private static final int MAX_FRAME_BYTES = WRITE_BUFFER_BYTES - Integer.BYTES;
+    private static final long MIN_RECONNECT_DELAY_NANOS = 250_000_000L;
+    private static final long MAX_RECONNECT_DELAY_NANOS = 5_000_000_000L;
+
+    private final List<InetSocketAddress> addresses;
+    private final LongAdder droppedFrames = new LongAdder();
+    // Set by senders that have woken the selector; cleared by the selector thread before it looks at the queues
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final ByteBuffer discard = ByteBuffer.allocate(64);
+    private Peer[] peers;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Receiver receiver;
+    private int self;
+    private Thread ioThread;
+    private volatile boolean closed;
+
+    // addresses: every node's bus address, indexed by node number
+    public NioClusterBus(List<InetSocketAddress> addresses) {
+        this.addresses = addresses;
+    }
+
+    @Override
+    public void start(int self, Receiver receiver) throws IOException {
+        this.self = self;
+        this.receiver = receiver;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(addresses.get(self));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        peers = new Peer[addresses.size()];
+        for (int node = 0; node < peers.length; node++) {
+            if (node != self) peers[node] = new Peer(node);
+        }
+        System.out.println("Cluster bus for node " + self + " listening on " + addresses.get(self));
+        ioThread = new Thread(this::run, "cluster-bus-" + self);
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    @Override
+    public void send(int node, byte[] frame) {
+        Peer peer = peers[node];
+        if (frame.length > MAX_FRAME_BYTES) {
+            System.err.println("Dropping cluster frame of " + frame.length + " bytes for node " + node);
+            droppedFrames.increment();
+            return;
+        }
+        if (peer.queuedFrames.incrementAndGet() > MAX_QUEUED_FRAMES) {
+            peer.queuedFrames.decrementAndGet();
+            droppedFrames.increment();
+            return;
+        }
+        peer.queue.add(frame);
+        if (wakeupPending.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (selector == null) return;
+        selector.wakeup();
+        try {
+            ioThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                wakeupPending.set(false);
+                long timeoutMs = writeQueued(System.nanoTime());
+                selector.select(timeoutMs);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cluster bus for node " + self + " stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Error closing cluster bus selector: " + e.getMessage());
+            }
+        }
+    }
+
+    // Reconnects peers that are down once their retry is due and starts writes for peers with
+    // queued frames. Returns how long the selector may sleep (0 = until woken) before a reconnect is due.
+    private long writeQueued(long now) {
+        long timeoutMs = 0;
+        for (Peer peer : peers) {
+            if (peer == null) continue;
+            if (peer.channel == null) {
+                if (now >= peer.retryAtNanos) {
+                    connect(peer);
+                } else {
+                    long waitMs = Math.max(1, (peer.retryAtNanos - now) / 1_000_000);
+                    timeoutMs = timeoutMs == 0 ? waitMs : Math.min(timeoutMs, waitMs);
+                }
+            } else if (peer.connected && (!peer.queue.isEmpty() || peer.out.position() > 0)
+                    && (peer.key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+                flush(peer);
+            }
+        }
+        return timeoutMs;
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) return;
+        Object attachment = key.attachment();
+        if (attachment instanceof Peer) {
+            Peer peer = (Peer) attachment;
+            try {
+                if (key.isConnectable()) {
+                    if (((SocketChannel) key.channel()).finishConnect()) connected(peer);
+                    return;
+                }
+                // Peers never write back on our connection: a readable socket means it was closed
+                if (key.isReadable()) {
+                    discard.clear();
+                    if (((SocketChannel) key.channel()).read(discard) < 0) throw new IOException("closed by peer");
+                }
+                if (key.isValid() && key.isWritable()) flush(peer);
+            } catch (IOException e) {
+                failed(peer, e);
+            }
+            return;
+        }
+        try {
+            if (key.isAcceptable()) {
+                SocketChannel channel = server.accept();
+                if (channel == null) return;
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(READ_BUFFER_BYTES));
+            } else if (key.isReadable()) {
+                read(key);
+            }
+        } catch (IOException e) {
+            System.err.println("Cluster connection to node " + self + " closed: " + e.getMessage());
+            closeQuietly(key);
+        }
+    }
+
+    private void connect(Peer peer) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            peer.channel = channel;
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            peer.key = channel.register(selector, SelectionKey.OP_CONNECT, peer);
+            if (channel.connect(addresses.get(peer.node))) connected(peer);
+        } catch (IOException e) {
+            failed(peer, e);
+        }
+    }
+
+    private void connected(Peer peer) {
+        peer.connected = true;
+        peer.reconnectDelayNanos = MIN_RECONNECT_DELAY_NANOS;
+        peer.key.interestOps(SelectionKey.OP_READ);
+        if (peer.reportedDown) {
+            System.out.println("Cluster node " + peer.node + " reachable again");
+            peer.reportedDown = false;
+        }
+        receiver.onPeerConnected(peer.node);
+        flush(peer);
+    }
+
+    private void failed(Peer peer, IOException e) {
+        if (!peer.reportedDown) {
+            System.err.println("Cluster node " + peer.node + " unreachable: " + e.getMessage());
+            peer.reportedDown = true;
+        }
+        if (peer.key != null) closeQuietly(peer.key);
+        peer.key = null;
+        peer.channel = null;
+        peer.connected = false;
+        peer.retryAtNanos = System.nanoTime() + peer.reconnectDelayNanos;
+        peer.reconnectDelayNanos = Math.min(MAX_RECONNECT_DELAY_NANOS, peer.reconnectDelayNanos * 2);
+        // The rest of a half-written frame would corrupt the next connection's stream
+        droppedFrames.add(peer.framesInBuffer);
+        peer.framesInBuffer = 0;
+        peer.out.clear();
+    }
+
+    // Packs queued frames into the write buffer and writes until the socket pushes back
+    private void flush(Peer peer) {
+        try {
+            while (true) {
+                byte[] frame;
+                while ((frame = peer.queue.peek()) != null && peer.out.remaining() >= Integer.BYTES + frame.length) {
+                    peer.queue.poll();
+                    peer.queuedFrames.decrementAndGet();
+                    peer.out.putInt(frame.length).put(frame);
+                    peer.framesInBuffer++;
+                }
+                peer.out.flip();
+                peer.channel.write(peer.out);
+                boolean written = !peer.out.hasRemaining();
+                peer.out.compact();
+                if (!written) {
+                    peer.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                peer.framesInBuffer = 0;
+                if (peer.queue.isEmpty()) {
+                    peer.key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            failed(peer, e);
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        ByteBuffer in = (ByteBuffer) key.attachment();
+        if (((SocketChannel) key.channel()).read(in) < 0) {
+            closeQuietly(key);
+            return;
+        }
+        in.flip();
+        while (in.remaining() >= Integer.BYTES) {
+            int length = in.getInt(in.position());
+            if (length < 0 || length > MAX_FRAME_BYTES) throw new IOException("bad frame length " + length);
+            if (in.remaining() < Integer.BYTES + length) break;
+            in.position(in.position() + Integer.BYTES);
+            byte[] frame = new byte[length];
+            in.get(frame);
+            try {
+                receiver.onFrame(frame);
+            } catch (Exception e) {
+                System.err.println("Error handling cluster frame on node " + self + ": " + e.getMessage());
+            }
+        }
+        in.compact();
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            System.err.println("Error closing cluster connection: " + e.getMessage());
+        }
+    }
+
+    // Outbound side of one peer; everything but the queue is touched by the selector thread only
+    private static class Peer {
+        private final int node;
+        private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedFrames = new AtomicInteger();
+        private final ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        // Frames (partly) in out that the socket has not fully taken yet
+        private int framesInBuffer;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private boolean connected;
+        private boolean reportedDown;
+        private long retryAtNanos;
+        private long reconnectDelayNanos = MIN_RECONNECT_DELAY_NANOS;
+
+        private Peer(int node) {
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package life.hebo;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// RoomHistory kept in a direct ByteBuffer slab from a DirectSlabPool, so retained frames never
+// reach the old generation. The slab is cut into capacity slots of [int length][frame bytes];
+// frames that do not fit a slot stay on the heap. Each slot has a sequence word that doubles as
+// a seqlock: a writer sets it to WRITING, copies the frame in and publishes its sequence number;
+// a reader copies the frame out and keeps it only if the sequence is unchanged afterwards.
+public class OffHeapRoomHistory implements RoomHistory {
+
+    private static final long EMPTY = -2;
+    private static final long WRITING = -1;
+    private static final int OVERSIZED = -1;
+    private static final int CLOSED = Integer.MIN_VALUE;
+
+    private final int capacity;
+    private final int slotBytes;
+    private final DirectSlabPool pool;
+    private final ByteBuffer slab;
+    private final AtomicLongArray slotSeqs;
+    private final AtomicReferenceArray<byte[]> oversized;
+    private final AtomicLong nextSeq = new AtomicLong();
+    // Appends and replays in progress, with the CLOSED bit set once the room is gone;
+    // the slab goes back to the pool when both are true: closed and no one inside
+    private final AtomicInteger users = new AtomicInteger();
+
+    public OffHeapRoomHistory(int capacity, DirectSlabPool pool) {
+        this.capacity = capacity;
+        this.slotBytes = pool.getSlabBytes() / capacity;
+        this.pool = pool;
+        this.slab = pool.acquire();
+        this.slotSeqs = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slotSeqs.set(i, EMPTY);
+        }
+        this.oversized = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public void append(byte[] json) {
+        if (!enter()) return;
+        try {
+            long seq = nextSeq.getAndIncrement();
+            int slot = (int) (seq % capacity);
+            // Wait out a writer that lapped the ring onto this slot; give up if a newer one already landed
+            while (true) {
+                long current = slotSeqs.get(slot);
+                if (current > seq) return;
+                if (current != WRITING && slotSeqs.compareAndSet(slot, current, WRITING)) break;
+                Thread.onSpinWait();
+            }
+            int base = slot * slotBytes;
+            if (json.length <= slotBytes - 4) {
+                slab.putInt(base, json.length);
+                slab.put(base + 4, json);
+                oversized.set(slot, null);
+            } else {
+                slab.putInt(base, OVERSIZED);
+                oversized.set(slot, json);
+            }
+            slotSeqs.set(slot, seq);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public int forEach(Consumer<byte[]> visitor) {
+        if (!enter()) return 0;
+        try {
+            long end = nextSeq.get();
+            int visited = 0;
+            for (long seq = Math.max(0, end - capacity); seq < end; seq++) {
+                int slot = (int) (seq % capacity);
+                if (slotSeqs.get(slot) != seq) continue;
+                int base = slot * slotBytes;
+                int length = slab.getInt(base);
+                byte[] json;
+                if (length == OVERSIZED) {
+                    json = oversized.get(slot);
+                } else if (length >= 0 && length <= slotBytes - 4) {
+                    json = new byte[length];
+                    slab.get(base + 4, json);
+                } else {
+                    continue;
+                }
+                VarHandle.loadLoadFence();
+                // Overwritten while we copied: the bytes may be torn
+                if (json == null || slotSeqs.get(slot) != seq) continue;
+                visitor.accept(json);
+                visited++;
+            }
+            return visited;
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public void close() {
+        int current;
+        do {
+            current = users.get();
+            if (current < 0) return;
+        } while (!users.compareAndSet(current, current | CLOSED));
+        if (current == 0) release();
+    }
+
+    private boolean enter() {
+        int current;
+        do {
+            current = users.get();
+            if (current < 0) return false;
+        } while (!users.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private void exit() {
+        if (users.decrementAndGet() == CLOSED) release();
+    }
+
+    private void release() {
+        pool.release(slab);
+    }
+}
@@ -0,0 +1,8 @@
+package life.hebo;
+
+// What BoundedSendSession does with a frame that would push a session past its send buffer limit
+public enum OverflowPolicy {
+    DROP_OLDEST,    // evict queued frames, oldest first, until the new one fits
+    DROP_NEWEST,    // discard the new frame; what is already queued still goes out
+    DISCONNECT      // close the session as a slow consumer
+}
@@ -0,0 +1,61 @@
+package life.hebo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Per-user token bucket over the whole userId range, one long per user in a flat array.
+// Each bucket is stored as its "theoretical arrival time" (the GCRA form of a token bucket):
+// the time at which the bucket would be full again. A message is allowed if that time is no more
+// than burst intervals ahead of now, and pushes it one interval further. Checking and updating is
+// a single CAS on that long, so senders never lock and only contend when they share a userId.
+public class RateLimiter {
+
+    // Returned by tryAcquire when the message may go ahead
+    public static final long ALLOWED = 0;
+    public static final String ERROR_MESSAGE = "Rate limit exceeded";
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    // Index = userId; 0 means a full bucket
+    private final AtomicLongArray arrivalTimes = new AtomicLongArray(MessageValidator.MAX_USERID + 1);
+    // Times are kept relative to this so a fresh bucket (0) always reads as full
+    private final long originNanos = System.nanoTime();
+
+    public RateLimiter(double messagesPerSecond, int burst) {
+        this.emissionIntervalNanos = (long) (1e9 / messagesPerSecond);
+        this.burstToleranceNanos = emissionIntervalNanos * Math.max(0, burst - 1);
+    }
+
+    // userId is validated, so it is a decimal (maybe with a leading '+') in MIN_USERID..MAX_USERID.
+    // Returns ALLOWED, or how many milliseconds to wait before the next message would be allowed.
+    public long tryAcquire(String userId) {
+        return tryAcquire(parseUserId(userId), System.nanoTime() - originNanos);
+    }
+
+    long tryAcquire(int userId, long now) {
+        while (true) {
+            long arrival = arrivalTimes.get(userId);
+            long start = Math.max(arrival, now);
+            long ahead = start - now;
+            if (ahead > burstToleranceNanos) {
+                // Round up: retrying after a shorter wait would only be rejected again
+                return Math.max(1, (ahead - burstToleranceNanos + 999_999) / 1_000_000);
+            }
+            if (arrivalTimes.compareAndSet(userId, arrival, start + emissionIntervalNanos)) {
+                return ALLOWED;
+            }
+        }
+    }
+
+    public static String errorMessage(long retryAfterMs) {
+        return ERROR_MESSAGE + ", retry after " + retryAfterMs + " ms";
+    }
+
+    private static int parseUserId(String userId) {
+        int id = 0;
+        for (int i = 0; i < userId.length(); i++) {
+            char c = userId.charAt(i);
+            if (c >= '0' && c <= '9') id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+}
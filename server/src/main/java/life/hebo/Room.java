@@ -0,0 +1,137 @@
+package life.hebo;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Room {
+
+    private final int roomId;
+    // Copy-on-write: joins/leaves are rare, broadcasts iterate on every message
+    private final List<Member> members = new CopyOnWriteArrayList<>();
+    private final AtomicInteger binaryMembers = new AtomicInteger();
+    // Null when history replay is off
+    private final RoomHistory history;
+
+    public Room(int roomId) {
+        this(roomId, null);
+    }
+
+    public Room(int roomId, RoomHistory history) {
+        this.roomId = roomId;
+        this.history = history;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public RoomHistory getHistory() {
+        return history;
+    }
+
+    public void addMember(WebSocketSession session) {
+        addMember(session, false);
+    }
+
+    // binary: the member speaks BinaryProtocol instead of JSON
+    public void addMember(WebSocketSession session, boolean binary) {
+        members.add(new Member(session, binary));
+        if (binary) binaryMembers.incrementAndGet();
+    }
+
+    public void removeMember(WebSocketSession session) {
+        for (Member member : members) {
+            if (member.session == session && members.remove(member)) {
+                if (member.binary) binaryMembers.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    // Called by RoomRegistry once the last member has left
+    public void close() {
+        if (history != null) history.close();
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    // Bytes queued in members' send buffers that have not reached the socket yet
+    public long getSendBacklogBytes() {
+        long backlog = 0;
+        for (Member member : members) {
+            if (member.session instanceof BoundedSendSession) {
+                backlog += ((BoundedSendSession) member.session).getBufferedBytes();
+            }
+        }
+        return backlog;
+    }
+
+    // The most any one member has queued: the room's slowest consumer
+    public int getLargestSendBacklogBytes() {
+        int largest = 0;
+        for (Member member : members) {
+            if (member.session instanceof BoundedSendSession) {
+                largest = Math.max(largest, ((BoundedSendSession) member.session).getBufferedBytes());
+            }
+        }
+        return largest;
+    }
+
+    public boolean hasTextMembers() {
+        return members.size() > binaryMembers.get();
+    }
+
+    public boolean hasBinaryMembers() {
+        return binaryMembers.get() > 0;
+    }
+
+    public int broadcast(WebSocketSession sender, TextMessage frame) {
+        return broadcast(sender, frame, null);
+    }
+
+    // Sends the same pre-encoded frame to every member except the sender: textFrame to JSON
+    // members, binaryFrame to binary ones (either may be null if the room has no such members).
+    // Returns the number of members the frame was delivered to.
+    public int broadcast(WebSocketSession sender, TextMessage textFrame, byte[] binaryFrame) {
+        int delivered = 0;
+        for (Member member : members) {
+            WebSocketSession session = member.session;
+            if (session == sender || !session.isOpen()) continue;
+            try {
+                if (!member.binary) {
+                    if (textFrame == null) continue;
+                    session.sendMessage(textFrame);
+                } else {
+                    if (binaryFrame == null) continue;
+                    // Tomcat consumes the ByteBuffer it writes, so each member gets its own view
+                    session.sendMessage(new BinaryMessage(binaryFrame));
+                }
+                delivered++;
+            } catch (Exception e) {
+                System.err.println("Error broadcasting to session " + session.getId() + ": " + e.getMessage());
+            }
+        }
+        return delivered;
+    }
+
+    private static class Member {
+        private final WebSocketSession session;
+        private final boolean binary;
+
+        private Member(WebSocketSession session, boolean binary) {
+            this.session = session;
+            this.binary = binary;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package life.hebo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+
+// Fans a validated message out to the sender's room. Rooms may mix JSON and binary members;
+// each representation is encoded at most once per message, and only if someone needs it.
+public class RoomBroadcaster {
+
+    private final RoomRegistry roomRegistry;
+    private final ObjectMapper objectMapper;
+    private final ChatMessageDecoder decoder = new ChatMessageDecoder();
+
+    public RoomBroadcaster(RoomRegistry roomRegistry, ObjectMapper objectMapper) {
+        this.roomRegistry = roomRegistry;
+        this.objectMapper = objectMapper;
+    }
+
+    public int broadcast(WebSocketSession sender, int roomId, ChatMessage chatMessage) throws Exception {
+        return broadcast(sender, roomId, chatMessage, null);
+    }
+
+    // json: the message already encoded for this room (e.g. for the message log), or null.
+    // Returns the number of members the message was delivered to.
+    public int broadcast(WebSocketSession sender, int roomId, ChatMessage chatMessage, byte[] json) throws Exception {
+        Room room = roomRegistry.getRoom(roomId);
+        if (room == null) return 0;
+        RoomHistory history = room.getHistory();
+        if (room.size() <= 1 && history == null) return 0;
+
+        chatMessage.setRoomId(room.getRoomId());
+        if (history != null || room.hasTextMembers()) {
+            if (json == null) json = objectMapper.writeValueAsBytes(chatMessage);
+            if (history != null) history.append(json);
+        }
+        TextMessage textFrame = room.hasTextMembers() ? new TextMessage(json) : null;
+        byte[] binaryFrame = room.hasBinaryMembers() ? BinaryProtocol.encodeChat(chatMessage) : null;
+        return room.broadcast(sender, textFrame, binaryFrame);
+    }
+
+    // Delivers a message accepted on another cluster node to every member here. json is the
+    // message as that node encoded it; binary members get it re-encoded, as in replayHistory.
+    public int broadcastRemote(int roomId, byte[] json) throws Exception {
+        Room room = roomRegistry.getRoom(roomId);
+        if (room == null) return 0;
+        if (room.getHistory() != null) room.getHistory().append(json);
+        TextMessage textFrame = room.hasTextMembers() ? new TextMessage(json) : null;
+        byte[] binaryFrame = null;
+        if (room.hasBinaryMembers()) {
+            ChatMessage chatMessage = new ChatMessage();
+            decoder.decode(new String(json, StandardCharsets.UTF_8), chatMessage);
+            binaryFrame = BinaryProtocol.encodeChat(chatMessage);
+        }
+        return room.broadcast(null, textFrame, binaryFrame);
+    }
+
+    // Sends the room's retained messages to a session that just sent JOIN, oldest first.
+    // Binary sessions get each frame re-encoded. Returns the number of frames sent.
+    public int replayHistory(WebSocketSession session, int roomId, boolean binary) {
+        Room room = roomRegistry.getRoom(roomId);
+        if (room == null || room.getHistory() == null) return 0;
+        return room.getHistory().forEach(json -> {
+            try {
+                if (!binary) {
+                    session.sendMessage(new TextMessage(json));
+                } else {
+                    ChatMessage chatMessage = new ChatMessage();
+                    decoder.decode(new String(json, StandardCharsets.UTF_8), chatMessage);
+                    session.sendMessage(new BinaryMessage(BinaryProtocol.encodeChat(chatMessage)));
+                }
+            } catch (Exception e) {
+                System.err.println("Error replaying history to session " + session.getId() + ": " + e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,92 @@
+package life.hebo;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// In-process fan-out benchmark: one sender pushes messages through ChatWebSocketHandler
+// into rooms of 10 / 100 / 1,000 members backed by InMemoryWebSocketSession.
+public class RoomFanoutBenchmark {
+
+    private static final int[] ROOM_SIZES = {10, 100, 1000};
+    private static final int WARMUP_DELIVERIES = 2_000_000;
+    private static final int MEASURED_DELIVERIES = 5_000_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("\n── Room Fan-out Benchmark ───────────────────────────");
+        System.out.printf("  %8s %10s %16s %12s %12s %12s%n",
+                "members", "messages", "delivered/s", "p50 (us)", "p99 (us)", "max (us)");
+
+        for (int roomSize : ROOM_SIZES) {
+            run(roomSize);
+        }
+        System.out.println("─────────────────────────────────────────────────────");
+    }
+
+    private static void run(int roomSize) throws Exception {
+        int roomId = 1;
+        ChatWebSocketHandler handler = new ChatWebSocketHandler(new RoomRegistry());
+
+        List<InMemoryWebSocketSession> members = new ArrayList<>(roomSize);
+        for (int i = 0; i < roomSize; i++) {
+            InMemoryWebSocketSession session = new InMemoryWebSocketSession(roomId);
+            handler.afterConnectionEstablished(session);
+            members.add(session);
+        }
+        InMemoryWebSocketSession sender = members.get(0);
+        InMemoryWebSocketSession lastMember = members.get(roomSize - 1);
+
+        TextMessage frame = new TextMessage("{\"userId\":\"42\",\"username\":\"user42\","
+                + "\"message\":\"hello room\",\"timestamp\":\"" + Instant.now() + "\","
+                + "\"messageType\":\"TEXT\",\"roomId\":" + roomId + "}");
+
+        int fanout = roomSize - 1;
+        int warmupMessages = Math.max(1, WARMUP_DELIVERIES / fanout);
+        int measuredMessages = Math.max(1, MEASURED_DELIVERIES / fanout);
+
+        for (int i = 0; i < warmupMessages; i++) {
+            handler.handleMessage(sender, frame);
+        }
+
+        long deliveredBefore = totalDelivered(members, sender);
+        long[] latenciesNs = new long[measuredMessages];
+        long start = System.nanoTime();
+        for (int i = 0; i < measuredMessages; i++) {
+            long t0 = System.nanoTime();
+            handler.handleMessage(sender, frame);
+            // Members are served in join order, so the last member marks the end of the fan-out
+            latenciesNs[i] = lastMember.getLastDeliveryNanos() - t0;
+        }
+        long elapsedNs = System.nanoTime() - start;
+        long delivered = totalDelivered(members, sender) - deliveredBefore;
+
+        Arrays.sort(latenciesNs);
+        System.out.printf("  %8d %,10d %,16.0f %12.1f %12.1f %12.1f%n",
+                roomSize, measuredMessages,
+                delivered / (elapsedNs / 1e9),
+                percentile(latenciesNs, 50) / 1000.0,
+                percentile(latenciesNs, 99) / 1000.0,
+                latenciesNs[latenciesNs.length - 1] / 1000.0);
+
+        for (InMemoryWebSocketSession member : members) {
+            handler.afterConnectionClosed(member, CloseStatus.NORMAL);
+        }
+    }
+
+    private static long totalDelivered(List<InMemoryWebSocketSession> members, InMemoryWebSocketSession sender) {
+        long total = 0;
+        for (InMemoryWebSocketSession member : members) {
+            if (member != sender) total += member.getDeliveredFrames();
+        }
+        return total;
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, idx)];
+    }
+}
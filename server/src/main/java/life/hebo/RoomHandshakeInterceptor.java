@@ -0,0 +1,66 @@
+package life.hebo;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+public class RoomHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String ROOM_ID_ATTRIBUTE = "roomId";
+    // Optional ?ackBatch=N&ackFlushMicros=T: coalesce this connection's acks (see AckCoalescer)
+    public static final String ACK_BATCH_ATTRIBUTE = "ackBatch";
+    public static final String ACK_FLUSH_MICROS_ATTRIBUTE = "ackFlushMicros";
+    // Optional ?timings=true: per-stage server timings on this connection's acks (see ServerTimings)
+    public static final String TIMINGS_ATTRIBUTE = "timings";
+
+    // False for /chat-mux, whose sessions name a room in every frame and have no ROOM_ID_ATTRIBUTE
+    private final boolean roomInPath;
+
+    public RoomHandshakeInterceptor() {
+        this(true);
+    }
+
+    public RoomHandshakeInterceptor(boolean roomInPath) {
+        this.roomInPath = roomInPath;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        try {
+            if (roomInPath) {
+                // Resolve {roomId} from /chat/{roomId}
+                String path = request.getURI().getPath();
+                attributes.put(ROOM_ID_ATTRIBUTE, Integer.parseInt(path.substring(path.lastIndexOf('/') + 1)));
+            }
+
+            MultiValueMap<String, String> query = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams();
+            String ackBatch = query.getFirst(ACK_BATCH_ATTRIBUTE);
+            if (ackBatch != null) {
+                attributes.put(ACK_BATCH_ATTRIBUTE, Integer.parseInt(ackBatch));
+            }
+            String ackFlushMicros = query.getFirst(ACK_FLUSH_MICROS_ATTRIBUTE);
+            if (ackFlushMicros != null) {
+                attributes.put(ACK_FLUSH_MICROS_ATTRIBUTE, Long.parseLong(ackFlushMicros));
+            }
+            if (Boolean.parseBoolean(query.getFirst(TIMINGS_ATTRIBUTE))) {
+                attributes.put(TIMINGS_ATTRIBUTE, Boolean.TRUE);
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            return false;
+        }
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
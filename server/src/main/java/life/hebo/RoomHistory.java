@@ -0,0 +1,15 @@
+package life.hebo;
+
+import java.util.function.Consumer;
+
+// The last N messages of a room as encoded JSON frames, replayed to a session when it sends JOIN
+public interface RoomHistory {
+
+    void append(byte[] json);
+
+    // Visits the retained frames oldest first; returns how many were visited
+    int forEach(Consumer<byte[]> visitor);
+
+    // Called once the room is gone; frees whatever the history holds outside the heap
+    default void close() {}
+}
@@ -0,0 +1,96 @@
+package life.hebo;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RoomRegistry {
+
+    // Told when a room gets its first member on this node and when it loses its last one.
+    // Called inside the registry's per-room update, so calls for one room never overlap.
+    public interface Listener {
+        void roomOpened(int roomId);
+
+        void roomClosed(int roomId);
+    }
+
+    private final Map<Integer, Room> rooms = new ConcurrentHashMap<>();
+    // Messages each room keeps for JOIN replay (0 = none)
+    private final int historySize;
+    // Non-null: histories live off-heap in slabs from this pool
+    private final DirectSlabPool historySlabs;
+    private volatile Listener listener;
+
+    public RoomRegistry() {
+        this(0);
+    }
+
+    public RoomRegistry(int historySize) {
+        this(historySize, null);
+    }
+
+    public RoomRegistry(int historySize, DirectSlabPool historySlabs) {
+        this.historySize = historySize;
+        this.historySlabs = historySlabs;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Room join(int roomId, WebSocketSession session) {
+        return join(roomId, session, false);
+    }
+
+    public Room join(int roomId, WebSocketSession session, boolean binary) {
+        // compute() keeps join/leave atomic per room so a room is never dropped while being joined
+        return rooms.compute(roomId, (id, room) -> {
+            if (room == null) {
+                room = new Room(id, newHistory());
+                if (listener != null) listener.roomOpened(id);
+            }
+            room.addMember(session, binary);
+            return room;
+        });
+    }
+
+    public void leave(int roomId, WebSocketSession session) {
+        rooms.computeIfPresent(roomId, (id, room) -> {
+            room.removeMember(session);
+            if (!room.isEmpty()) return room;
+            room.close();
+            if (listener != null) listener.roomClosed(id);
+            return null;
+        });
+    }
+
+    // Runs action if the room has no members here, atomically with respect to joins and leaves
+    public void runIfAbsent(int roomId, Runnable action) {
+        rooms.compute(roomId, (id, room) -> {
+            if (room == null) action.run();
+            return room;
+        });
+    }
+
+    private RoomHistory newHistory() {
+        if (historySize <= 0) return null;
+        return historySlabs != null
+                ? new OffHeapRoomHistory(historySize, historySlabs)
+                : new HeapRoomHistory(historySize);
+    }
+
+    public Room getRoom(int roomId) {
+        return rooms.get(roomId);
+    }
+
+    // Live view for reporting; rooms may come and go while it is iterated
+    public Collection<Room> getRooms() {
+        return rooms.values();
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
+}
@@ -0,0 +1,171 @@
+package life.hebo;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Gives every room a single writer. Rooms are spread over a fixed set of lanes (roomId mod lanes),
+// each a bounded ring buffer drained by one thread; handler threads only validate and submit.
+// A lane runs its room's tasks one at a time in submission order and hands each the room's
+// sequence counter, so accepted messages get 1, 2, 3, ... per room and are stored, acked and
+// broadcast in that order. Counters live on the lane thread and are never shared, so stamping,
+// persistence and fan-out need no lock of their own.
+//
+// The ring is a bounded multi-producer / single-consumer queue: producers claim a slot with one
+// CAS on the tail and publish it through the slot's sequence number; the consumer never writes
+// the tail. An idle lane spins briefly, then parks until a producer wakes it.
+public class RoomSequencer implements Closeable {
+
+    public static final String BUSY_MESSAGE = "Server busy";
+    // Spinning only helps if a producer can run meanwhile; on a single core it just delays it
+    private static final int SPINS_BEFORE_PARK = Runtime.getRuntime().availableProcessors() > 1 ? 256 : 0;
+
+    // Work for one room, run on its lane thread. Exceptions are logged and the lane carries on.
+    public interface Task {
+        void run(Sequence sequence) throws Exception;
+    }
+
+    // A room's counter. Only the owning lane thread touches it.
+    public static final class Sequence {
+        private long last;
+
+        // The number the room's next message gets; it is only used up by advance(), so a message
+        // that fails to be stored does not leave a gap
+        public long next() {
+            return last + 1;
+        }
+
+        public void advance() {
+            last++;
+        }
+    }
+
+    private final Lane[] lanes;
+
+    // queueCapacity is per lane and rounded up to a power of two
+    public RoomSequencer(int laneCount, int queueCapacity) {
+        lanes = new Lane[laneCount];
+        int capacity = Integer.highestOneBit(Math.max(2, queueCapacity) * 2 - 1);
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i, capacity);
+            lanes[i].thread.start();
+        }
+    }
+
+    // Queues task on the room's lane. Returns false if that lane's queue is full (or the
+    // sequencer is closed); the caller should turn the message away with BUSY_MESSAGE.
+    public boolean submit(int roomId, Task task) {
+        return lanes[Math.floorMod(roomId, lanes.length)].offer(roomId, task);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    // Tasks queued on all lanes and not started yet
+    public long getBacklog() {
+        long backlog = 0;
+        for (Lane lane : lanes) {
+            backlog += lane.size();
+        }
+        return backlog;
+    }
+
+    @Override
+    public void close() {
+        for (Lane lane : lanes) {
+            lane.closed = true;
+            LockSupport.unpark(lane.thread);
+        }
+    }
+
+    private static final class Lane implements Runnable {
+        private final int mask;
+        private final int[] roomIds;
+        private final Task[] tasks;
+        // Slot i holds position p once published (p + 1) and is free for position p (p)
+        private final AtomicLongArray published;
+        private final AtomicLong tail = new AtomicLong();
+        // Written by the lane thread only; getBacklog reads it without synchronisation
+        private long head;
+        private final Map<Integer, Sequence> sequences = new HashMap<>();
+        private final Thread thread;
+        private volatile boolean parked;
+        private volatile boolean closed;
+
+        private Lane(int index, int capacity) {
+            mask = capacity - 1;
+            roomIds = new int[capacity];
+            tasks = new Task[capacity];
+            published = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                published.set(i, i);
+            }
+            thread = new Thread(this, "room-sequencer-" + index);
+            thread.setDaemon(true);
+        }
+
+        private boolean offer(int roomId, Task task) {
+            if (closed) return false;
+            long position;
+            int slot;
+            while (true) {
+                position = tail.get();
+                slot = (int) position & mask;
+                long state = published.get(slot);
+                if (state == position) {
+                    if (tail.compareAndSet(position, position + 1)) break;
+                } else if (state < position) {
+                    // The consumer has not freed this slot from the previous lap yet: full
+                    return false;
+                }
+                // else another producer claimed position first; read the tail again
+            }
+            roomIds[slot] = roomId;
+            tasks[slot] = task;
+            // A volatile write, so it cannot be reordered with the read of parked below
+            published.set(slot, position + 1);
+            if (parked) LockSupport.unpark(thread);
+            return true;
+        }
+
+        private long size() {
+            return Math.max(0, tail.get() - head);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (!closed) {
+                int slot = (int) head & mask;
+                if (published.get(slot) != head + 1) {
+                    if (idle++ < SPINS_BEFORE_PARK) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    parked = true;
+                    // Re-check after announcing the park, so a producer that missed the flag
+                    // has already published what we are about to wait for
+                    if (published.get(slot) != head + 1) LockSupport.park(this);
+                    parked = false;
+                    idle = 0;
+                    continue;
+                }
+                int roomId = roomIds[slot];
+                Task task = tasks[slot];
+                tasks[slot] = null;
+                published.set(slot, head + mask + 1);
+                head++;
+                idle = 0;
+                try {
+                    task.run(sequences.computeIfAbsent(roomId, id -> new Sequence()));
+                } catch (Exception e) {
+                    System.err.println("Error in sequencer task for room " + roomId + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
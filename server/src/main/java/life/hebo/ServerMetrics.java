@@ -0,0 +1,184 @@
+package life.hebo;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Server-wide counters behind /metrics. Everything the handlers touch per message is a LongAdder
+// or a ConcurrentLatencyHistogram, so recording never takes a lock; rates are worked out when
+// someone scrapes, not on the hot path.
+public class ServerMetrics {
+
+    // Rates are recomputed at most this often, so back-to-back scrapes do not report noise
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    private final LongAdder inbound = new LongAdder();
+    private final LongAdder outbound = new LongAdder();
+    // Frames discarded by a DROP_OLDEST / DROP_NEWEST overflow policy
+    private final LongAdder droppedFrames = new LongAdder();
+    // Sessions closed for a full send buffer (DISCONNECT) or a stalled write
+    private final LongAdder slowConsumerDisconnects = new LongAdder();
+    // Messages that were stored and acked but then failed to reach the room (replay, fan-out or cluster)
+    private final LongAdder broadcastFailures = new LongAdder();
+    // Messages looked up in the dedup window, and how many of them were retries already accepted
+    private final LongAdder dedupChecks = new LongAdder();
+    private final LongAdder dedupHits = new LongAdder();
+    private volatile long dedupMemoryBytes;
+    // Frames exchanged with other cluster nodes, and frames the cluster bus had to give up on
+    private final LongAdder clusterFramesSent = new LongAdder();
+    private final LongAdder clusterFramesReceived = new LongAdder();
+    private volatile LongSupplier clusterDroppedFrames = () -> 0;
+    // Accepted messages queued on RoomSequencer lanes, not yet stored and broadcast
+    private volatile LongSupplier sequencerBacklog = () -> 0;
+    // Keyed by the field the error names (userId, username, ...); a handful of keys at most
+    private final Map<String, LongAdder> validationFailures = new ConcurrentHashMap<>();
+    // Parse + validate + ack + broadcast for one inbound message
+    private final ConcurrentLatencyHistogram handlerTime = new ConcurrentLatencyHistogram();
+
+    private long rateSampleNanos = System.nanoTime();
+    private long rateSampleInbound;
+    private long rateSampleOutbound;
+    private double inboundRate;
+    private double outboundRate;
+
+    public void recordInbound() {
+        inbound.increment();
+    }
+
+    public void recordOutbound(int frames) {
+        if (frames > 0) outbound.add(frames);
+    }
+
+    public void recordDroppedFrames(int frames) {
+        droppedFrames.add(frames);
+    }
+
+    public void recordSlowConsumerDisconnect() {
+        slowConsumerDisconnects.increment();
+    }
+
+    public void recordBroadcastFailure() {
+        broadcastFailures.increment();
+    }
+
+    public void recordDedupCheck(boolean duplicate) {
+        dedupChecks.increment();
+        if (duplicate) dedupHits.increment();
+    }
+
+    public void setDedupMemoryBytes(long bytes) {
+        this.dedupMemoryBytes = bytes;
+    }
+
+    public void recordClusterFrameSent() {
+        clusterFramesSent.increment();
+    }
+
+    public void recordClusterFrameReceived() {
+        clusterFramesReceived.increment();
+    }
+
+    public void setClusterDroppedFrames(LongSupplier droppedFrames) {
+        this.clusterDroppedFrames = droppedFrames;
+    }
+
+    public void setSequencerBacklog(LongSupplier backlog) {
+        this.sequencerBacklog = backlog;
+    }
+
+    public void recordValidationFailure(String errorMessage) {
+        validationFailures.computeIfAbsent(reasonOf(errorMessage), k -> new LongAdder()).increment();
+    }
+
+    public void recordHandlerTime(long nanos) {
+        handlerTime.record(nanos);
+    }
+
+    public long getInbound() {
+        return inbound.sum();
+    }
+
+    public long getOutbound() {
+        return outbound.sum();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    public long getSlowConsumerDisconnects() {
+        return slowConsumerDisconnects.sum();
+    }
+
+    public long getBroadcastFailures() {
+        return broadcastFailures.sum();
+    }
+
+    public long getDedupChecks() {
+        return dedupChecks.sum();
+    }
+
+    public long getDedupHits() {
+        return dedupHits.sum();
+    }
+
+    public long getDedupMemoryBytes() {
+        return dedupMemoryBytes;
+    }
+
+    public long getClusterFramesSent() {
+        return clusterFramesSent.sum();
+    }
+
+    public long getClusterFramesReceived() {
+        return clusterFramesReceived.sum();
+    }
+
+    public long getClusterDroppedFrames() {
+        return clusterDroppedFrames.getAsLong();
+    }
+
+    public long getSequencerBacklog() {
+        return sequencerBacklog.getAsLong();
+    }
+
+    public Map<String, Long> getValidationFailures() {
+        Map<String, Long> failures = new TreeMap<>();
+        validationFailures.forEach((reason, count) -> failures.put(reason, count.sum()));
+        return failures;
+    }
+
+    public ConcurrentLatencyHistogram.Snapshot getHandlerTime() {
+        return handlerTime.snapshot();
+    }
+
+    // Messages per second since the previous sample; samples are at least RATE_WINDOW_NANOS apart
+    public synchronized double[] getRates() {
+        long now = System.nanoTime();
+        long elapsed = now - rateSampleNanos;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            long in = inbound.sum();
+            long out = outbound.sum();
+            inboundRate = (in - rateSampleInbound) * 1e9 / elapsed;
+            outboundRate = (out - rateSampleOutbound) * 1e9 / elapsed;
+            rateSampleNanos = now;
+            rateSampleInbound = in;
+            rateSampleOutbound = out;
+        }
+        return new double[]{inboundRate, outboundRate};
+    }
+
+    // "userId must be between ..." -> "userId"; the malformed-frame error becomes "format"
+    static String reasonOf(String errorMessage) {
+        if (errorMessage == null || errorMessage.isEmpty()) return "unknown";
+        if (errorMessage.startsWith("Invalid message format")) return "format";
+        if (errorMessage.startsWith("Message could not be stored")) return "storage";
+        if (errorMessage.startsWith(RateLimiter.ERROR_MESSAGE)) return "rateLimit";
+        if (errorMessage.startsWith(RoomSequencer.BUSY_MESSAGE)) return "busy";
+        if (errorMessage.startsWith(MessageStore.IN_PROGRESS_MESSAGE)) return "inProgress";
+        int space = errorMessage.indexOf(' ');
+        return space < 0 ? errorMessage : errorMessage.substring(0, space);
+    }
+}
@@ -1,5 +1,6 @@
 package life.hebo;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -12,4 +13,26 @@ public class ServerResponse {
     private String status;
     private String serverTimestamp;
     private String message;
+    // Set on rate-limited ERRORs: how long the sender should wait before its next message
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long retryAfterMs;
+    // Set on SUCCESS acks to multiplexed connections, which send to many rooms over one session
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private int roomId;
+    // Set on SUCCESS acks from a RoomSequencer: the sequence number the message was given
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private long sequence;
+    // Set on SUCCESS acks to connections that asked for them (?timings=true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ServerTimings timings;
+    // Kept last: clients find the messageId by scanning the frame from the end
+    private long messageId;
+
+    public ServerResponse(String status, String serverTimestamp, String message, long messageId) {
+        this(status, serverTimestamp, message, null, 0, 0L, null, messageId);
+    }
+
+    public ServerResponse(String status, String serverTimestamp, String message, Long retryAfterMs, long messageId) {
+        this(status, serverTimestamp, message, retryAfterMs, 0, 0L, null, messageId);
+    }
 }
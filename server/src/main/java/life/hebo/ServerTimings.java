@@ -0,0 +1,21 @@
+package life.hebo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Where one message's server time went, in microseconds, for connections that ask for it with
+// ?timings=true. serverMicros runs from the frame's arrival until its ack was built; the rest of
+// the client's round trip is the network, the send queue and the client itself.
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ServerTimings {
+
+    private long decodeMicros;
+    private long checksMicros;
+    private long queueMicros;
+    private long persistMicros;
+    private long timestampMicros;
+    private long serverMicros;
+}
@@ -0,0 +1,137 @@
+package life.hebo;
+
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// In-process slow-consumer check: one sender floods a 100-member room through ChatWebSocketHandler
+// while one member near the front of the room reads a frame per millisecond. Fan-out latency is
+// measured to the last (fast) member, so any time spent waiting on the slow reader shows up in it.
+// The "blocking" row is a slow reader without an async send API, i.e. the old behaviour.
+public class SlowConsumerBenchmark {
+
+    private static final int ROOM_SIZE = 100;
+    private static final int SLOW_MEMBER_POSITION = 5;
+    private static final long READ_DELAY_NANOS = 1_000_000;
+    private static final int SEND_BUFFER_BYTES = 64 * 1024;
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+    private static final long MEASURE_NANOS = 5_000_000_000L;
+    private static final int MAX_SAMPLES = 1 << 22;
+
+    private static final ScheduledExecutorService READER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "slow-reader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("\n── Slow Consumer Benchmark ──────────────────────────");
+        System.out.printf("  %-24s %10s %12s %10s %10s %12s %10s %10s %8s%n", "scenario", "messages", "msg/s",
+                "p50 (us)", "p99 (us)", "max (us)", "slow got", "dropped", "closed");
+
+        // Unreported pass so the first row is not the one that pays for JIT compilation
+        run(null, null, OverflowPolicy.DISCONNECT);
+        run("no slow reader", null, OverflowPolicy.DISCONNECT);
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            run("slow reader, " + policy, new AsyncSlowReader(1), policy);
+        }
+        run("slow reader, blocking", new BlockingSlowReader(1), OverflowPolicy.DISCONNECT);
+        System.out.println("─────────────────────────────────────────────────────");
+    }
+
+    private static void run(String scenario, InMemoryWebSocketSession slowReader, OverflowPolicy policy)
+            throws Exception {
+        int roomId = 1;
+        ServerMetrics metrics = new ServerMetrics();
+        ChatWebSocketHandler handler = new ChatWebSocketHandler(new RoomRegistry());
+        handler.setMetrics(metrics);
+        handler.setSendLimits(ChatWebSocketHandler.SEND_TIME_LIMIT_MS, SEND_BUFFER_BYTES, policy);
+
+        List<InMemoryWebSocketSession> members = new ArrayList<>(ROOM_SIZE);
+        for (int i = 0; i < ROOM_SIZE; i++) {
+            InMemoryWebSocketSession session = i == SLOW_MEMBER_POSITION && slowReader != null
+                    ? slowReader : new InMemoryWebSocketSession(roomId);
+            handler.afterConnectionEstablished(session);
+            members.add(session);
+        }
+        InMemoryWebSocketSession sender = members.get(0);
+        InMemoryWebSocketSession lastMember = members.get(ROOM_SIZE - 1);
+
+        TextMessage frame = new TextMessage("{\"userId\":\"42\",\"username\":\"user42\","
+                + "\"message\":\"hello room, this frame is here to fill a slow reader's buffer\","
+                + "\"timestamp\":\"" + Instant.now() + "\",\"messageType\":\"TEXT\",\"roomId\":" + roomId + "}");
+
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < warmupEnd) {
+            handler.handleMessage(sender, frame);
+        }
+
+        long[] latenciesNs = new long[MAX_SAMPLES];
+        int messages = 0;
+        long start = System.nanoTime();
+        long end = start + MEASURE_NANOS;
+        long now = start;
+        while (now < end && messages < MAX_SAMPLES) {
+            handler.handleMessage(sender, frame);
+            latenciesNs[messages++] = lastMember.getLastDeliveryNanos() - now;
+            now = System.nanoTime();
+        }
+        long elapsedNs = now - start;
+        if (scenario == null) return;
+
+        long[] sorted = Arrays.copyOf(latenciesNs, messages);
+        Arrays.sort(sorted);
+        System.out.printf("  %-24s %,10d %,12.0f %10.1f %10.1f %,12.1f %10s %10s %8s%n",
+                scenario, messages, messages / (elapsedNs / 1e9),
+                percentile(sorted, 50) / 1000.0, percentile(sorted, 99) / 1000.0,
+                sorted[sorted.length - 1] / 1000.0,
+                slowReader == null ? "-" : String.format("%,d", slowReader.getDeliveredFrames()),
+                slowReader == null ? "-" : String.format("%,d", metrics.getDroppedFrames()),
+                slowReader == null ? "-" : String.valueOf(!slowReader.isOpen()));
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, idx)];
+    }
+
+    // Reads one frame per READ_DELAY_NANOS through an async send API, like a client on a slow link
+    private static class AsyncSlowReader extends InMemoryWebSocketSession implements BoundedSendSession.AsyncSender {
+
+        AsyncSlowReader(int roomId) {
+            super(roomId);
+        }
+
+        @Override
+        public void sendAsync(WebSocketMessage<?> message, SendHandler onSent) {
+            READER.schedule(() -> {
+                sendMessage(message);
+                onSent.onResult(new SendResult());
+            }, READ_DELAY_NANOS, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Same reading speed, but every send blocks its caller until the frame is read
+    private static class BlockingSlowReader extends InMemoryWebSocketSession {
+
+        BlockingSlowReader(int roomId) {
+            super(roomId);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            LockSupport.parkNanos(READ_DELAY_NANOS);
+            super.sendMessage(message);
+        }
+    }
+}
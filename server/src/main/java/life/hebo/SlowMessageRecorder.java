@@ -0,0 +1,92 @@
+package life.hebo;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Keeps a bounded continuous flight recording (the JDK's default events, such as GC pauses,
+// safepoints, lock contention and socket I/O, plus every HandlerStageEvent) and dumps it to a file
+// when a message spends longer than the threshold in the handler, so a p99 spike can be examined
+// afterwards in JDK Mission Control or with `jfr print`. At most one dump per cooldown: a spike is
+// usually many slow messages in a row, and the first dump already holds the recent past.
+public class SlowMessageRecorder implements Closeable {
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final Recording recording;
+    private final Path dumpDir;
+    private final long thresholdNanos;
+    private final long cooldownNanos;
+    // Earliest System.nanoTime() of the next dump
+    private final AtomicLong nextDumpNanos = new AtomicLong(System.nanoTime());
+    private final LongAdder dumps = new LongAdder();
+    // Dumps copy the recording to disk, which must not hold up the thread that saw the slow message
+    private final ExecutorService dumper = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "jfr-dump");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public SlowMessageRecorder(Path dumpDir, long thresholdMs, Duration maxAge, long maxBytes, long cooldownMs)
+            throws IOException {
+        this.dumpDir = dumpDir;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(cooldownMs);
+        Files.createDirectories(dumpDir);
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+        } catch (ParseException e) {
+            throw new IOException("Could not read the default JFR settings", e);
+        }
+        recording.setName("chat-slow-messages");
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxBytes);
+        recording.enable(HandlerStageEvent.class).withThreshold(Duration.ZERO);
+        recording.start();
+    }
+
+    // Called with each accepted message's time in the handler
+    public void record(long handlerNanos) {
+        if (handlerNanos < thresholdNanos) return;
+        long now = System.nanoTime();
+        long next = nextDumpNanos.get();
+        if (now - next < 0 || !nextDumpNanos.compareAndSet(next, now + cooldownNanos)) return;
+        dumper.execute(() -> dump(handlerNanos));
+    }
+
+    public long getDumpCount() {
+        return dumps.sum();
+    }
+
+    private void dump(long handlerNanos) {
+        Path file = dumpDir.resolve("slow-message-" + FILE_TIME.format(LocalDateTime.now()) + ".jfr");
+        try {
+            recording.dump(file);
+            dumps.increment();
+            System.out.printf("A message took %.1f ms in the handler; flight recording dumped to %s%n",
+                    handlerNanos / 1e6, file.toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("Could not dump the flight recording: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        dumper.shutdownNow();
+        recording.close();
+    }
+}
@@ -0,0 +1,99 @@
+package life.hebo;
+
+import jdk.jfr.EventType;
+
+// Times one message through ChatWebSocketHandler, stage by stage. Each stage ends where the next
+// one starts, so together they cover the message's whole time in the handler. Every stage is
+// committed as a HandlerStageEvent while a flight recording is running, and the stages up to the
+// ack are returned to the client (ServerTimings) if its connection asked for them.
+// Used by one thread at a time: the handler thread, then the room's lane thread with a sequencer.
+final class StageTimings {
+
+    enum Stage {
+        // JSON parsing and MessageValidator, one pass in ChatMessageDecoder
+        DECODE,
+        // Multiplexed room check, dedup window and rate limit
+        CHECKS,
+        // Waiting for the room's RoomSequencer lane (0 without a sequencer)
+        QUEUE,
+        // Sequence number, message log append and encoding for the log and cluster
+        PERSIST,
+        // Instant.now().toString() for the ack's serverTimestamp
+        TIMESTAMP,
+        // Serialising the ack and handing it to the session's send queue
+        ACK,
+        // History replay on JOIN, room broadcast and cluster publish
+        BROADCAST
+    }
+
+    private static final EventType STAGE_EVENT = EventType.getEventType(HandlerStageEvent.class);
+    // For messages nobody is timing: every call returns at once
+    static final StageTimings OFF = new StageTimings(false);
+
+    private final boolean report;
+    private final long startNanos;
+    private final long[] stageNanos = new long[Stage.values().length];
+    private long stageStart;
+    // The running stage's event, null while no recording has HandlerStageEvent enabled
+    private HandlerStageEvent event;
+    private int roomId;
+    private long messageId;
+
+    private StageTimings(boolean report) {
+        this.report = report;
+        this.startNanos = System.nanoTime();
+        this.stageStart = startNanos;
+        this.event = beginEvent();
+    }
+
+    // report: the client asked for ServerTimings; always: time even without a recording or report
+    // (for SlowMessageRecorder)
+    static StageTimings start(boolean report, boolean always) {
+        return report || always || STAGE_EVENT.isEnabled() ? new StageTimings(report) : OFF;
+    }
+
+    void identify(ChatMessage chatMessage) {
+        roomId = chatMessage.getRoomId();
+        messageId = chatMessage.getMessageId();
+    }
+
+    void end(Stage stage) {
+        if (this == OFF) return;
+        long now = System.nanoTime();
+        stageNanos[stage.ordinal()] += now - stageStart;
+        stageStart = now;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.name();
+                event.roomId = roomId;
+                event.messageId = messageId;
+                event.commit();
+            }
+        }
+        event = beginEvent();
+    }
+
+    // The stages so far, or null if the client did not ask for them
+    ServerTimings report() {
+        if (!report) return null;
+        return new ServerTimings(micros(Stage.DECODE), micros(Stage.CHECKS), micros(Stage.QUEUE),
+                micros(Stage.PERSIST), micros(Stage.TIMESTAMP), (System.nanoTime() - startNanos) / 1000);
+    }
+
+    // Time since the frame arrived (0 for OFF)
+    long elapsedNanos() {
+        return this == OFF ? 0 : System.nanoTime() - startNanos;
+    }
+
+    private long micros(Stage stage) {
+        return stageNanos[stage.ordinal()] / 1000;
+    }
+
+    private static HandlerStageEvent beginEvent() {
+        if (!STAGE_EVENT.isEnabled()) return null;
+        HandlerStageEvent event = new HandlerStageEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -1,23 +1,232 @@
 package life.hebo;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
+    @Value("${chat.ack.coalesce.max-acks:0}")
+    private int ackCoalesceMaxAcks;
+
+    @Value("${chat.ack.coalesce.flush-micros:200}")
+    private long ackCoalesceFlushMicros;
+
+    @Value("${chat.send.time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${chat.send.buffer-bytes:524288}")
+    private int sendBufferBytes;
+
+    @Value("${chat.send.overflow:DISCONNECT}")
+    private OverflowPolicy sendOverflow;
+
+    @Value("${chat.ratelimit.messages-per-second:0}")
+    private double rateLimitPerSecond;
+
+    @Value("${chat.ratelimit.burst:20}")
+    private int rateLimitBurst;
+
+    @Value("${chat.dedup.enabled:false}")
+    private boolean dedupEnabled;
+
+    @Value("${chat.dedup.capacity:262144}")
+    private int dedupCapacity;
+
+    @Value("${chat.dedup.window-ms:30000}")
+    private long dedupWindowMs;
+
+    @Value("${chat.cluster.nodes:}")
+    private String clusterNodes;
+
+    @Value("${chat.cluster.self:0}")
+    private int clusterSelf;
+
+    @Value("${chat.cluster.virtual-nodes:128}")
+    private int clusterVirtualNodes;
+
+    @Value("${chat.sequencer.lanes:0}")
+    private int sequencerLanes;
+
+    @Value("${chat.sequencer.queue-capacity:65536}")
+    private int sequencerQueueCapacity;
+
+    @Value("${chat.jfr.enabled:false}")
+    private boolean jfrEnabled;
+
+    @Value("${chat.jfr.threshold-ms:100}")
+    private long jfrThresholdMs;
+
+    @Value("${chat.jfr.max-age-seconds:120}")
+    private long jfrMaxAgeSeconds;
+
+    @Value("${chat.jfr.max-size-mb:64}")
+    private long jfrMaxSizeMb;
+
+    @Value("${chat.jfr.cooldown-seconds:60}")
+    private long jfrCooldownSeconds;
+
+    @Value("${chat.jfr.dump-dir:data/jfr}")
+    private String jfrDumpDir;
+
+    @Value("${chat.history.size:0}")
+    private int historySize;
+
+    @Value("${chat.history.off-heap:false}")
+    private boolean historyOffHeap;
+
+    @Value("${chat.history.slot-bytes:512}")
+    private int historySlotBytes;
+
+    @Value("${chat.log.enabled:false}")
+    private boolean logEnabled;
+
+    @Value("${chat.log.dir:data/rooms}")
+    private String logDir;
+
+    @Value("${chat.log.segment-bytes:16777216}")
+    private int logSegmentBytes;
+
+    @Value("${chat.log.fsync:INTERVAL}")
+    private FsyncPolicy logFsync;
+
+    @Value("${chat.log.fsync-interval-ms:100}")
+    private long logFsyncIntervalMs;
+
     @Override
     // TODO: Set Origin configuration if needed
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(chatWebSocketHandler(), "/chat/{roomId}");
+        try {
+            registry.addHandler(chatWebSocketHandler(), "/chat/{roomId}")
+                    .addInterceptors(new RoomHandshakeInterceptor());
+            // One session, many rooms: JOIN/LEAVE frames subscribe, every frame names its roomId
+            registry.addHandler(chatWebSocketHandler(), "/chat-mux")
+                    .addInterceptors(new RoomHandshakeInterceptor(false));
+            registry.addHandler(binaryChatWebSocketHandler(), "/chat-bin/{roomId}")
+                    .addInterceptors(new RoomHandshakeInterceptor());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open the message log", e);
+        }
+    }
+
+    @Bean
+    public RoomRegistry roomRegistry() {
+        if (historyOffHeap && historySize > 0) {
+            return new RoomRegistry(historySize, new DirectSlabPool(historySize * historySlotBytes));
+        }
+        return new RoomRegistry(historySize);
+    }
+
+    // Null when chat.ratelimit.messages-per-second is 0; shared so a user's budget spans both endpoints
+    @Bean
+    public RateLimiter rateLimiter() {
+        return rateLimitPerSecond > 0 ? new RateLimiter(rateLimitPerSecond, rateLimitBurst) : null;
+    }
+
+    // Null when chat.dedup.enabled is false; shared so a retry is recognised on either endpoint
+    @Bean
+    public DedupWindow dedupWindow() {
+        return dedupEnabled ? new DedupWindow(dedupCapacity, dedupWindowMs) : null;
+    }
+
+    @Bean
+    public ServerMetrics serverMetrics() {
+        ServerMetrics metrics = new ServerMetrics();
+        if (dedupEnabled) metrics.setDedupMemoryBytes(dedupWindow().getMemoryBytes());
+        return metrics;
+    }
+
+    // Null when chat.log.enabled is false; Spring calls close() on shutdown
+    @Bean(destroyMethod = "close")
+    public MessageLog messageLog() throws IOException {
+        if (!logEnabled) return null;
+        System.out.println("Message log in " + Path.of(logDir).toAbsolutePath() + ", fsync " + logFsync);
+        return new MessageLog(Path.of(logDir), logSegmentBytes, logFsync, logFsyncIntervalMs);
+    }
+
+    // Dedup window and message log in one place, so both endpoints claim and store messages alike
+    @Bean
+    public MessageStore messageStore() throws IOException {
+        return new MessageStore(dedupWindow(), messageLog(), serverMetrics());
+    }
+
+    // Null when chat.cluster.nodes is empty (a single server); Spring calls close() on shutdown
+    @Bean(destroyMethod = "close")
+    public ClusterNode clusterNode() throws IOException {
+        if (clusterNodes.isBlank()) return null;
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String node : clusterNodes.split(",")) {
+            String address = node.trim();
+            int colon = address.lastIndexOf(':');
+            addresses.add(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+        }
+        ClusterNode clusterNode = new ClusterNode(clusterSelf, new ClusterRing(addresses.size(), clusterVirtualNodes),
+                new NioClusterBus(addresses), roomRegistry());
+        clusterNode.setMetrics(serverMetrics());
+        clusterNode.start();
+        return clusterNode;
+    }
+
+    // Null when chat.sequencer.lanes is 0; shared so a room has one order across both endpoints.
+    // Not available in cluster mode: each node would number a room's messages on its own, and
+    // messages relayed from other nodes would keep their origin's numbers, so there is no one order.
+    @Bean(destroyMethod = "close")
+    public RoomSequencer roomSequencer() {
+        if (sequencerLanes <= 0) return null;
+        if (!clusterNodes.isBlank()) {
+            throw new IllegalStateException("chat.sequencer.lanes cannot be used with chat.cluster.nodes");
+        }
+        RoomSequencer sequencer = new RoomSequencer(sequencerLanes, sequencerQueueCapacity);
+        serverMetrics().setSequencerBacklog(sequencer::getBacklog);
+        System.out.println("Room sequencer with " + sequencer.getLaneCount() + " lanes");
+        return sequencer;
+    }
+
+    // Null when chat.jfr.enabled is false; Spring calls close() on shutdown
+    @Bean(destroyMethod = "close")
+    public SlowMessageRecorder slowMessageRecorder() throws IOException {
+        if (!jfrEnabled) return null;
+        System.out.println("Flight recording kept for " + jfrMaxAgeSeconds + " s, dumped to "
+                + Path.of(jfrDumpDir).toAbsolutePath() + " after a message slower than " + jfrThresholdMs + " ms");
+        return new SlowMessageRecorder(Path.of(jfrDumpDir), jfrThresholdMs, Duration.ofSeconds(jfrMaxAgeSeconds),
+                jfrMaxSizeMb * 1024 * 1024, jfrCooldownSeconds * 1000);
+    }
+
+    @Bean
+    public ChatWebSocketHandler chatWebSocketHandler() throws IOException {
+        ChatWebSocketHandler handler = new ChatWebSocketHandler(roomRegistry());
+        handler.setAckCoalescing(ackCoalesceMaxAcks, ackCoalesceFlushMicros);
+        handler.setSendLimits(sendTimeLimitMs, sendBufferBytes, sendOverflow);
+        handler.setRateLimiter(rateLimiter());
+        handler.setMessageStore(messageStore());
+        handler.setClusterNode(clusterNode());
+        handler.setSequencer(roomSequencer());
+        handler.setSlowMessageRecorder(slowMessageRecorder());
+        handler.setMetrics(serverMetrics());
+        return handler;
     }
 
     @Bean
-    public ChatWebSocketHandler chatWebSocketHandler() {
-        return new ChatWebSocketHandler();
+    public BinaryChatWebSocketHandler binaryChatWebSocketHandler() throws IOException {
+        BinaryChatWebSocketHandler handler = new BinaryChatWebSocketHandler(roomRegistry());
+        handler.setSendLimits(sendTimeLimitMs, sendBufferBytes, sendOverflow);
+        handler.setRateLimiter(rateLimiter());
+        handler.setMessageStore(messageStore());
+        handler.setClusterNode(clusterNode());
+        handler.setSequencer(roomSequencer());
+        handler.setMetrics(serverMetrics());
+        return handler;
     }
 }